@@ -0,0 +1,251 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmark behind {@link Backends}. Every measurement runs a typical
+ * operation for a fixed time. Since the JIT compiler has only just started
+ * when the benchmark runs, every measurement is repeated several rounds and
+ * the best round counts.
+ *
+ */
+final class AutoTuner {
+
+    /**
+     * Time spent on one measurement in nanoseconds.
+     */
+    private static final long MEASURE_NANOS = 2_000_000;
+
+    /**
+     * Number of times every backend is measured. The best round counts.
+     */
+    private static final int ROUNDS = 8;
+
+    /**
+     * Pause between two rounds in milliseconds.
+     */
+    private static final long PAUSE_MILLIS = 20;
+
+    private AutoTuner() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * Measures all backends on a typical operation of every kind and size
+     * class. Backends are measured in turns, so that all of them get the same
+     * time to be compiled.
+     *
+     * @param backends backends to compare, highest priority first
+     * @return fastest backends, indexed by operation and size class. The one
+     * with higher priority wins a tie
+     */
+    static ComputeBackend[][] fastest(List<ComputeBackend> backends) {
+        int operations = Backends.Operation.values().length;
+        int sizes = Backends.SizeClass.values().length;
+        Runnable[][][] tasks = new Runnable[operations][sizes][backends.size()];
+        long[][][] best = new long[operations][sizes][backends.size()];
+        for (Backends.Operation operation : Backends.Operation.values()) {
+            for (Backends.SizeClass size : Backends.SizeClass.values()) {
+                for (int i = 0; i < backends.size(); i++) {
+                    tasks[operation.ordinal()][size.ordinal()][i] = task(backends.get(i), operation, size);
+                }
+                Arrays.fill(best[operation.ordinal()][size.ordinal()], Long.MAX_VALUE);
+            }
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int o = 0; o < operations; o++) {
+                for (int s = 0; s < sizes; s++) {
+                    for (int i = 0; i < backends.size(); i++) {
+                        best[o][s][i] = Math.min(best[o][s][i], measure(tasks[o][s][i]));
+                    }
+                }
+            }
+            pause();
+        }
+        ComputeBackend[][] fastest = new ComputeBackend[operations][sizes];
+        for (int o = 0; o < operations; o++) {
+            for (int s = 0; s < sizes; s++) {
+                int f = 0;
+                for (int i = 1; i < backends.size(); i++) {
+                    // a backend with lower priority has to be clearly faster,
+                    // so that noise does not decide
+                    if (best[o][s][i] * 1.1 < best[o][s][f]) {
+                        f = i;
+                    }
+                }
+                fastest[o][s] = backends.get(f);
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * Creates a typical operation of a kind and size class on a backend.
+     *
+     * @param backend backend to run
+     * @param operation kind of operation
+     * @param size size class
+     * @return operation to measure
+     */
+    private static Runnable task(ComputeBackend backend, Backends.Operation operation, Backends.SizeClass size) {
+        boolean large = size == Backends.SizeClass.LARGE;
+        switch (operation) {
+            case GEMM: {
+                int dim = large ? 40 : 12;
+                double[] a = random(dim * dim);
+                double[] b = random(dim * dim);
+                double[] c = new double[dim * dim];
+                return () -> backend.gemm(dim, dim, dim, a, 0, dim, b, 0, dim, c, 0, dim);
+            }
+            case ELEMENTWISE: {
+                int len = large ? 4096 : 64;
+                double[] a = random(len);
+                double[] b = random(len);
+                double[] c = new double[len];
+                return () -> {
+                    backend.mul(a, 0, b, 0, c, 0, len);
+                    backend.axpy(0.5, a, 0, c, 0, len);
+                };
+            }
+            default: {
+                int len = large ? 4096 : 64;
+                double[] a = random(len);
+                double[] b = random(len);
+                double[] sink = new double[1];
+                return () -> sink[0] += backend.dot(a, 0, b, 0, len) + backend.sum(a, 0, len);
+            }
+        }
+    }
+
+    /**
+     * Runs an operation repeatedly for a fixed time.
+     *
+     * @param task operation to run
+     * @return average nanoseconds per run
+     */
+    private static long measure(Runnable task) {
+        long start = System.nanoTime();
+        long elapsed;
+        long runs = 0;
+        do {
+            task.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return elapsed / runs;
+    }
+
+    /**
+     * Pauses the benchmark so that the JIT compiler can finish compiling the
+     * measured code, even when it has to share a single processor with the
+     * benchmark.
+     */
+    private static void pause() {
+        try {
+            Thread.sleep(PAUSE_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tunes the parallel threshold of one kind of operation. On a single
+     * processor operations never run in parallel. Otherwise the smallest
+     * amount of work that gets clearly faster when split across the pool
+     * becomes the threshold. Only operations of the large size class are
+     * measured, small ones stay below every threshold tried.
+     *
+     * @param operation kind of operation
+     * @param backend backend used for large operations of that kind
+     */
+    static void tuneThreshold(Backends.Operation operation, ComputeBackend backend) {
+        if (Runtime.getRuntime().availableProcessors() < 2 || Parallelism.getPool().getParallelism() < 2) {
+            Parallelism.setThreshold(operation, Long.MAX_VALUE);
+            return;
+        }
+        long previous = Parallelism.getThreshold(operation);
+        for (long threshold = 1L << 16; threshold <= Math.min(previous, Parallelism.DEFAULT_THRESHOLD); threshold <<= 2) {
+            Runnable[] tasks = split(operation, backend, threshold);
+            Parallelism.setThreshold(operation, threshold);
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                sequential = Math.min(sequential, measure(tasks[0]));
+                parallel = Math.min(parallel, measure(tasks[1]));
+                pause();
+            }
+            if (parallel * 1.25 < sequential) {
+                return;
+            }
+        }
+        Parallelism.setThreshold(operation, previous);
+    }
+
+    /**
+     * Creates an operation of about four times the threshold, once running
+     * on the calling thread and once split across the pool.
+     *
+     * @param operation kind of operation
+     * @param backend backend to run
+     * @param threshold threshold to measure
+     * @return sequential and parallel operation
+     */
+    private static Runnable[] split(Backends.Operation operation, ComputeBackend backend, long threshold) {
+        int dim = 64;
+        switch (operation) {
+            case GEMM: {
+                int k = (int) (4 * threshold / (dim * dim));
+                double[] a = random(dim * k);
+                double[] b = random(k * dim);
+                double[] c = new double[dim * dim];
+                return new Runnable[] {
+                    () -> backend.gemm(dim, k, dim, a, 0, k, b, 0, dim, c, 0, dim),
+                    () -> Parallelism.forBlocks(dim, dim, k, (r0, r1, c0, c1)
+                            -> backend.gemm(r1 - r0, k, c1 - c0, a, r0 * k, k, b, c0, dim, c, r0 * dim + c0, dim))
+                };
+            }
+            case ELEMENTWISE: {
+                int cols = (int) (4 * threshold / dim);
+                double[] a = random(dim * cols);
+                double[] c = new double[dim * cols];
+                Parallelism.RangeTask rows = (from, to) -> backend.axpy(0.5, a, from * cols, c, from * cols, (to - from) * cols);
+                return new Runnable[] {
+                    () -> rows.run(0, dim),
+                    () -> Parallelism.forRange(operation, dim, cols, rows)
+                };
+            }
+            default: {
+                int cols = (int) (4 * threshold / dim);
+                double[] a = random(dim * cols);
+                double[] b = random(cols);
+                double[] c = new double[dim];
+                Parallelism.RangeTask rows = (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        c[i] = backend.dot(a, i * cols, b, 0, cols);
+                    }
+                };
+                return new Runnable[] {
+                    () -> rows.run(0, dim),
+                    () -> Parallelism.forRange(operation, dim, cols, rows)
+                };
+            }
+        }
+    }
+
+    /**
+     * Creates an array of random values in [-1, 1).
+     *
+     * @param len length of the array
+     * @return array
+     */
+    private static double[] random(int len) {
+        Random rand = new Random(len);
+        double[] a = new double[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = 2 * rand.nextDouble() - 1;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,223 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Chooses the {@link ComputeBackend} used by all matrices and vectors. The
+ * available backends are discovered with the {@link ServiceLoader} when the
+ * class is loaded. By default the one with the highest priority is used.
+ *
+ * With the system property {@code neuralnet.autotune} set to true a short
+ * micro-benchmark measures all backends for every kind of operation and size
+ * class at startup, and the fastest one is used for that combination from
+ * then on. It also tunes the parallel threshold of every kind of operation
+ * (see {@link Parallelism#setThreshold(Operation, long)}) unless it is set
+ * with {@code neuralnet.parallel.threshold} or one of its per-kind variants.
+ * The benchmark takes about a second, mostly waiting for the JIT compiler, so
+ * it is not enabled by default.
+ *
+ * The choice can be overridden with system properties:
+ * <ul>
+ * <li>{@code neuralnet.backend} names the backend used for all operations</li>
+ * <li>{@code neuralnet.backend.gemm}, {@code neuralnet.backend.elementwise}
+ * and {@code neuralnet.backend.reduction} name the backend of one kind of
+ * operation</li>
+ * </ul>
+ * Names of backends that are not available are ignored.
+ *
+ */
+public final class Backends {
+
+    /**
+     * Kinds of operations measured separately.
+     */
+    public enum Operation {
+        /**
+         * Matrix multiplications.
+         */
+        GEMM,
+        /**
+         * Entrywise operations like additions and scaling.
+         */
+        ELEMENTWISE,
+        /**
+         * Sums and dot products.
+         */
+        REDUCTION
+    }
+
+    /**
+     * Size classes measured separately.
+     */
+    public enum SizeClass {
+        /**
+         * Operations below {@link #SMALL_ENTRIES} entries or
+         * {@link #SMALL_PRODUCT} multiply-adds.
+         */
+        SMALL,
+        /**
+         * All larger operations.
+         */
+        LARGE
+    }
+
+    /**
+     * Number of entries from which elementwise operations and reductions are
+     * large.
+     */
+    public static final int SMALL_ENTRIES = 256;
+
+    /**
+     * Number of multiply-adds from which matrix multiplications are large.
+     */
+    public static final long SMALL_PRODUCT = 1L << 15;
+
+    private static final List<ComputeBackend> AVAILABLE = discover();
+    private static final Map<Operation, ComputeBackend[]> SELECTED = select();
+    private static final ComputeBackend INSTANCE = combine();
+
+    private Backends() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * Gets the backend used by all matrix and vector operations. If different
+     * backends were selected, it forwards every call to the one selected for
+     * the operation and size.
+     *
+     * @return backend in use
+     */
+    public static ComputeBackend get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets all backends available in this JVM, highest priority first.
+     *
+     * @return available backends
+     */
+    public static List<ComputeBackend> getAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Gets the backend selected for a kind of operation and size class.
+     *
+     * @param operation kind of operation
+     * @param size size class
+     * @return selected backend
+     */
+    public static ComputeBackend getSelected(Operation operation, SizeClass size) {
+        return SELECTED.get(operation)[size.ordinal()];
+    }
+
+    /**
+     * Loads all available backends. Providers whose classes are missing, like
+     * the Vector API backend without the simd profile or the incubator
+     * module, are skipped.
+     *
+     * @return available backends, highest priority first
+     */
+    private static List<ComputeBackend> discover() {
+        List<ComputeBackend> backends = new ArrayList<>();
+        Iterator<ComputeBackend> it = ServiceLoader.load(ComputeBackend.class, Backends.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                ComputeBackend backend = it.next();
+                if (backend.isAvailable()) {
+                    backends.add(backend);
+                }
+            } catch (ServiceConfigurationError | LinkageError ex) {
+                // provider not compiled in or its module is missing
+            }
+        }
+        if (backends.isEmpty()) {
+            backends.add(new BlockedBackend());
+        }
+        backends.sort(Comparator.comparingInt(ComputeBackend::priority).reversed());
+        return Collections.unmodifiableList(backends);
+    }
+
+    /**
+     * Selects a backend for every kind of operation and size class and tunes
+     * the parallel thresholds.
+     *
+     * @return backends by operation, indexed by size class
+     */
+    private static Map<Operation, ComputeBackend[]> select() {
+        boolean tune = Boolean.getBoolean("neuralnet.autotune");
+        ComputeBackend all = find(System.getProperty("neuralnet.backend"));
+        ComputeBackend[][] fastest = tune && all == null && AVAILABLE.size() > 1 ? AutoTuner.fastest(AVAILABLE) : null;
+        Map<Operation, ComputeBackend[]> selected = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            ComputeBackend forced = find(System.getProperty("neuralnet.backend." + operation.name().toLowerCase()));
+            if (forced == null) {
+                forced = all;
+            }
+            ComputeBackend[] bySize = new ComputeBackend[SizeClass.values().length];
+            for (SizeClass size : SizeClass.values()) {
+                if (forced != null) {
+                    bySize[size.ordinal()] = forced;
+                } else if (fastest != null) {
+                    bySize[size.ordinal()] = fastest[operation.ordinal()][size.ordinal()];
+                } else {
+                    bySize[size.ordinal()] = AVAILABLE.get(0);
+                }
+            }
+            selected.put(operation, bySize);
+        }
+        if (tune && System.getProperty("neuralnet.parallel.threshold") == null) {
+            for (Operation operation : Operation.values()) {
+                if (System.getProperty("neuralnet.parallel.threshold." + operation.name().toLowerCase()) == null) {
+                    AutoTuner.tuneThreshold(operation, selected.get(operation)[SizeClass.LARGE.ordinal()]);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Combines the selected backends into the one used by all operations.
+     * Only a mix of backends is wrapped into a dispatching backend, a single
+     * one is used directly to keep calls monomorphic.
+     *
+     * @return backend in use
+     */
+    private static ComputeBackend combine() {
+        ComputeBackend first = SELECTED.get(Operation.GEMM)[0];
+        for (ComputeBackend[] bySize : SELECTED.values()) {
+            for (ComputeBackend backend : bySize) {
+                if (backend != first) {
+                    return new TunedBackend(SELECTED);
+                }
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Finds an available backend by name.
+     *
+     * @param name name of the backend, may be null
+     * @return backend or null if none is available under the name
+     */
+    private static ComputeBackend find(String name) {
+        for (ComputeBackend backend : AVAILABLE) {
+            if (backend.name().equals(name)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,240 @@
+package org.neural.network.mathlib.algebra;
+
+/**
+ * Plain Java implementation of the kernels with unrolled loops and a cache
+ * blocked matrix multiplication (see {@link Gemm}). Relies on the JIT
+ * compiler for any vectorization.
+ *
+ */
+public class BlockedBackend extends ComputeBackend {
+
+    @Override
+    public String name() {
+        return "blocked";
+    }
+
+    @Override
+    public int priority() {
+        return 1;
+    }
+
+    @Override
+    public double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            s0 += a[aOff + i] * b[bOff + i];
+            s1 += a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += a[aOff + i] * b[bOff + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double sum(double[] a, int aOff, int len) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            s0 += a[aOff + i];
+            s1 += a[aOff + i + 1];
+            s2 += a[aOff + i + 2];
+            s3 += a[aOff + i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += a[aOff + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public void axpy(double s, double[] x, int xOff, double[] y, int yOff, int len) {
+        for (int i = 0; i < len; i++) {
+            y[yOff + i] += s * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void add(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] + b[bOff + i];
+        }
+    }
+
+    @Override
+    public void sub(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] - b[bOff + i];
+        }
+    }
+
+    @Override
+    public void mul(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] * b[bOff + i];
+        }
+    }
+
+    @Override
+    public void scale(double s, double[] a, int aOff, double[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = s * a[aOff + i];
+        }
+    }
+
+    @Override
+    public void addScalar(double s, double[] a, int aOff, double[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] + s;
+        }
+    }
+
+    @Override
+    public void gemm(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        Gemm.multiply(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public double dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            s0 += a[aOff + i] * b[bOff + i];
+            s1 += a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += a[aOff + i] * b[bOff + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double sum(float[] a, int aOff, int len) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            s0 += a[aOff + i];
+            s1 += a[aOff + i + 1];
+            s2 += a[aOff + i + 2];
+            s3 += a[aOff + i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += a[aOff + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public void axpy(float s, float[] x, int xOff, float[] y, int yOff, int len) {
+        for (int i = 0; i < len; i++) {
+            y[yOff + i] += s * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void add(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] + b[bOff + i];
+        }
+    }
+
+    @Override
+    public void sub(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] - b[bOff + i];
+        }
+    }
+
+    @Override
+    public void mul(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] * b[bOff + i];
+        }
+    }
+
+    @Override
+    public void scale(float s, float[] a, int aOff, float[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = s * a[aOff + i];
+        }
+    }
+
+    @Override
+    public void addScalar(float s, float[] a, int aOff, float[] c, int cOff, int len) {
+        for (int i = 0; i < len; i++) {
+            c[cOff + i] = a[aOff + i] + s;
+        }
+    }
+
+    @Override
+    public void gemm(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        Gemm.multiply(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    /**
+     * Computes four rows at once, so every entry of x is loaded once for four
+     * independent accumulators.
+     */
+    @Override
+    public void gemv(int n, int m, double[] a, int aOff, int aStride, double[] x, int xOff, double[] y, int yOff) {
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            int a0 = aOff + i * aStride;
+            int a1 = a0 + aStride;
+            int a2 = a1 + aStride;
+            int a3 = a2 + aStride;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int j = 0; j < m; j++) {
+                double xj = x[xOff + j];
+                s0 += a[a0 + j] * xj;
+                s1 += a[a1 + j] * xj;
+                s2 += a[a2 + j] * xj;
+                s3 += a[a3 + j] * xj;
+            }
+            y[yOff + i] = s0;
+            y[yOff + i + 1] = s1;
+            y[yOff + i + 2] = s2;
+            y[yOff + i + 3] = s3;
+        }
+        for (; i < n; i++) {
+            y[yOff + i] = dot(a, aOff + i * aStride, x, xOff, m);
+        }
+    }
+
+    @Override
+    public void gemv(int n, int m, float[] a, int aOff, int aStride, float[] x, int xOff, float[] y, int yOff) {
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            int a0 = aOff + i * aStride;
+            int a1 = a0 + aStride;
+            int a2 = a1 + aStride;
+            int a3 = a2 + aStride;
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int j = 0; j < m; j++) {
+                float xj = x[xOff + j];
+                s0 += a[a0 + j] * xj;
+                s1 += a[a1 + j] * xj;
+                s2 += a[a2 + j] * xj;
+                s3 += a[a3 + j] * xj;
+            }
+            y[yOff + i] = s0;
+            y[yOff + i + 1] = s1;
+            y[yOff + i + 2] = s2;
+            y[yOff + i + 3] = s3;
+        }
+        for (; i < n; i++) {
+            y[yOff + i] = (float) dot(a, aOff + i * aStride, x, xOff, m);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package org.neural.network.mathlib.algebra;
+
+/**
+ * Set of low level loops the algebra classes are built on. Every method works
+ * on a flat range of storage given by an array and an offset.
+ *
+ * Implementations are discovered with {@link java.util.ServiceLoader}, so
+ * faster kernels for specific hardware can be added by listing a subclass in
+ * {@code META-INF/services/org.neural.network.mathlib.algebra.ComputeBackend}.
+ * The library ships a naive, a blocked and, with the simd profile, a Vector
+ * API implementation. {@link Backends} measures the available
+ * implementations at startup and picks one per operation and size.
+ *
+ * Subclasses must be public and have a public constructor without
+ * arguments. Matrices split large operations across threads themselves (see
+ * {@link Parallelism}), so a backend always runs on the calling thread.
+ *
+ */
+public abstract class ComputeBackend {
+
+    /**
+     * Gets a short name of the implementation, used to select it with system
+     * properties.
+     *
+     * @return name of the backend
+     */
+    public abstract String name();
+
+    /**
+     * Checks whether the backend can run in this JVM. Backends that are not
+     * available are ignored.
+     *
+     * @return true if the backend can be used
+     */
+    public boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Gets the priority of the backend, deciding which one is used when no
+     * measurements are made. The highest priority wins.
+     *
+     * @return priority of the backend
+     */
+    public int priority() {
+        return 0;
+    }
+
+    /**
+     * Calculates the dot product of two ranges.
+     *
+     * @param a first storage
+     * @param aOff offset into first storage
+     * @param b second storage
+     * @param bOff offset into second storage
+     * @param len number of entries
+     * @return sum of the products
+     */
+    public abstract double dot(double[] a, int aOff, double[] b, int bOff, int len);
+
+    /**
+     * Sums up a range.
+     *
+     * @param a storage
+     * @param aOff offset into storage
+     * @param len number of entries
+     * @return sum of the entries
+     */
+    public abstract double sum(double[] a, int aOff, int len);
+
+    /**
+     * Adds a scaled range to another range: y += s * x.
+     *
+     * @param s scalar to multiply x with
+     * @param x storage to read from
+     * @param xOff offset into x
+     * @param y storage to add to
+     * @param yOff offset into y
+     * @param len number of entries
+     */
+    public abstract void axpy(double s, double[] x, int xOff, double[] y, int yOff, int len);
+
+    /**
+     * Adds two ranges: c = a + b.
+     *
+     * @param a first storage
+     * @param aOff offset into first storage
+     * @param b second storage
+     * @param bOff offset into second storage
+     * @param c result storage
+     * @param cOff offset into result storage
+     * @param len number of entries
+     */
+    public abstract void add(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len);
+
+    /**
+     * Subtracts two ranges: c = a - b.
+     *
+     * @param a first storage
+     * @param aOff offset into first storage
+     * @param b second storage
+     * @param bOff offset into second storage
+     * @param c result storage
+     * @param cOff offset into result storage
+     * @param len number of entries
+     */
+    public abstract void sub(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len);
+
+    /**
+     * Multiplies two ranges entry by entry: c = a * b.
+     *
+     * @param a first storage
+     * @param aOff offset into first storage
+     * @param b second storage
+     * @param bOff offset into second storage
+     * @param c result storage
+     * @param cOff offset into result storage
+     * @param len number of entries
+     */
+    public abstract void mul(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len);
+
+    /**
+     * Multiplies a range with a scalar: c = s * a.
+     *
+     * @param s scalar to multiply with
+     * @param a storage to read from
+     * @param aOff offset into a
+     * @param c result storage
+     * @param cOff offset into c
+     * @param len number of entries
+     */
+    public abstract void scale(double s, double[] a, int aOff, double[] c, int cOff, int len);
+
+    /**
+     * Adds a scalar to every entry of a range: c = a + s.
+     *
+     * @param s scalar to add
+     * @param a storage to read from
+     * @param aOff offset into a
+     * @param c result storage
+     * @param cOff offset into c
+     * @param len number of entries
+     */
+    public abstract void addScalar(double s, double[] a, int aOff, double[] c, int cOff, int len);
+
+    /**
+     * Computes C += A * B where A is n x k, B is k x m and C is n x m.
+     *
+     * @param n rows of A and C
+     * @param k columns of A and rows of B
+     * @param m columns of B and C
+     * @param a storage of A
+     * @param aOff offset of A
+     * @param aStride row stride of A
+     * @param b storage of B
+     * @param bOff offset of B
+     * @param bStride row stride of B
+     * @param c storage of C
+     * @param cOff offset of C
+     * @param cStride row stride of C
+     */
+    public abstract void gemm(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride);
+
+    /**
+     * Single precision variant of {@link #dot(double[], int, double[], int, int)}.
+     */
+    public abstract double dot(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /**
+     * Single precision variant of {@link #sum(double[], int, int)}.
+     */
+    public abstract double sum(float[] a, int aOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #axpy(double, double[], int, double[], int, int)}.
+     */
+    public abstract void axpy(float s, float[] x, int xOff, float[] y, int yOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #add(double[], int, double[], int, double[], int, int)}.
+     */
+    public abstract void add(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #sub(double[], int, double[], int, double[], int, int)}.
+     */
+    public abstract void sub(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #mul(double[], int, double[], int, double[], int, int)}.
+     */
+    public abstract void mul(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #scale(double, double[], int, double[], int, int)}.
+     */
+    public abstract void scale(float s, float[] a, int aOff, float[] c, int cOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #addScalar(double, double[], int, double[], int, int)}.
+     */
+    public abstract void addScalar(float s, float[] a, int aOff, float[] c, int cOff, int len);
+
+    /**
+     * Single precision variant of
+     * {@link #gemm(int, int, int, double[], int, int, double[], int, int, double[], int, int)}.
+     */
+    public abstract void gemm(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride);
+
+    /**
+     * Computes C += A^T * B where A is stored as k x n, B is k x m and C is
+     * n x m. Every row of A and B is read once per block of columns of C and
+     * its entries are added to the rows of C with {@link #axpy}, so A never
+     * has to be transposed in memory.
+     *
+     * @param n columns of A and rows of C
+     * @param k rows of A and B
+     * @param m columns of B and C
+     * @param a storage of A
+     * @param aOff offset of A
+     * @param aStride row stride of A
+     * @param b storage of B
+     * @param bOff offset of B
+     * @param bStride row stride of B
+     * @param c storage of C
+     * @param cOff offset of C
+     * @param cStride row stride of C
+     */
+    public void gemmTransA(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        for (int jc = 0; jc < m; jc += Gemm.NC) {
+            int nc = Math.min(Gemm.NC, m - jc);
+            for (int p = 0; p < k; p++) {
+                int aRow = aOff + p * aStride;
+                int bRow = bOff + p * bStride + jc;
+                for (int i = 0; i < n; i++) {
+                    axpy(a[aRow + i], b, bRow, c, cOff + i * cStride + jc, nc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C += A * B^T where A is n x k, B is stored as m x k and C is
+     * n x m. Every entry of C is the dot product of a row of A and a row of B,
+     * both read sequentially. Rows of B are processed in blocks so they stay
+     * in cache for all rows of A.
+     *
+     * @param n rows of A and C
+     * @param k columns of A and B
+     * @param m rows of B and columns of C
+     * @param a storage of A
+     * @param aOff offset of A
+     * @param aStride row stride of A
+     * @param b storage of B
+     * @param bOff offset of B
+     * @param bStride row stride of B
+     * @param c storage of C
+     * @param cOff offset of C
+     * @param cStride row stride of C
+     */
+    public void gemmTransB(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        int block = Math.max(1, Gemm.KC * Gemm.NR * 16 / Math.max(1, k));
+        for (int jc = 0; jc < m; jc += block) {
+            int jEnd = Math.min(m, jc + block);
+            for (int i = 0; i < n; i++) {
+                int aRow = aOff + i * aStride;
+                int cRow = cOff + i * cStride;
+                for (int j = jc; j < jEnd; j++) {
+                    c[cRow + j] += dot(a, aRow, b, bOff + j * bStride, k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Single precision variant of
+     * {@link #gemmTransA(int, int, int, double[], int, int, double[], int, int, double[], int, int)}.
+     */
+    public void gemmTransA(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        for (int jc = 0; jc < m; jc += Gemm.NC) {
+            int nc = Math.min(Gemm.NC, m - jc);
+            for (int p = 0; p < k; p++) {
+                int aRow = aOff + p * aStride;
+                int bRow = bOff + p * bStride + jc;
+                for (int i = 0; i < n; i++) {
+                    axpy(a[aRow + i], b, bRow, c, cOff + i * cStride + jc, nc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Single precision variant of
+     * {@link #gemmTransB(int, int, int, double[], int, int, double[], int, int, double[], int, int)}.
+     */
+    public void gemmTransB(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        int block = Math.max(1, Gemm.KC * Gemm.NR * 16 / Math.max(1, k));
+        for (int jc = 0; jc < m; jc += block) {
+            int jEnd = Math.min(m, jc + block);
+            for (int i = 0; i < n; i++) {
+                int aRow = aOff + i * aStride;
+                int cRow = cOff + i * cStride;
+                for (int j = jc; j < jEnd; j++) {
+                    c[cRow + j] += (float) dot(a, aRow, b, bOff + j * bStride, k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes y = A * x where A is n x m. Used for single inputs, where a
+     * matrix multiplication would pay for blocking it cannot use. The default
+     * computes one dot product per row.
+     *
+     * @param n rows of A and entries of y
+     * @param m columns of A and entries of x
+     * @param a storage of A
+     * @param aOff offset of A
+     * @param aStride row stride of A
+     * @param x storage of x
+     * @param xOff offset of x
+     * @param y storage of y, overwritten
+     * @param yOff offset of y
+     */
+    public void gemv(int n, int m, double[] a, int aOff, int aStride, double[] x, int xOff, double[] y, int yOff) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] = dot(a, aOff + i * aStride, x, xOff, m);
+        }
+    }
+
+    /**
+     * Single precision variant of
+     * {@link #gemv(int, int, double[], int, int, double[], int, double[], int)}.
+     */
+    public void gemv(int n, int m, float[] a, int aOff, int aStride, float[] x, int xOff, float[] y, int yOff) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] = (float) dot(a, aOff + i * aStride, x, xOff, m);
+        }
+    }
+}
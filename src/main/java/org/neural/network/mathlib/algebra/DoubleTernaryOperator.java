@@ -0,0 +1,21 @@
+package org.neural.network.mathlib.algebra;
+
+/**
+ * Function of three double values returning a double, used to combine the
+ * entries of three matrices (see
+ * {@link Matrix#zipInPlace(Matrix, Matrix, DoubleTernaryOperator)}).
+ *
+ */
+@FunctionalInterface
+public interface DoubleTernaryOperator {
+
+    /**
+     * Applies the function.
+     *
+     * @param a first value
+     * @param b second value
+     * @param c third value
+     * @return result
+     */
+    double applyAsDouble(double a, double b, double c);
+}
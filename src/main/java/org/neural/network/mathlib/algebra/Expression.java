@@ -0,0 +1,539 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Lazily evaluated chain of elementwise operations on matrices of the same
+ * size. An expression is started with {@link Matrix#lazy()} and only records
+ * the operations. Evaluating it computes every entry of the whole chain in a
+ * single pass, so no intermediate matrix is allocated or written to memory.
+ *
+ * The entries are processed in short chunks of a row which stay in the
+ * cache while every operation runs on them. Values are computed in double
+ * precision and rounded when written into a single precision result.
+ *
+ * Expressions are immutable. Every operation returns a new expression, so an
+ * expression can be evaluated several times and shared as an operand of
+ * other expressions.
+ *
+ */
+public final class Expression {
+
+    /**
+     * Number of entries of a row processed at once.
+     */
+    private static final int CHUNK = 256;
+
+    private static final ComputeBackend BACKEND = Backends.get();
+
+    private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[0][]);
+
+    private final int n;
+    private final int m;
+    private final Node root;
+    private final Precision precision;
+
+    /**
+     * Initializes an expression returning the values of a matrix.
+     *
+     * @param A matrix the expression starts with
+     */
+    Expression(Matrix A) {
+        this(A.getN(), A.getM(), new Leaf(A), A.getPrecision());
+    }
+
+    /**
+     * Initializes an expression.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param root operation computing the entries
+     * @param precision precision of results allocated by {@link #evaluate()}
+     */
+    private Expression(int n, int m, Node root, Precision precision) {
+        this.n = n;
+        this.m = m;
+        this.root = root;
+        this.precision = precision;
+    }
+
+    /**
+     * Adds a matrix entrywise.
+     *
+     * @param B matrix of the same size
+     * @return new expression
+     */
+    public Expression addMat(Matrix B) {
+        return binary(Op.ADD, B.lazy());
+    }
+
+    /**
+     * Adds another expression entrywise.
+     *
+     * @param E expression of the same size
+     * @return new expression
+     */
+    public Expression addMat(Expression E) {
+        return binary(Op.ADD, E);
+    }
+
+    /**
+     * Subtracts a matrix entrywise.
+     *
+     * @param B matrix of the same size
+     * @return new expression
+     */
+    public Expression subMat(Matrix B) {
+        return binary(Op.SUB, B.lazy());
+    }
+
+    /**
+     * Subtracts another expression entrywise.
+     *
+     * @param E expression of the same size
+     * @return new expression
+     */
+    public Expression subMat(Expression E) {
+        return binary(Op.SUB, E);
+    }
+
+    /**
+     * Multiplies with a matrix entrywise.
+     *
+     * @param B matrix of the same size
+     * @return new expression
+     */
+    public Expression hadamardMat(Matrix B) {
+        return binary(Op.MUL, B.lazy());
+    }
+
+    /**
+     * Multiplies with another expression entrywise.
+     *
+     * @param E expression of the same size
+     * @return new expression
+     */
+    public Expression hadamardMat(Expression E) {
+        return binary(Op.MUL, E);
+    }
+
+    /**
+     * Multiplies every single entry with a scalar.
+     *
+     * @param s scalar to multiply with
+     * @return new expression
+     */
+    public Expression mulSca(double s) {
+        return new Expression(n, m, new Scale(s, root), precision);
+    }
+
+    /**
+     * Applies a function to every single entry.
+     *
+     * @param f function to apply
+     * @return new expression
+     */
+    public Expression map(DoubleUnaryOperator f) {
+        return new Expression(n, m, new Map(f, root), precision);
+    }
+
+    /**
+     * Evaluates the expression into a new matrix with the precision of the
+     * matrix the expression was started with.
+     *
+     * @return resulting matrix
+     */
+    public Matrix evaluate() {
+        return evaluateInto(new Matrix(n, m, precision));
+    }
+
+    /**
+     * Evaluates the expression and stores the result in a matrix. The result
+     * may be one of the operands, but must not partially share entries with
+     * one.
+     *
+     * @param C matrix of the same size receiving the result
+     * @return C
+     */
+    public Matrix evaluateInto(Matrix C) {
+        if (C.getN() != n || C.getM() != m) {
+            throw new IllegalArgumentException("Matrix dimensions do not match: "
+                    + n + "x" + m + " and " + C.getN() + "x" + C.getM());
+        }
+        // writing straight into the result is only safe if no operand reads
+        // the entries written before the whole chain has run on them
+        boolean direct = C.getData() != null && !root.reads(C);
+        int buffers = root.buffers() + 1;
+        Parallelism.forRange(Backends.Operation.ELEMENTWISE, n, (long) m * root.cost(), (from, to) -> {
+            double[][] scratch = scratch(buffers);
+            double[] out = scratch[buffers - 1];
+            for (int i = from; i < to; i++) {
+                int row = C.getOffset() + i * C.getStride();
+                for (int j = 0; j < m; j += CHUNK) {
+                    int len = Math.min(CHUNK, m - j);
+                    if (direct) {
+                        root.eval(i, j, len, C.getData(), row + j, scratch, 0);
+                    } else {
+                        root.eval(i, j, len, out, 0, scratch, 0);
+                        store(out, C, row + j, len);
+                    }
+                }
+            }
+        });
+        return C;
+    }
+
+    /**
+     * Gets row count.
+     *
+     * @return row count
+     */
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Gets column count.
+     *
+     * @return column count
+     */
+    public int getM() {
+        return m;
+    }
+
+    /**
+     * Combines this expression with another one of the same size.
+     *
+     * @param op entrywise operation
+     * @param E right operand
+     * @return new expression
+     */
+    private Expression binary(Op op, Expression E) {
+        if (n != E.n || m != E.m) {
+            throw new IllegalArgumentException("Matrix dimensions do not match: "
+                    + n + "x" + m + " and " + E.n + "x" + E.m);
+        }
+        return new Expression(n, m, new Binary(op, root, E.root), precision);
+    }
+
+    /**
+     * Gets scratch buffers of the current thread.
+     *
+     * @param count number of buffers needed
+     * @return at least count buffers of one chunk each
+     */
+    private static double[][] scratch(int count) {
+        double[][] scratch = SCRATCH.get();
+        if (scratch.length < count) {
+            scratch = new double[count][CHUNK];
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * Copies a computed chunk into a matrix of any precision and storage.
+     *
+     * @param out computed values
+     * @param C result matrix
+     * @param idx index of the first entry in the storage of C
+     * @param len number of entries
+     */
+    private static void store(double[] out, Matrix C, int idx, int len) {
+        if (C.getData() != null) {
+            System.arraycopy(out, 0, C.getData(), idx, len);
+        } else if (C.getFloatData() != null) {
+            float[] c = C.getFloatData();
+            for (int k = 0; k < len; k++) {
+                c[idx + k] = (float) out[k];
+            }
+        } else {
+            for (int k = 0; k < len; k++) {
+                C.write(idx + k, out[k]);
+            }
+        }
+    }
+
+    /**
+     * Entrywise operations of two operands.
+     */
+    private enum Op {
+        ADD, SUB, MUL;
+
+        /**
+         * Applies the operation to len entries.
+         */
+        void apply(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+            switch (this) {
+                case ADD:
+                    BACKEND.add(a, aOff, b, bOff, c, cOff, len);
+                    break;
+                case SUB:
+                    BACKEND.sub(a, aOff, b, bOff, c, cOff, len);
+                    break;
+                default:
+                    BACKEND.mul(a, aOff, b, bOff, c, cOff, len);
+            }
+        }
+    }
+
+    /**
+     * Recorded operation computing a chunk of entries.
+     */
+    private abstract static class Node {
+
+        /**
+         * Computes len entries of row i starting at column j.
+         *
+         * @param i row
+         * @param j first column
+         * @param len number of entries
+         * @param out array receiving the entries
+         * @param outOff position of the first entry in out
+         * @param scratch scratch buffers of the current thread
+         * @param level first scratch buffer not used by an enclosing operation
+         */
+        abstract void eval(int i, int j, int len, double[] out, int outOff, double[][] scratch, int level);
+
+        /**
+         * Gets the number of scratch buffers needed to evaluate the node.
+         *
+         * @return number of scratch buffers
+         */
+        abstract int buffers();
+
+        /**
+         * Gets the number of operations per entry, used to decide about
+         * parallel evaluation.
+         *
+         * @return operations per entry
+         */
+        abstract int cost();
+
+        /**
+         * Checks whether the node reads entries of a matrix.
+         *
+         * @param C matrix to check
+         * @return true if an operand may share entries with C
+         */
+        abstract boolean reads(Matrix C);
+
+        /**
+         * Gets the double precision array the node reads from directly, if
+         * it only returns the values of a matrix stored in one.
+         *
+         * @return array or null
+         */
+        double[] array() {
+            return null;
+        }
+
+        /**
+         * Gets the position of an entry in the array of {@link #array()}.
+         *
+         * @param i row
+         * @param j column
+         * @return position in the array
+         */
+        int index(int i, int j) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Values of a matrix.
+     */
+    private static final class Leaf extends Node {
+
+        private final Matrix A;
+
+        Leaf(Matrix A) {
+            this.A = A;
+        }
+
+        @Override
+        void eval(int i, int j, int len, double[] out, int outOff, double[][] scratch, int level) {
+            int idx = index(i, j);
+            if (A.getData() != null) {
+                System.arraycopy(A.getData(), idx, out, outOff, len);
+            } else if (A.getFloatData() != null) {
+                float[] a = A.getFloatData();
+                for (int k = 0; k < len; k++) {
+                    out[outOff + k] = a[idx + k];
+                }
+            } else {
+                for (int k = 0; k < len; k++) {
+                    out[outOff + k] = A.read(idx + k);
+                }
+            }
+        }
+
+        @Override
+        int buffers() {
+            return 0;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        boolean reads(Matrix C) {
+            return A.overlaps(C);
+        }
+
+        @Override
+        double[] array() {
+            return A.getData();
+        }
+
+        @Override
+        int index(int i, int j) {
+            return A.getOffset() + i * A.getStride() + j;
+        }
+    }
+
+    /**
+     * Entrywise operation of two operands. Operands reading straight from a
+     * double precision matrix are passed to the kernel without copying.
+     */
+    private static final class Binary extends Node {
+
+        private final Op op;
+        private final Node left;
+        private final Node right;
+
+        Binary(Op op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void eval(int i, int j, int len, double[] out, int outOff, double[][] scratch, int level) {
+            double[] a = left.array();
+            double[] b = right.array();
+            if (a != null && b != null) {
+                op.apply(a, left.index(i, j), b, right.index(i, j), out, outOff, len);
+            } else if (a != null) {
+                right.eval(i, j, len, out, outOff, scratch, level);
+                op.apply(a, left.index(i, j), out, outOff, out, outOff, len);
+            } else if (b != null) {
+                left.eval(i, j, len, out, outOff, scratch, level);
+                op.apply(out, outOff, b, right.index(i, j), out, outOff, len);
+            } else {
+                left.eval(i, j, len, out, outOff, scratch, level);
+                right.eval(i, j, len, scratch[level], 0, scratch, level + 1);
+                op.apply(out, outOff, scratch[level], 0, out, outOff, len);
+            }
+        }
+
+        @Override
+        int buffers() {
+            if (left.array() != null) {
+                return right.buffers();
+            } else if (right.array() != null) {
+                return left.buffers();
+            }
+            return Math.max(left.buffers(), right.buffers() + 1);
+        }
+
+        @Override
+        int cost() {
+            return left.cost() + right.cost();
+        }
+
+        @Override
+        boolean reads(Matrix C) {
+            return left.reads(C) || right.reads(C);
+        }
+    }
+
+    /**
+     * Multiplication with a scalar.
+     */
+    private static final class Scale extends Node {
+
+        private final double s;
+        private final Node child;
+
+        Scale(double s, Node child) {
+            this.s = s;
+            this.child = child;
+        }
+
+        @Override
+        void eval(int i, int j, int len, double[] out, int outOff, double[][] scratch, int level) {
+            double[] a = child.array();
+            if (a != null) {
+                BACKEND.scale(s, a, child.index(i, j), out, outOff, len);
+            } else {
+                child.eval(i, j, len, out, outOff, scratch, level);
+                BACKEND.scale(s, out, outOff, out, outOff, len);
+            }
+        }
+
+        @Override
+        int buffers() {
+            return child.buffers();
+        }
+
+        @Override
+        int cost() {
+            return child.cost() + 1;
+        }
+
+        @Override
+        boolean reads(Matrix C) {
+            return child.reads(C);
+        }
+    }
+
+    /**
+     * Function applied to every entry.
+     */
+    private static final class Map extends Node {
+
+        private final DoubleUnaryOperator f;
+        private final Node child;
+
+        Map(DoubleUnaryOperator f, Node child) {
+            this.f = f;
+            this.child = child;
+        }
+
+        @Override
+        void eval(int i, int j, int len, double[] out, int outOff, double[][] scratch, int level) {
+            double[] a = child.array();
+            if (a != null) {
+                int idx = child.index(i, j);
+                for (int k = 0; k < len; k++) {
+                    out[outOff + k] = f.applyAsDouble(a[idx + k]);
+                }
+            } else {
+                child.eval(i, j, len, out, outOff, scratch, level);
+                for (int k = 0; k < len; k++) {
+                    out[outOff + k] = f.applyAsDouble(out[outOff + k]);
+                }
+            }
+        }
+
+        @Override
+        int buffers() {
+            return child.buffers();
+        }
+
+        @Override
+        int cost() {
+            // functions like the sigmoid are far more expensive than a
+            // single arithmetic operation
+            return child.cost() + 8;
+        }
+
+        @Override
+        boolean reads(Matrix C) {
+            return child.reads(C);
+        }
+    }
+}
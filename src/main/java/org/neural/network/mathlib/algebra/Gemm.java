@@ -0,0 +1,450 @@
+package org.neural.network.mathlib.algebra;
+
+/**
+ * General matrix multiplication kernels working directly on row-major
+ * storage. Computes C += A * B where A is n x k, B is k x m and C is n x m.
+ *
+ * Small products use the plain ikj-Algorithm. Larger products are split into
+ * blocks that fit into the caches: a KC x NC block of B and a MC x KC block of
+ * A are packed into contiguous panels and multiplied by a register-blocked
+ * micro-kernel computing MR x NR entries of C at once with independent
+ * accumulators.
+ *
+ * Single precision matrices are packed into the same double precision panels,
+ * so they share the micro-kernel and accumulate in double precision. Matrices
+ * stored off-heap are packed element by element through their accessors, with
+ * explicit row and column strides so that transposed operands need no copy.
+ *
+ */
+final class Gemm {
+
+    /**
+     * Rows of C computed by one micro-kernel call.
+     */
+    static final int MR = 4;
+
+    /**
+     * Columns of C computed by one micro-kernel call.
+     */
+    static final int NR = 4;
+
+    /**
+     * Rows of A packed per block. MC x KC values are meant to stay in L2.
+     */
+    static final int MC = 64;
+
+    /**
+     * Shared dimension per block. KC x NR values of B are meant to stay in L1.
+     */
+    static final int KC = 256;
+
+    /**
+     * Columns of B packed per block.
+     */
+    static final int NC = 512;
+
+    /**
+     * Number of multiply-adds below which the plain loop is faster than
+     * packing.
+     */
+    static final long THRESHOLD = 32 * 32 * 32;
+
+    private static final ThreadLocal<double[][]> BUFFERS = ThreadLocal.withInitial(
+            () -> new double[][]{new double[MC * KC], new double[KC * NC], new double[MR * NR]});
+
+    private Gemm() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * Computes C += A * B choosing the kernel by the size of the product.
+     *
+     * @param n rows of A and C
+     * @param k columns of A and rows of B
+     * @param m columns of B and C
+     * @param a storage of A
+     * @param aOff offset of A
+     * @param aStride row stride of A
+     * @param b storage of B
+     * @param bOff offset of B
+     * @param bStride row stride of B
+     * @param c storage of C
+     * @param cOff offset of C
+     * @param cStride row stride of C
+     */
+    static void multiply(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        if ((long) n * k * m < THRESHOLD || n < MR || m < NR) {
+            naive(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+        } else {
+            blocked(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+        }
+    }
+
+    /**
+     * Computes C += A * B on single precision storage choosing the kernel by
+     * the size of the product.
+     */
+    static void multiply(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        if ((long) n * k * m < THRESHOLD || n < MR || m < NR) {
+            naive(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+        } else {
+            blocked(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+        }
+    }
+
+    /**
+     * Computes C += A * B on matrices with any storage. Entry (i, p) of A is
+     * read at {@code aOff + i * aRow + p * aCol}, entries of B likewise, and
+     * entry (i, j) of C is located at {@code cOff + i * c.getStride() + j}.
+     */
+    static void multiply(int n, int k, int m,
+            Matrix a, int aOff, int aRow, int aCol,
+            Matrix b, int bOff, int bRow, int bCol,
+            Matrix c, int cOff) {
+        int cStride = c.getStride();
+        if ((long) n * k * m < THRESHOLD || n < MR || m < NR) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < m; j++) {
+                    double s = 0;
+                    for (int p = 0; p < k; p++) {
+                        s += a.read(aOff + i * aRow + p * aCol) * b.read(bOff + p * bRow + j * bCol);
+                    }
+                    int idx = cOff + i * cStride + j;
+                    c.write(idx, c.read(idx) + s);
+                }
+            }
+            return;
+        }
+        double[][] buffers = BUFFERS.get();
+        double[] packedA = buffers[0];
+        double[] packedB = buffers[1];
+        double[] tile = buffers[2];
+        for (int jc = 0; jc < m; jc += NC) {
+            int nc = Math.min(NC, m - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, bOff + pc * bRow + jc * bCol, bRow, bCol, kc, nc, packedB);
+                for (int ic = 0; ic < n; ic += MC) {
+                    int mc = Math.min(MC, n - ic);
+                    packA(a, aOff + ic * aRow + pc * aCol, aRow, aCol, mc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            microKernel(kc, packedA, (ir / MR) * kc * MR, packedB, (jr / NR) * kc * NR, tile);
+                            int cTile = cOff + (ic + ir) * cStride + jc + jr;
+                            for (int ii = 0; ii < mr; ii++) {
+                                for (int jj = 0; jj < nr; jj++) {
+                                    int idx = cTile + ii * cStride + jj;
+                                    c.write(idx, c.read(idx) + tile[ii * NR + jj]);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C += A * B using the ikj-Algorithm.
+     */
+    static void naive(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        for (int i = 0; i < n; i++) {
+            int aRow = aOff + i * aStride;
+            int cRow = cOff + i * cStride;
+            for (int p = 0; p < k; p++) {
+                double aip = a[aRow + p];
+                int bRow = bOff + p * bStride;
+                for (int j = 0; j < m; j++) {
+                    c[cRow + j] += aip * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C += A * B on single precision storage using the
+     * ikj-Algorithm.
+     */
+    static void naive(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        for (int i = 0; i < n; i++) {
+            int aRow = aOff + i * aStride;
+            int cRow = cOff + i * cStride;
+            for (int p = 0; p < k; p++) {
+                float aip = a[aRow + p];
+                int bRow = bOff + p * bStride;
+                for (int j = 0; j < m; j++) {
+                    c[cRow + j] += aip * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C += A * B block by block using packed panels.
+     */
+    static void blocked(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        double[][] buffers = BUFFERS.get();
+        double[] packedA = buffers[0];
+        double[] packedB = buffers[1];
+        double[] tile = buffers[2];
+        for (int jc = 0; jc < m; jc += NC) {
+            int nc = Math.min(NC, m - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, bOff + pc * bStride + jc, bStride, kc, nc, packedB);
+                for (int ic = 0; ic < n; ic += MC) {
+                    int mc = Math.min(MC, n - ic);
+                    packA(a, aOff + ic * aStride + pc, aStride, mc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            microKernel(kc, packedA, (ir / MR) * kc * MR, packedB, (jr / NR) * kc * NR, tile);
+                            int cTile = cOff + (ic + ir) * cStride + jc + jr;
+                            for (int ii = 0; ii < mr; ii++) {
+                                for (int jj = 0; jj < nr; jj++) {
+                                    c[cTile + ii * cStride + jj] += tile[ii * NR + jj];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C += A * B on single precision storage block by block using
+     * packed double precision panels.
+     */
+    static void blocked(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        double[][] buffers = BUFFERS.get();
+        double[] packedA = buffers[0];
+        double[] packedB = buffers[1];
+        double[] tile = buffers[2];
+        for (int jc = 0; jc < m; jc += NC) {
+            int nc = Math.min(NC, m - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, bOff + pc * bStride + jc, bStride, kc, nc, packedB);
+                for (int ic = 0; ic < n; ic += MC) {
+                    int mc = Math.min(MC, n - ic);
+                    packA(a, aOff + ic * aStride + pc, aStride, mc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            microKernel(kc, packedA, (ir / MR) * kc * MR, packedB, (jr / NR) * kc * NR, tile);
+                            int cTile = cOff + (ic + ir) * cStride + jc + jr;
+                            for (int ii = 0; ii < mr; ii++) {
+                                for (int jj = 0; jj < nr; jj++) {
+                                    c[cTile + ii * cStride + jj] += (float) tile[ii * NR + jj];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs a kc x nc block of B into panels of NR columns. Every panel stores
+     * its values row by row so the micro-kernel reads them sequentially.
+     * Missing columns of the last panel are padded with zeros.
+     */
+    private static void packB(double[] b, int off, int stride, int kc, int nc, double[] packed) {
+        int idx = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; p++) {
+                int row = off + p * stride + jr;
+                for (int jj = 0; jj < nr; jj++) {
+                    packed[idx + jj] = b[row + jj];
+                }
+                for (int jj = nr; jj < NR; jj++) {
+                    packed[idx + jj] = 0;
+                }
+                idx += NR;
+            }
+        }
+    }
+
+    /**
+     * Packs a kc x nc block of single precision B into panels of NR columns.
+     */
+    private static void packB(float[] b, int off, int stride, int kc, int nc, double[] packed) {
+        int idx = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; p++) {
+                int row = off + p * stride + jr;
+                for (int jj = 0; jj < nr; jj++) {
+                    packed[idx + jj] = b[row + jj];
+                }
+                for (int jj = nr; jj < NR; jj++) {
+                    packed[idx + jj] = 0;
+                }
+                idx += NR;
+            }
+        }
+    }
+
+    /**
+     * Packs a kc x nc block of B with any storage into panels of NR columns.
+     */
+    private static void packB(Matrix b, int off, int rowStride, int colStride, int kc, int nc, double[] packed) {
+        int idx = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; p++) {
+                int row = off + p * rowStride + jr * colStride;
+                for (int jj = 0; jj < nr; jj++) {
+                    packed[idx + jj] = b.read(row + jj * colStride);
+                }
+                for (int jj = nr; jj < NR; jj++) {
+                    packed[idx + jj] = 0;
+                }
+                idx += NR;
+            }
+        }
+    }
+
+    /**
+     * Packs a mc x kc block of A into panels of MR rows. Every panel stores its
+     * values column by column so the micro-kernel reads them sequentially.
+     * Missing rows of the last panel are padded with zeros.
+     */
+    private static void packA(double[] a, int off, int stride, int mc, int kc, double[] packed) {
+        int idx = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; p++) {
+                int col = off + ir * stride + p;
+                for (int ii = 0; ii < mr; ii++) {
+                    packed[idx + ii] = a[col + ii * stride];
+                }
+                for (int ii = mr; ii < MR; ii++) {
+                    packed[idx + ii] = 0;
+                }
+                idx += MR;
+            }
+        }
+    }
+
+    /**
+     * Packs a mc x kc block of single precision A into panels of MR rows.
+     */
+    private static void packA(float[] a, int off, int stride, int mc, int kc, double[] packed) {
+        int idx = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; p++) {
+                int col = off + ir * stride + p;
+                for (int ii = 0; ii < mr; ii++) {
+                    packed[idx + ii] = a[col + ii * stride];
+                }
+                for (int ii = mr; ii < MR; ii++) {
+                    packed[idx + ii] = 0;
+                }
+                idx += MR;
+            }
+        }
+    }
+
+    /**
+     * Packs a mc x kc block of A with any storage into panels of MR rows.
+     */
+    private static void packA(Matrix a, int off, int rowStride, int colStride, int mc, int kc, double[] packed) {
+        int idx = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; p++) {
+                int col = off + ir * rowStride + p * colStride;
+                for (int ii = 0; ii < mr; ii++) {
+                    packed[idx + ii] = a.read(col + ii * rowStride);
+                }
+                for (int ii = mr; ii < MR; ii++) {
+                    packed[idx + ii] = 0;
+                }
+                idx += MR;
+            }
+        }
+    }
+
+    /**
+     * Computes a MR x NR tile keeping all sixteen partial sums in local
+     * variables, so every loaded value of A and B is used four times. The
+     * tile is stored row by row.
+     */
+    private static void microKernel(int kc, double[] pa, int aIdx, double[] pb, int bIdx, double[] tile) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++) {
+            double a0 = pa[aIdx];
+            double a1 = pa[aIdx + 1];
+            double a2 = pa[aIdx + 2];
+            double a3 = pa[aIdx + 3];
+            double b0 = pb[bIdx];
+            double b1 = pb[bIdx + 1];
+            double b2 = pb[bIdx + 2];
+            double b3 = pb[bIdx + 3];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+            aIdx += MR;
+            bIdx += NR;
+        }
+        tile[0] = c00;
+        tile[1] = c01;
+        tile[2] = c02;
+        tile[3] = c03;
+        tile[4] = c10;
+        tile[5] = c11;
+        tile[6] = c12;
+        tile[7] = c13;
+        tile[8] = c20;
+        tile[9] = c21;
+        tile[10] = c22;
+        tile[11] = c23;
+        tile[12] = c30;
+        tile[13] = c31;
+        tile[14] = c32;
+        tile[15] = c33;
+    }
+}
@@ -1,27 +1,124 @@
 package org.neural.network.mathlib.algebra;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Representation of a real matrix with customizable widht and height. First
  * index is always the row number and second index is always the column number.
  *
+ * The values are stored row-major in a single contiguous array. Every matrix
+ * has an offset pointing to its first entry and a stride giving the distance
+ * between two consecutive rows. That way rows, columns and sub-blocks can be
+ * handed out as views sharing the storage of their parent matrix.
+ *
+ * Values are stored either in double or in single precision (see
+ * {@link Precision}). Operations whose operands all share the same precision
+ * run on specialized kernels. Mixed operations are supported as well but
+ * convert every value on the fly. Results allocated by an operation have the
+ * precision of the matrix the operation was called on.
+ *
+ * Matrices can also be stored outside of the Java heap (see
+ * {@link #allocateOffHeap(int, int, Precision)}) to keep large datasets and
+ * weights away from the garbage collector. Operations on them use generic
+ * loops and a packed GEMM. Results allocated by an operation are always
+ * stored on the heap.
+ *
  */
 public class Matrix {
 
+    private static final ComputeBackend BACKEND = Backends.get();
+
+    /**
+     * Alignment of off-heap storage in bytes, matching a cache line.
+     */
+    private static final int ALIGNMENT = 64;
+
+    /**
+     * Number of columns of a product computed before an epilogue runs on
+     * them. Small enough to keep a chunk of a typical layer in the cache,
+     * large enough to amortize packing the left operand.
+     */
+    private static final int EPILOGUE_COLUMNS = 128;
+
     private final int n;
     private final int m;
-    private final double[][] A;
+    private final double[] data;
+    private final float[] floatData;
+    private final DoubleBuffer buffer;
+    private final FloatBuffer floatBuffer;
+    private final int offset;
+    private final int stride;
+
+    /**
+     * Initializes a matrix on top of existing storage. Used for views. Exactly
+     * one of the storages must be given.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param data double precision storage holding the values
+     * @param floatData single precision storage holding the values
+     * @param buffer double precision off-heap storage holding the values
+     * @param floatBuffer single precision off-heap storage holding the values
+     * @param offset index of the first entry in the storage
+     * @param stride distance between two consecutive rows in the storage
+     */
+    private Matrix(int n, int m, double[] data, float[] floatData, DoubleBuffer buffer, FloatBuffer floatBuffer, int offset, int stride) {
+        this.n = n;
+        this.m = m;
+        this.data = data;
+        this.floatData = floatData;
+        this.buffer = buffer;
+        this.floatBuffer = floatBuffer;
+        this.offset = offset;
+        this.stride = stride;
+    }
+
+    /**
+     * Initializes a matrix wrapping a row-major array. The array is not copied.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param data row-major values with at least n * m entries
+     */
+    public Matrix(int n, int m, double[] data) {
+        this(n, m, data, null, null, null, 0, m);
+        if (data.length < n * m) {
+            throw new IllegalArgumentException("Array too small for a " + n + "x" + m + " matrix");
+        }
+    }
+
+    /**
+     * Initializes a single precision matrix wrapping a row-major array. The
+     * array is not copied.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param data row-major values with at least n * m entries
+     */
+    public Matrix(int n, int m, float[] data) {
+        this(n, m, null, data, null, null, 0, m);
+        if (data.length < n * m) {
+            throw new IllegalArgumentException("Array too small for a " + n + "x" + m + " matrix");
+        }
+    }
 
     /**
-     * Initializes the matrix using predefined values.
+     * Initializes the matrix using predefined values. The values are copied
+     * into the contiguous storage of the matrix.
      *
      * @param A values that the matrix should consist of
      */
     public Matrix(double[][] A) {
-        this.A = A;
-        this.n = A.length;
-        this.m = A[0].length;
+        this(A.length, A[0].length);
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(A[i], 0, data, i * m, m);
+        }
     }
 
     /**
@@ -31,7 +128,21 @@ public class Matrix {
      * @param m number of columns
      */
     public Matrix(int n, int m) {
-        this(new double[n][m]);
+        this(n, m, Precision.DOUBLE);
+    }
+
+    /**
+     * Initializes an empty matrix of the given size and precision.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param precision precision of the values
+     */
+    public Matrix(int n, int m, Precision precision) {
+        this(n, m,
+                precision == Precision.DOUBLE ? new double[n * m] : null,
+                precision == Precision.SINGLE ? new float[n * m] : null,
+                null, null, 0, m);
     }
 
     /**
@@ -40,15 +151,73 @@ public class Matrix {
      * @param cols the columns that the matrix should consist ofs
      */
     public Matrix(Vector... cols) {
-        this(cols[0].getN(), cols.length);
+        this(Precision.DOUBLE, cols);
+    }
+
+    /**
+     * Initializes the matrix with the given precision using column vectors.
+     *
+     * @param precision precision of the values
+     * @param cols the columns that the matrix should consist ofs
+     */
+    public Matrix(Precision precision, Vector... cols) {
+        this(cols[0].getN(), cols.length, precision);
+        // filled through the arrays directly, calling the overridable write()
+        // would let this escape before a subclass is initialized
         for (int j = 0; j < m; j++) {
             double[] b = cols[j].getArray();
             for (int i = 0; i < n; i++) {
-                A[i][j] = b[i];
+                if (data != null) {
+                    data[i * m + j] = b[i];
+                } else {
+                    floatData[i * m + j] = (float) b[i];
+                }
             }
         }
     }
 
+    /**
+     * Allocates an empty double precision matrix outside of the Java heap.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @return off-heap matrix
+     */
+    public static Matrix allocateOffHeap(int n, int m) {
+        return allocateOffHeap(n, m, Precision.DOUBLE);
+    }
+
+    /**
+     * Allocates an empty matrix outside of the Java heap. The storage is
+     * aligned to 64 bytes and released once the matrix and all of its views
+     * are no longer reachable. Off-heap memory is limited by
+     * -XX:MaxDirectMemorySize which defaults to the maximum heap size.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param precision precision of the values
+     * @return off-heap matrix
+     */
+    public static Matrix allocateOffHeap(int n, int m, Precision precision) {
+        if (n < 0 || m < 0) {
+            throw new IllegalArgumentException("Matrix size must not be negative");
+        }
+        int bytesPerValue = precision == Precision.DOUBLE ? Double.BYTES : Float.BYTES;
+        long bytes = ((long) n * m * bytesPerValue + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        if (bytes + ALIGNMENT > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Off-heap matrix too large: " + n + "x" + m);
+        }
+        // alignedSlice rounds both ends to the alignment, so allocate a whole
+        // number of aligned blocks plus one block of slack
+        ByteBuffer bytesBuffer = ByteBuffer.allocateDirect((int) bytes + ALIGNMENT)
+                .alignedSlice(ALIGNMENT)
+                .order(ByteOrder.nativeOrder());
+        if (precision == Precision.DOUBLE) {
+            return new Matrix(n, m, null, null, bytesBuffer.asDoubleBuffer(), null, 0, m);
+        }
+        return new Matrix(n, m, null, null, null, bytesBuffer.asFloatBuffer(), 0, m);
+    }
+
     /**
      * Transposes the Matrix. Imagine it being like an 90 degree rotation.
      * Columns become rows and rows become columns.
@@ -56,10 +225,11 @@ public class Matrix {
      * @return transposed matrix
      */
     public Matrix transpose() {
-        Matrix transposed = new Matrix(m, n);
+        Matrix transposed = new Matrix(m, n, getPrecision());
         for (int i = 0; i < n; i++) {
+            int row = offset + i * stride;
             for (int j = 0; j < m; j++) {
-                transposed.A[j][i] = A[i][j];
+                transposed.write(j * n + i, read(row + j));
             }
         }
         return transposed;
@@ -72,16 +242,53 @@ public class Matrix {
      * @return resulting matrix
      */
     public Matrix addVec(Vector b) {
-        Matrix C = new Matrix(n, m);
+        return addVecInto(b, like());
+    }
+
+    /**
+     * Adds a vector to every column in the matrix and stores the result in
+     * another matrix.
+     *
+     * @param b vector to be added to the columns
+     * @param C matrix of the same size receiving the result. May be this
+     * matrix itself
+     * @return C
+     */
+    public Matrix addVecInto(Vector b, Matrix C) {
+        if (b.getN() != n) {
+            throw new IllegalArgumentException("Vector size does not match row count");
+        }
+        checkSameSize(C);
+        checkElementwiseAlias(C, this);
         double[] ba = b.getArray();
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                C.A[i][j] = A[i][j] + ba[i];
+        Parallelism.forRange(Backends.Operation.ELEMENTWISE, n, m, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int row = offset + i * stride;
+                int cRow = C.offset + i * C.stride;
+                if (data != null && C.data != null) {
+                    BACKEND.addScalar(ba[i], data, row, C.data, cRow, m);
+                } else if (floatData != null && C.floatData != null) {
+                    BACKEND.addScalar((float) ba[i], floatData, row, C.floatData, cRow, m);
+                } else {
+                    for (int j = 0; j < m; j++) {
+                        C.write(cRow + j, read(row + j) + ba[i]);
+                    }
+                }
             }
-        }
+        });
         return C;
     }
 
+    /**
+     * Adds a vector to every column in the matrix, overwriting its values.
+     *
+     * @param b vector to be added to the columns
+     * @return this matrix
+     */
+    public Matrix addVecInPlace(Vector b) {
+        return addVecInto(b, this);
+    }
+
     /**
      * Adds another matrix.
      *
@@ -89,15 +296,163 @@ public class Matrix {
      * @return resulting matrix
      */
     public Matrix addMat(Matrix B) {
-        Matrix C = new Matrix(n, m);
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                C.A[i][j] = A[i][j] + B.A[i][j];
-            }
+        return addMatInto(B, like());
+    }
+
+    /**
+     * Adds another matrix and stores the result in a third matrix.
+     *
+     * @param B matrix with values to add
+     * @param C matrix of the same size receiving the result. May be one of the
+     * operands
+     * @return C
+     */
+    public Matrix addMatInto(Matrix B, Matrix C) {
+        checkElementwise(B, C);
+        if (allDouble(B, C)) {
+            elementwise(B, C, (a, b, c, len) -> BACKEND.add(data, a, B.data, b, C.data, c, len));
+        } else if (allSingle(B, C)) {
+            elementwise(B, C, (a, b, c, len) -> BACKEND.add(floatData, a, B.floatData, b, C.floatData, c, len));
+        } else {
+            elementwise(B, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.write(c + j, read(a + j) + B.read(b + j));
+                }
+            });
         }
         return C;
     }
 
+    /**
+     * Adds another matrix, overwriting the values of this matrix.
+     *
+     * @param B matrix with values to add
+     * @return this matrix
+     */
+    public Matrix addMatInPlace(Matrix B) {
+        return addMatInto(B, this);
+    }
+
+    /**
+     * Adds a scaled matrix, overwriting the values of this matrix:
+     * this = this + s * B.
+     *
+     * @param s scalar to multiply B with
+     * @param B matrix with values to add
+     * @return this matrix
+     */
+    public Matrix addScaledInPlace(double s, Matrix B) {
+        checkElementwise(B, this);
+        if (allDouble(B, this)) {
+            elementwise(B, this, (a, b, c, len) -> BACKEND.axpy(s, B.data, b, data, a, len));
+        } else if (allSingle(B, this)) {
+            elementwise(B, this, (a, b, c, len) -> BACKEND.axpy((float) s, B.floatData, b, floatData, a, len));
+        } else {
+            elementwise(B, this, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    write(a + j, read(a + j) + s * B.read(b + j));
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Scales this matrix and adds a scaled matrix in a single pass,
+     * overwriting the values of this matrix: this = r * this + s * B.
+     *
+     * @param r scalar to multiply this matrix with
+     * @param s scalar to multiply B with
+     * @param B matrix with values to add
+     * @return this matrix
+     */
+    public Matrix scaleAddScaledInPlace(double r, double s, Matrix B) {
+        checkElementwise(B, this);
+        if (allDouble(B, this)) {
+            double[] x = B.data;
+            elementwise(B, this, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    data[a + j] = r * data[a + j] + s * x[b + j];
+                }
+            });
+        } else if (allSingle(B, this)) {
+            float[] x = B.floatData;
+            float rf = (float) r;
+            float sf = (float) s;
+            elementwise(B, this, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    floatData[a + j] = rf * floatData[a + j] + sf * x[b + j];
+                }
+            });
+        } else {
+            elementwise(B, this, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    write(a + j, r * read(a + j) + s * B.read(b + j));
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Combines every entry with the corresponding entry of another matrix in
+     * a single pass, overwriting the values of this matrix:
+     * this = f(this, B).
+     *
+     * @param B matrix with the second arguments
+     * @param f function applied to each pair of entries
+     * @return this matrix
+     */
+    public Matrix zipInPlace(Matrix B, DoubleBinaryOperator f) {
+        checkElementwise(B, this);
+        if (allDouble(B, this)) {
+            double[] x = B.data;
+            elementwise(B, this, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    data[a + j] = f.applyAsDouble(data[a + j], x[b + j]);
+                }
+            });
+        } else {
+            elementwise(B, this, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    write(a + j, f.applyAsDouble(read(a + j), B.read(b + j)));
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Combines every entry with the corresponding entries of two other
+     * matrices in a single pass, overwriting the values of this matrix:
+     * this = f(this, B, C).
+     *
+     * @param B matrix with the second arguments
+     * @param C matrix with the third arguments
+     * @param f function applied to each triple of entries
+     * @return this matrix
+     */
+    public Matrix zipInPlace(Matrix B, Matrix C, DoubleTernaryOperator f) {
+        checkElementwise(B, this);
+        checkElementwise(C, this);
+        if (allDouble(B, C)) {
+            double[] x = B.data;
+            double[] y = C.data;
+            elementwise(B, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    data[a + j] = f.applyAsDouble(data[a + j], x[b + j], y[c + j]);
+                }
+            });
+        } else {
+            elementwise(B, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    write(a + j, f.applyAsDouble(read(a + j), B.read(b + j), C.read(c + j)));
+                }
+            });
+        }
+        return this;
+    }
+
     /**
      * Subtracts another Matrix.
      *
@@ -105,191 +460,1260 @@ public class Matrix {
      * @return resulting matrix
      */
     public Matrix subMat(Matrix B) {
-        Matrix C = new Matrix(n, m);
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                C.A[i][j] = A[i][j] - B.A[i][j];
-            }
+        return subMatInto(B, like());
+    }
+
+    /**
+     * Subtracts another matrix and stores the result in a third matrix.
+     *
+     * @param B matrix with values to subtract
+     * @param C matrix of the same size receiving the result. May be one of the
+     * operands
+     * @return C
+     */
+    public Matrix subMatInto(Matrix B, Matrix C) {
+        checkElementwise(B, C);
+        if (allDouble(B, C)) {
+            elementwise(B, C, (a, b, c, len) -> BACKEND.sub(data, a, B.data, b, C.data, c, len));
+        } else if (allSingle(B, C)) {
+            elementwise(B, C, (a, b, c, len) -> BACKEND.sub(floatData, a, B.floatData, b, C.floatData, c, len));
+        } else {
+            elementwise(B, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.write(c + j, read(a + j) - B.read(b + j));
+                }
+            });
         }
         return C;
     }
 
     /**
-     * Multiplies with another Matrix. Uses the ikj-Algorithm.
+     * Subtracts another matrix, overwriting the values of this matrix.
+     *
+     * @param B matrix with values to subtract
+     * @return this matrix
+     */
+    public Matrix subMatInPlace(Matrix B) {
+        return subMatInto(B, this);
+    }
+
+    /**
+     * Multiplies with another Matrix. Small products use the ikj-Algorithm,
+     * larger ones a cache-blocked kernel (see {@link Gemm} and {@link ComputeBackend}).
      *
      * @param B matrix to multiply with
      * @return resulting matrix
      */
     public Matrix mulMat(Matrix B) {
-        Matrix C = new Matrix(n, B.m);
-        for (int i = 0; i < n; i++) {
-            for (int k = 0; k < B.n; k++) {
-                for (int j = 0; j < B.m; j++) {
-                    C.A[i][j] += A[i][k] * B.A[k][j];
-                }
-            }
+        return mulMatInto(B, new Matrix(n, B.m, getPrecision()));
+    }
+
+    /**
+     * Multiplies with another matrix and stores the result in a third matrix.
+     * Heap operands with a precision different from the result are converted
+     * first.
+     *
+     * @param B matrix to multiply with
+     * @param C matrix receiving the result. Must not share any entries with
+     * one of the operands
+     * @return C
+     */
+    public Matrix mulMatInto(Matrix B, Matrix C) {
+        if (m != B.n) {
+            throw new IllegalArgumentException("Column count does not match row count of other matrix");
         }
+        if (C.n != n || C.m != B.m) {
+            throw new IllegalArgumentException("Result matrix must be " + n + "x" + B.m);
+        }
+        checkProductAlias(B, C);
+        multiply(B, C, null);
         return C;
     }
 
     /**
-     * Takes the hadamard product with another matrix. That means multiplying
-     * the values in place.
+     * Computes one layer of a neural network in a single pass: values = this *
+     * B + b with b added to every column, and activations = f(values). The
+     * bias and the function are applied to every block of the product right
+     * after it was computed, while it is still in the cache.
      *
-     * @param B matrix with values to multiply with
-     * @return resulting matrix
+     * @param B matrix to multiply with
+     * @param b vector with one entry per row to add to every column
+     * @param f function to apply to every entry
+     * @param values matrix of size n x B.m receiving the values before f was
+     * applied. Must not share any entries with the operands
+     * @param activations matrix of size n x B.m receiving the values after f
+     * was applied. Must not share any entries with the operands. May be
+     * values itself if the values before f are not needed
+     * @return activations
      */
-    public Matrix hadamardMat(Matrix B) {
-        Matrix C = new Matrix(n, m);
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                C.A[i][j] = A[i][j] * B.A[i][j];
-            }
+    public Matrix mulMatAddVecMapInto(Matrix B, Vector b, DoubleUnaryOperator f, Matrix values, Matrix activations) {
+        if (m != B.n) {
+            throw new IllegalArgumentException("Column count does not match row count of other matrix");
         }
-        return C;
+        checkLayer(B.m, b, values, activations);
+        checkProductAlias(B, values);
+        checkProductAlias(B, activations);
+        multiply(B, values, (r0, r1, c0, c1) -> addVecMap(b, f, values, activations, r0, r1, c0, c1));
+        return activations;
     }
 
     /**
-     * Multiplies with a column vector.
+     * Computes one layer of a neural network with a sparse input in a single
+     * pass: values = this * B + b with b added to every column, and
+     * activations = f(values).
      *
-     * @param b vector to multiply with
-     * @return resulting vector
+     * @param B sparse matrix to multiply with
+     * @param b vector with one entry per row to add to every column
+     * @param f function to apply to every entry
+     * @param values matrix of size n x B.m receiving the values before f was
+     * applied. Must not share any entries with this matrix
+     * @param activations matrix of size n x B.m receiving the values after f
+     * was applied. Must not share any entries with this matrix. May be values
+     * itself if the values before f are not needed
+     * @return activations
      */
-    public Vector mulVec(Vector b) {
-        double[] c = new double[n];
-        double[] ba = b.getArray();
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                c[i] += A[i][j] * ba[j];
-            }
+    public Matrix mulMatAddVecMapInto(SparseMatrix B, Vector b, DoubleUnaryOperator f, Matrix values, Matrix activations) {
+        if (m != B.getN()) {
+            throw new IllegalArgumentException("Column count does not match row count of other matrix");
+        }
+        checkLayer(B.getM(), b, values, activations);
+        if (values.overlaps(this) || activations.overlaps(this)) {
+            throw new IllegalArgumentException("Result matrix must not share entries with the operands");
         }
-        return new Vector(c);
+        values.fill(0);
+        Parallelism.forRange(Backends.Operation.GEMM, n, m + B.getNonZeros(), (from, to) -> {
+            B.mulLeft(this, values, from, to);
+            addVecMap(b, f, values, activations, from, to, 0, B.getM());
+        });
+        return activations;
     }
 
     /**
-     * Multiplies every single entry with a scalar.
+     * Checks sizes and aliasing of the results of a layer computation.
      *
-     * @param s scalar to multiply with
-     * @return resulting matrix
+     * @param cols column count of the results
+     * @param b bias vector
+     * @param values matrix receiving the values before the function
+     * @param activations matrix receiving the values after the function
      */
-    public Matrix mulSca(double s) {
-        Matrix C = new Matrix(n, m);
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                C.A[i][j] = s * A[i][j];
-            }
+    private void checkLayer(int cols, Vector b, Matrix values, Matrix activations) {
+        if (b.getN() != n) {
+            throw new IllegalArgumentException("Vector size does not match row count");
         }
-        return C;
+        if (values.n != n || values.m != cols || activations.n != n || activations.m != cols) {
+            throw new IllegalArgumentException("Result matrices must be " + n + "x" + cols);
+        }
+        checkElementwiseAlias(activations, values);
     }
 
     /**
-     * Sums all columns to one vector with size n.
+     * Adds a vector to every column of a block of Z and writes f of the sums
+     * into the same block of A.
      *
-     * @return vector with sum of all columns
+     * @param b vector to add, one entry per row
+     * @param f function to apply
+     * @param Z matrix holding the block, receiving the sums
+     * @param A matrix receiving f of the sums, may be Z itself
+     * @param r0 first row of the block
+     * @param r1 end of rows of the block
+     * @param c0 first column of the block
+     * @param c1 end of columns of the block
      */
-    public Vector sumCols() {
-        double[] c = new double[n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                c[i] += A[i][j];
+    private static void addVecMap(Vector b, DoubleUnaryOperator f, Matrix Z, Matrix A, int r0, int r1, int c0, int c1) {
+        double[] ba = b.getArray();
+        for (int i = r0; i < r1; i++) {
+            int zRow = Z.offset + i * Z.stride;
+            int aRow = A.offset + i * A.stride;
+            double bi = ba[i];
+            if (Z.data != null && A.data != null) {
+                for (int j = c0; j < c1; j++) {
+                    double z = Z.data[zRow + j] + bi;
+                    Z.data[zRow + j] = z;
+                    A.data[aRow + j] = f.applyAsDouble(z);
+                }
+            } else if (Z.floatData != null && A.floatData != null) {
+                for (int j = c0; j < c1; j++) {
+                    float z = Z.floatData[zRow + j] + (float) bi;
+                    Z.floatData[zRow + j] = z;
+                    A.floatData[aRow + j] = (float) f.applyAsDouble(z);
+                }
+            } else {
+                for (int j = c0; j < c1; j++) {
+                    Z.write(zRow + j, Z.read(zRow + j) + bi);
+                    A.write(aRow + j, f.applyAsDouble(Z.read(zRow + j)));
+                }
             }
         }
-        return new Vector(c);
     }
 
     /**
-     * Gets all columns as vectors out of the matrix.
+     * Computes C = this * B block by block, running an optional epilogue on
+     * every finished block of C. With an epilogue, the columns of every block
+     * are computed in chunks so that the epilogue finds them in the cache.
      *
-     * @return columns as vector array
+     * @param B matrix to multiply with
+     * @param C matrix receiving the result
+     * @param epilogue work to run on every finished block of C, may be null
      */
-    public Vector[] getCols() {
-        Vector[] result = new Vector[m];
-        for (int j = 0; j < m; j++) {
-            double[] v = new double[n];
-            for (int i = 0; i < n; i++) {
-                v[i] = A[i][j];
+    private void multiply(Matrix B, Matrix C, Parallelism.BlockTask epilogue) {
+        Parallelism.BlockTask product;
+        if (isOffHeap() || B.isOffHeap() || C.isOffHeap()) {
+            product = (r0, r1, c0, c1) -> Gemm.multiply(r1 - r0, m, c1 - c0,
+                    this, offset + r0 * stride, stride, 1,
+                    B, B.offset + c0, B.stride, 1,
+                    C, C.offset + r0 * C.stride + c0);
+        } else {
+            Matrix A = toPrecision(C.getPrecision());
+            Matrix D = B.toPrecision(C.getPrecision());
+            if (C.data != null) {
+                product = (r0, r1, c0, c1) -> BACKEND.gemm(r1 - r0, m, c1 - c0,
+                        A.data, A.offset + r0 * A.stride, A.stride,
+                        D.data, D.offset + c0, D.stride,
+                        C.data, C.offset + r0 * C.stride + c0, C.stride);
+            } else {
+                product = (r0, r1, c0, c1) -> BACKEND.gemm(r1 - r0, m, c1 - c0,
+                        A.floatData, A.offset + r0 * A.stride, A.stride,
+                        D.floatData, D.offset + c0, D.stride,
+                        C.floatData, C.offset + r0 * C.stride + c0, C.stride);
             }
-            result[j] = new Vector(v);
         }
-        return result;
+        C.fill(0);
+        if (epilogue == null) {
+            Parallelism.forBlocks(n, B.m, m, product);
+        } else {
+            Parallelism.forBlocks(n, B.m, m, (r0, r1, c0, c1) -> {
+                for (int c = c0; c < c1; c += EPILOGUE_COLUMNS) {
+                    int end = Math.min(c1, c + EPILOGUE_COLUMNS);
+                    product.run(r0, r1, c, end);
+                    epilogue.run(r0, r1, c, end);
+                }
+            });
+        }
     }
 
     /**
-     * Gets row count.
+     * Multiplies the transpose of this matrix with another matrix without
+     * transposing it in memory.
      *
-     * @return row count
+     * @param B matrix to multiply with, must have the same row count
+     * @return resulting matrix of size m x B.m
      */
-    public int getN() {
-        return n;
+    public Matrix mulTransposeA(Matrix B) {
+        return mulTransposeAInto(B, new Matrix(m, B.m, getPrecision()));
     }
 
     /**
-     * Gets column count
-     *
+     * Multiplies the transpose of this matrix with another matrix without
+     * transposing it in memory and stores the result in a third matrix.
+     * Operands with a precision different from the result are converted first.
      *
-     * @return column count
+     * @param B matrix to multiply with, must have the same row count
+     * @param C matrix of size m x B.m receiving the result. Must not share
+     * any entries with one of the operands
+     * @return C
      */
-    public int getM() {
-        return m;
+    public Matrix mulTransposeAInto(Matrix B, Matrix C) {
+        if (n != B.n) {
+            throw new IllegalArgumentException("Row count does not match row count of other matrix");
+        }
+        if (C.n != m || C.m != B.m) {
+            throw new IllegalArgumentException("Result matrix must be " + m + "x" + B.m);
+        }
+        checkProductAlias(B, C);
+        if (isOffHeap() || B.isOffHeap() || C.isOffHeap()) {
+            C.fill(0);
+            Parallelism.forBlocks(m, B.m, n, (r0, r1, c0, c1) -> Gemm.multiply(r1 - r0, n, c1 - c0,
+                    this, offset + r0, 1, stride,
+                    B, B.offset + c0, B.stride, 1,
+                    C, C.offset + r0 * C.stride + c0));
+            return C;
+        }
+        Matrix A = toPrecision(C.getPrecision());
+        Matrix D = B.toPrecision(C.getPrecision());
+        C.fill(0);
+        if (C.data != null) {
+            Parallelism.forBlocks(m, D.m, n, (r0, r1, c0, c1) -> BACKEND.gemmTransA(r1 - r0, n, c1 - c0,
+                    A.data, A.offset + r0, A.stride,
+                    D.data, D.offset + c0, D.stride,
+                    C.data, C.offset + r0 * C.stride + c0, C.stride));
+        } else {
+            Parallelism.forBlocks(m, D.m, n, (r0, r1, c0, c1) -> BACKEND.gemmTransA(r1 - r0, n, c1 - c0,
+                    A.floatData, A.offset + r0, A.stride,
+                    D.floatData, D.offset + c0, D.stride,
+                    C.floatData, C.offset + r0 * C.stride + c0, C.stride));
+        }
+        return C;
     }
 
     /**
-     * Gets all values as array.
+     * Multiplies with the transpose of another matrix without transposing it
+     * in memory.
      *
-     * @return all values as array
+     * @param B matrix whose transpose to multiply with, must have the same
+     * column count
+     * @return resulting matrix of size n x B.n
      */
-    public double[][] getArray() {
-        return A;
+    public Matrix mulTransposeB(Matrix B) {
+        return mulTransposeBInto(B, new Matrix(n, B.n, getPrecision()));
     }
 
     /**
-     * Compares every entry of the matrix with another matrix.
+     * Multiplies with the transpose of another matrix without transposing it
+     * in memory and stores the result in a third matrix. Operands with a
+     * precision different from the result are converted first.
      *
-     * @param o other matrix to compare with
-     * @return true if matrices equal false if not
+     * @param B matrix whose transpose to multiply with, must have the same
+     * column count
+     * @param C matrix of size n x B.n receiving the result. Must not share
+     * any entries with one of the operands
+     * @return C
      */
-    @Override
-    public boolean equals(Object o) {
-        if (!(o instanceof Matrix)) {
-            return false;
+    public Matrix mulTransposeBInto(Matrix B, Matrix C) {
+        if (m != B.m) {
+            throw new IllegalArgumentException("Column count does not match column count of other matrix");
         }
-        Matrix B = ((Matrix) o);
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                if (A[i][j] != B.A[i][j]) {
-                    return false;
-                }
-            }
+        if (C.n != n || C.m != B.n) {
+            throw new IllegalArgumentException("Result matrix must be " + n + "x" + B.n);
         }
-        return true;
+        checkProductAlias(B, C);
+        if (isOffHeap() || B.isOffHeap() || C.isOffHeap()) {
+            C.fill(0);
+            Parallelism.forBlocks(n, B.n, m, (r0, r1, c0, c1) -> Gemm.multiply(r1 - r0, m, c1 - c0,
+                    this, offset + r0 * stride, stride, 1,
+                    B, B.offset + c0 * B.stride, 1, B.stride,
+                    C, C.offset + r0 * C.stride + c0));
+            return C;
+        }
+        Matrix A = toPrecision(C.getPrecision());
+        Matrix D = B.toPrecision(C.getPrecision());
+        C.fill(0);
+        if (C.data != null) {
+            Parallelism.forBlocks(n, D.n, m, (r0, r1, c0, c1) -> BACKEND.gemmTransB(r1 - r0, m, c1 - c0,
+                    A.data, A.offset + r0 * A.stride, A.stride,
+                    D.data, D.offset + c0 * D.stride, D.stride,
+                    C.data, C.offset + r0 * C.stride + c0, C.stride));
+        } else {
+            Parallelism.forBlocks(n, D.n, m, (r0, r1, c0, c1) -> BACKEND.gemmTransB(r1 - r0, m, c1 - c0,
+                    A.floatData, A.offset + r0 * A.stride, A.stride,
+                    D.floatData, D.offset + c0 * D.stride, D.stride,
+                    C.floatData, C.offset + r0 * C.stride + c0, C.stride));
+        }
+        return C;
     }
 
     /**
-     * Generates hashcode.
+     * Multiplies with a sparse matrix. Needs work proportional to the number of
+     * non-zero entries of B instead of its size.
      *
-     * @return hashcode
+     * @param B sparse matrix to multiply with
+     * @return resulting matrix
      */
-    @Override
-    public int hashCode() {
-        int hash = 5;
-        hash = 67 * hash + Arrays.deepHashCode(this.A);
-        return hash;
+    public Matrix mulMat(SparseMatrix B) {
+        return mulMatInto(B, new Matrix(n, B.getM(), getPrecision()));
     }
 
     /**
-     * Generates string with all values of the matrix row and column organized.
+     * Multiplies with a sparse matrix and stores the result in a third matrix.
      *
-     * @return string representation
+     * @param B sparse matrix to multiply with
+     * @param C matrix receiving the result. Must not share any entries with
+     * this matrix
+     * @return C
      */
-    @Override
-    public String toString() {
-        StringBuilder result = new StringBuilder();
-        for (double[] mr : A) {
-            for (double mi : mr) {
-                result.append(mi).append(" ");
+    public Matrix mulMatInto(SparseMatrix B, Matrix C) {
+        if (m != B.getN()) {
+            throw new IllegalArgumentException("Column count does not match row count of other matrix");
+        }
+        if (C.n != n || C.m != B.getM()) {
+            throw new IllegalArgumentException("Result matrix must be " + n + "x" + B.getM());
+        }
+        if (C.overlaps(this)) {
+            throw new IllegalArgumentException("Result matrix must not share entries with the operands");
+        }
+        C.fill(0);
+        Parallelism.forRange(Backends.Operation.GEMM, n, m + B.getNonZeros(), (from, to) -> B.mulLeft(this, C, from, to));
+        return C;
+    }
+
+    /**
+     * Multiplies with the transpose of a sparse matrix. Needs work
+     * proportional to the number of non-zero entries of B instead of its size.
+     *
+     * @param B sparse matrix whose transpose to multiply with, must have the
+     * same column count
+     * @return resulting matrix of size n x B.n
+     */
+    public Matrix mulTransposeB(SparseMatrix B) {
+        return mulTransposeBInto(B, new Matrix(n, B.getN(), getPrecision()));
+    }
+
+    /**
+     * Multiplies with the transpose of a sparse matrix and stores the result
+     * in a third matrix.
+     *
+     * @param B sparse matrix whose transpose to multiply with, must have the
+     * same column count
+     * @param C matrix of size n x B.n receiving the result. Must not share
+     * any entries with this matrix
+     * @return C
+     */
+    public Matrix mulTransposeBInto(SparseMatrix B, Matrix C) {
+        if (m != B.getM()) {
+            throw new IllegalArgumentException("Column count does not match column count of other matrix");
+        }
+        if (C.n != n || C.m != B.getN()) {
+            throw new IllegalArgumentException("Result matrix must be " + n + "x" + B.getN());
+        }
+        if (C.overlaps(this)) {
+            throw new IllegalArgumentException("Result matrix must not share entries with the operands");
+        }
+        Parallelism.forRange(Backends.Operation.GEMM, n, B.getN() + B.getNonZeros(), (from, to) -> B.mulTransposeLeft(this, C, from, to));
+        return C;
+    }
+
+    /**
+     * Takes the hadamard product with another matrix. That means multiplying
+     * the values in place.
+     *
+     * @param B matrix with values to multiply with
+     * @return resulting matrix
+     */
+    public Matrix hadamardMat(Matrix B) {
+        return hadamardMatInto(B, like());
+    }
+
+    /**
+     * Takes the hadamard product with another matrix and stores the result in
+     * a third matrix.
+     *
+     * @param B matrix with values to multiply with
+     * @param C matrix of the same size receiving the result. May be one of the
+     * operands
+     * @return C
+     */
+    public Matrix hadamardMatInto(Matrix B, Matrix C) {
+        checkElementwise(B, C);
+        if (allDouble(B, C)) {
+            elementwise(B, C, (a, b, c, len) -> BACKEND.mul(data, a, B.data, b, C.data, c, len));
+        } else if (allSingle(B, C)) {
+            elementwise(B, C, (a, b, c, len) -> BACKEND.mul(floatData, a, B.floatData, b, C.floatData, c, len));
+        } else {
+            elementwise(B, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.write(c + j, read(a + j) * B.read(b + j));
+                }
+            });
+        }
+        return C;
+    }
+
+    /**
+     * Takes the hadamard product with another matrix, overwriting the values
+     * of this matrix.
+     *
+     * @param B matrix with values to multiply with
+     * @return this matrix
+     */
+    public Matrix hadamardMatInPlace(Matrix B) {
+        return hadamardMatInto(B, this);
+    }
+
+    /**
+     * Multiplies with a column vector.
+     *
+     * @param b vector to multiply with
+     * @return resulting vector
+     */
+    public Vector mulVec(Vector b) {
+        return mulVecInto(b, new Vector(n));
+    }
+
+    /**
+     * Multiplies with a column vector and stores the result in another vector.
+     *
+     * @param b vector to multiply with
+     * @param c vector of size n receiving the result. Must not be b
+     * @return c
+     */
+    public Vector mulVecInto(Vector b, Vector c) {
+        if (b.getN() != m) {
+            throw new IllegalArgumentException("Vector size does not match column count");
+        }
+        if (c.getN() != n) {
+            throw new IllegalArgumentException("Result vector size does not match row count");
+        }
+        double[] ba = b.getArray();
+        double[] ca = c.getArray();
+        if (ba == ca || ca == data) {
+            throw new IllegalArgumentException("Result vector must not share entries with the operands");
+        }
+        Parallelism.forRange(Backends.Operation.REDUCTION, n, m, (from, to) -> mulVecRange(ba, ca, from, to));
+        return c;
+    }
+
+    /**
+     * Computes one layer of a neural network for a single input in one pass:
+     * values = this * x + b and activations = f(values). Rows are multiplied
+     * in blocks with {@link ComputeBackend#gemv}, and the bias and the
+     * function are applied to every block right after it.
+     *
+     * @param x input vector with one entry per column
+     * @param b vector with one entry per row to add
+     * @param f function to apply to every entry
+     * @param values vector of size n receiving the values before f was
+     * applied. Must not share entries with the operands
+     * @param activations vector of size n receiving the values after f was
+     * applied. Must not share entries with the operands. May be values
+     * itself if the values before f are not needed
+     * @return activations
+     */
+    public Vector mulVecAddVecMapInto(Vector x, Vector b, DoubleUnaryOperator f, Vector values, Vector activations) {
+        if (x.getN() != m) {
+            throw new IllegalArgumentException("Vector size does not match column count");
+        }
+        if (b.getN() != n || values.getN() != n || activations.getN() != n) {
+            throw new IllegalArgumentException("Vector sizes do not match row count");
+        }
+        double[] xa = x.getArray();
+        double[] ba = b.getArray();
+        double[] va = values.getArray();
+        double[] aa = activations.getArray();
+        if (va == xa || aa == xa || va == data || aa == data) {
+            throw new IllegalArgumentException("Result vectors must not share entries with the operands");
+        }
+        Parallelism.forRange(Backends.Operation.REDUCTION, n, m, (from, to) -> {
+            mulVecRange(xa, va, from, to);
+            for (int i = from; i < to; i++) {
+                double v = va[i] + ba[i];
+                va[i] = v;
+                aa[i] = f.applyAsDouble(v);
+            }
+        });
+        return activations;
+    }
+
+    /**
+     * Multiplies a range of rows with a column vector.
+     *
+     * @param ba entries of the vector
+     * @param ca entries of the result
+     * @param from first row
+     * @param to end of rows
+     */
+    private void mulVecRange(double[] ba, double[] ca, int from, int to) {
+        if (data != null) {
+            BACKEND.gemv(to - from, m, data, offset + from * stride, stride, ba, 0, ca, from);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            int row = offset + i * stride;
+            double s = 0;
+            if (floatData != null) {
+                for (int j = 0; j < m; j++) {
+                    s += floatData[row + j] * ba[j];
+                }
+            } else {
+                for (int j = 0; j < m; j++) {
+                    s += read(row + j) * ba[j];
+                }
+            }
+            ca[i] = s;
+        }
+    }
+
+    /**
+     * Multiplies every single entry with a scalar.
+     *
+     * @param s scalar to multiply with
+     * @return resulting matrix
+     */
+    public Matrix mulSca(double s) {
+        return mulScaInto(s, like());
+    }
+
+    /**
+     * Multiplies every single entry with a scalar and stores the result in
+     * another matrix.
+     *
+     * @param s scalar to multiply with
+     * @param C matrix of the same size receiving the result. May be this
+     * matrix itself
+     * @return C
+     */
+    public Matrix mulScaInto(double s, Matrix C) {
+        checkElementwise(this, C);
+        if (allDouble(this, C)) {
+            elementwise(this, C, (a, b, c, len) -> BACKEND.scale(s, data, a, C.data, c, len));
+        } else if (allSingle(this, C)) {
+            elementwise(this, C, (a, b, c, len) -> BACKEND.scale((float) s, floatData, a, C.floatData, c, len));
+        } else {
+            elementwise(this, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.write(c + j, s * read(a + j));
+                }
+            });
+        }
+        return C;
+    }
+
+    /**
+     * Multiplies every single entry with a scalar, overwriting the values of
+     * this matrix.
+     *
+     * @param s scalar to multiply with
+     * @return this matrix
+     */
+    public Matrix mulScaInPlace(double s) {
+        return mulScaInto(s, this);
+    }
+
+    /**
+     * Starts a lazily evaluated chain of elementwise operations on this
+     * matrix. The whole chain is computed in a single pass once it is
+     * evaluated, without intermediate matrices.
+     *
+     * @return expression returning the values of this matrix
+     */
+    public Expression lazy() {
+        return new Expression(this);
+    }
+
+    /**
+     * Applies a function to every single entry.
+     *
+     * @param f function to apply
+     * @return resulting matrix
+     */
+    public Matrix map(DoubleUnaryOperator f) {
+        return mapInto(f, like());
+    }
+
+    /**
+     * Applies a function to every single entry and stores the result in
+     * another matrix.
+     *
+     * @param f function to apply
+     * @param C matrix of the same size receiving the result. May be this
+     * matrix itself
+     * @return C
+     */
+    public Matrix mapInto(DoubleUnaryOperator f, Matrix C) {
+        checkElementwise(this, C);
+        if (allDouble(this, C)) {
+            elementwise(this, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.data[c + j] = f.applyAsDouble(data[a + j]);
+                }
+            });
+        } else if (allSingle(this, C)) {
+            elementwise(this, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.floatData[c + j] = (float) f.applyAsDouble(floatData[a + j]);
+                }
+            });
+        } else {
+            elementwise(this, C, (a, b, c, len) -> {
+                for (int j = 0; j < len; j++) {
+                    C.write(c + j, f.applyAsDouble(read(a + j)));
+                }
+            });
+        }
+        return C;
+    }
+
+    /**
+     * Applies a function to every single entry, overwriting the values of this
+     * matrix.
+     *
+     * @param f function to apply
+     * @return this matrix
+     */
+    public Matrix mapInPlace(DoubleUnaryOperator f) {
+        return mapInto(f, this);
+    }
+
+    /**
+     * Sets every entry to the same value.
+     *
+     * @param value value to set
+     * @return this matrix
+     */
+    public Matrix fill(double value) {
+        for (int i = 0; i < n; i++) {
+            int row = offset + i * stride;
+            if (data != null) {
+                Arrays.fill(data, row, row + m, value);
+            } else if (floatData != null) {
+                Arrays.fill(floatData, row, row + m, (float) value);
+            } else {
+                for (int j = 0; j < m; j++) {
+                    write(row + j, value);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Copies all values of another matrix of the same size into this matrix.
+     * Values are converted if the precisions differ.
+     *
+     * @param B matrix to copy from
+     * @return this matrix
+     */
+    public Matrix copyFrom(Matrix B) {
+        checkSameSize(B);
+        if (overlaps(B) && !sameLayout(B)) {
+            throw new IllegalArgumentException("Matrices must not partially share entries");
+        }
+        for (int i = 0; i < n; i++) {
+            int row = offset + i * stride;
+            int bRow = B.offset + i * B.stride;
+            if (data != null && B.data != null) {
+                System.arraycopy(B.data, bRow, data, row, m);
+            } else if (floatData != null && B.floatData != null) {
+                System.arraycopy(B.floatData, bRow, floatData, row, m);
+            } else {
+                for (int j = 0; j < m; j++) {
+                    write(row + j, B.read(bRow + j));
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sums all columns to one vector with size n.
+     *
+     * @return vector with sum of all columns
+     */
+    public Vector sumCols() {
+        return sumColsInto(new Vector(n));
+    }
+
+    /**
+     * Sums all columns into a given vector with size n.
+     *
+     * @param c vector receiving the sums
+     * @return c
+     */
+    public Vector sumColsInto(Vector c) {
+        if (c.getN() != n) {
+            throw new IllegalArgumentException("Result vector size does not match row count");
+        }
+        double[] ca = c.getArray();
+        if (ca == data) {
+            throw new IllegalArgumentException("Result vector must not share entries with the matrix");
+        }
+        Parallelism.forRange(Backends.Operation.REDUCTION, n, m, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int row = offset + i * stride;
+                if (data != null) {
+                    ca[i] = BACKEND.sum(data, row, m);
+                } else if (floatData != null) {
+                    ca[i] = BACKEND.sum(floatData, row, m);
+                } else {
+                    double s = 0;
+                    for (int j = 0; j < m; j++) {
+                        s += read(row + j);
+                    }
+                    ca[i] = s;
+                }
+            }
+        });
+        return c;
+    }
+
+    /**
+     * Gets all columns as vectors out of the matrix.
+     *
+     * @return columns as vector array
+     */
+    public Vector[] getCols() {
+        Vector[] result = new Vector[m];
+        for (int j = 0; j < m; j++) {
+            double[] v = new double[n];
+            for (int i = 0; i < n; i++) {
+                v[i] = read(offset + i * stride + j);
+            }
+            result[j] = new Vector(v);
+        }
+        return result;
+    }
+
+    /**
+     * Gets a view of a single row. Changes to the view are visible in this
+     * matrix and vice versa.
+     *
+     * @param i row index
+     * @return 1 x m view of the row
+     */
+    public Matrix viewRow(int i) {
+        return viewBlock(i, 0, 1, m);
+    }
+
+    /**
+     * Gets a view of a single column. Changes to the view are visible in this
+     * matrix and vice versa.
+     *
+     * @param j column index
+     * @return n x 1 view of the column
+     */
+    public Matrix viewCol(int j) {
+        return viewBlock(0, j, n, 1);
+    }
+
+    /**
+     * Gets a view of a rectangular sub-block. Changes to the view are visible
+     * in this matrix and vice versa.
+     *
+     * @param row index of the first row of the block
+     * @param col index of the first column of the block
+     * @param rows number of rows of the block
+     * @param cols number of columns of the block
+     * @return rows x cols view of the block
+     */
+    public Matrix viewBlock(int row, int col, int rows, int cols) {
+        if (row < 0 || col < 0 || rows < 0 || cols < 0 || row + rows > n || col + cols > m) {
+            throw new IndexOutOfBoundsException("Block exceeds the bounds of a " + n + "x" + m + " matrix");
+        }
+        return new Matrix(rows, cols, data, floatData, buffer, floatBuffer, offset + row * stride + col, stride);
+    }
+
+    /**
+     * Converts the matrix to another precision.
+     *
+     * @param precision desired precision
+     * @return this matrix if it already has the precision, otherwise a
+     * converted copy
+     */
+    public Matrix toPrecision(Precision precision) {
+        if (getPrecision() == precision) {
+            return this;
+        }
+        return new Matrix(n, m, precision).copyFrom(this);
+    }
+
+    /**
+     * Copies the matrix into off-heap storage.
+     *
+     * @return this matrix if it already is stored off-heap, otherwise an
+     * off-heap copy with the same precision
+     */
+    public Matrix toOffHeap() {
+        if (isOffHeap()) {
+            return this;
+        }
+        return allocateOffHeap(n, m, getPrecision()).copyFrom(this);
+    }
+
+    /**
+     * Checks whether the values are stored outside of the Java heap.
+     *
+     * @return true if the matrix is stored off-heap
+     */
+    public boolean isOffHeap() {
+        return buffer != null || floatBuffer != null;
+    }
+
+    /**
+     * Gets the precision the values are stored in.
+     *
+     * @return precision of the values
+     */
+    public Precision getPrecision() {
+        return floatData != null || floatBuffer != null ? Precision.SINGLE : Precision.DOUBLE;
+    }
+
+    /**
+     * Gets a single entry.
+     *
+     * @param i row index
+     * @param j column index
+     * @return value of the entry
+     */
+    public double get(int i, int j) {
+        return read(offset + i * stride + j);
+    }
+
+    /**
+     * Sets a single entry.
+     *
+     * @param i row index
+     * @param j column index
+     * @param value value to set
+     */
+    public void set(int i, int j, double value) {
+        write(offset + i * stride + j, value);
+    }
+
+    /**
+     * Gets row count.
+     *
+     * @return row count
+     */
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Gets column count
+     *
+     *
+     * @return column count
+     */
+    public int getM() {
+        return m;
+    }
+
+    /**
+     * Gets the underlying double precision storage. Entry (i, j) is located at
+     * {@code getOffset() + i * getStride() + j}.
+     *
+     * @return storage shared with all views of this matrix or null if the
+     * matrix uses single precision or is stored off-heap
+     */
+    public double[] getData() {
+        return data;
+    }
+
+    /**
+     * Gets the underlying single precision storage. Entry (i, j) is located at
+     * {@code getOffset() + i * getStride() + j}.
+     *
+     * @return storage shared with all views of this matrix or null if the
+     * matrix uses double precision or is stored off-heap
+     */
+    public float[] getFloatData() {
+        return floatData;
+    }
+
+    /**
+     * Gets the underlying double precision off-heap storage. Entry (i, j) is
+     * located at {@code getOffset() + i * getStride() + j}.
+     *
+     * @return storage shared with all views of this matrix or null if the
+     * matrix is not a double precision off-heap matrix
+     */
+    public DoubleBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets the underlying single precision off-heap storage. Entry (i, j) is
+     * located at {@code getOffset() + i * getStride() + j}.
+     *
+     * @return storage shared with all views of this matrix or null if the
+     * matrix is not a single precision off-heap matrix
+     */
+    public FloatBuffer getFloatBuffer() {
+        return floatBuffer;
+    }
+
+    /**
+     * Gets the index of the first entry in the storage.
+     *
+     * @return offset into the storage
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the distance between two consecutive rows in the storage.
+     *
+     * @return row stride
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Checks whether all entries are stored without gaps, so that the matrix
+     * can be processed as one flat range of the storage.
+     *
+     * @return true if rows follow each other directly
+     */
+    public boolean isContiguous() {
+        return stride == m || n <= 1;
+    }
+
+    /**
+     * Copies all values into a new two-dimensional array.
+     *
+     * @return all values as array
+     */
+    public double[][] getArray() {
+        double[][] A = new double[n][m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                A[i][j] = get(i, j);
+            }
+        }
+        return A;
+    }
+
+    /**
+     * Reads a value from the storage.
+     *
+     * @param idx index into the storage
+     * @return value
+     */
+    double read(int idx) {
+        if (data != null) {
+            return data[idx];
+        } else if (floatData != null) {
+            return floatData[idx];
+        } else if (buffer != null) {
+            return buffer.get(idx);
+        }
+        return floatBuffer.get(idx);
+    }
+
+    /**
+     * Writes a value into the storage, rounding it in single precision.
+     *
+     * @param idx index into the storage
+     * @param value value
+     */
+    void write(int idx, double value) {
+        if (data != null) {
+            data[idx] = value;
+        } else if (floatData != null) {
+            floatData[idx] = (float) value;
+        } else if (buffer != null) {
+            buffer.put(idx, value);
+        } else {
+            floatBuffer.put(idx, (float) value);
+        }
+    }
+
+    /**
+     * Creates an empty matrix with the size and precision of this matrix.
+     *
+     * @return new matrix
+     */
+    private Matrix like() {
+        return new Matrix(n, m, getPrecision());
+    }
+
+    /**
+     * Checks whether this matrix and two others store double precision values.
+     */
+    private boolean allDouble(Matrix B, Matrix C) {
+        return data != null && B.data != null && C.data != null;
+    }
+
+    /**
+     * Checks whether this matrix and two others store single precision values.
+     */
+    private boolean allSingle(Matrix B, Matrix C) {
+        return floatData != null && B.floatData != null && C.floatData != null;
+    }
+
+    /**
+     * Gets the array holding the values, whatever precision it has.
+     *
+     * @return storage array
+     */
+    private Object storage() {
+        if (data != null) {
+            return data;
+        } else if (floatData != null) {
+            return floatData;
+        }
+        return buffer != null ? buffer : floatBuffer;
+    }
+
+    /**
+     * Elementwise work on ranges of this matrix, a second operand and the
+     * result.
+     */
+    @FunctionalInterface
+    private interface RangeOp {
+
+        /**
+         * Processes len entries starting at the given offsets.
+         *
+         * @param a offset into this matrix
+         * @param b offset into the second operand
+         * @param c offset into the result
+         * @param len number of entries
+         */
+        void apply(int a, int b, int c, int len);
+    }
+
+    /**
+     * Runs an elementwise operation on all entries. If all matrices are
+     * contiguous the entries are processed as one flat range, otherwise row by
+     * row. Large matrices are split across threads.
+     *
+     * @param B second operand of the same size
+     * @param C result of the same size
+     * @param op operation to run on every range
+     */
+    private void elementwise(Matrix B, Matrix C, RangeOp op) {
+        if (isContiguous() && B.isContiguous() && C.isContiguous()) {
+            Parallelism.forRange(Backends.Operation.ELEMENTWISE, n * m, 1, (from, to) -> op.apply(offset + from, B.offset + from, C.offset + from, to - from));
+        } else {
+            Parallelism.forRange(Backends.Operation.ELEMENTWISE, n, m, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    op.apply(offset + i * stride, B.offset + i * B.stride, C.offset + i * C.stride, m);
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks whether this matrix is laid out exactly like another matrix on
+     * the same storage, so that every entry of one is the same entry of the
+     * other.
+     *
+     * @param B matrix to compare with
+     * @return true if both matrices address the same entries
+     */
+    private boolean sameLayout(Matrix B) {
+        return storage() == B.storage() && offset == B.offset && (stride == B.stride || n <= 1);
+    }
+
+    /**
+     * Checks whether this matrix shares at least one entry with another matrix.
+     * Views with the same stride are compared exactly, other combinations
+     * conservatively by the range of storage they span.
+     *
+     * @param B matrix to compare with
+     * @return true if the matrices may share entries
+     */
+    boolean overlaps(Matrix B) {
+        if (storage() != B.storage() || n == 0 || m == 0 || B.n == 0 || B.m == 0) {
+            return false;
+        }
+        if (stride == B.stride && stride > 0) {
+            int row = offset / stride;
+            int col = offset % stride;
+            int bRow = B.offset / stride;
+            int bCol = B.offset % stride;
+            return row < bRow + B.n && bRow < row + n && col < bCol + B.m && bCol < col + m;
+        }
+        int end = offset + (n - 1) * stride + m;
+        int bEnd = B.offset + (B.n - 1) * B.stride + B.m;
+        return offset < bEnd && B.offset < end;
+    }
+
+    /**
+     * Throws an exception if the result of an elementwise operation partially
+     * shares entries with an operand. Sharing all entries is allowed because
+     * every entry is read before it is written.
+     *
+     * @param C result matrix
+     * @param X operand
+     */
+    private static void checkElementwiseAlias(Matrix C, Matrix X) {
+        if (C.overlaps(X) && !C.sameLayout(X)) {
+            throw new IllegalArgumentException("Result matrix partially shares entries with an operand");
+        }
+    }
+
+    /**
+     * Checks sizes and aliasing of an elementwise operation with this matrix
+     * and B as operands and C as result.
+     *
+     * @param B second operand
+     * @param C result matrix
+     */
+    private void checkElementwise(Matrix B, Matrix C) {
+        checkSameSize(B);
+        checkSameSize(C);
+        checkElementwiseAlias(C, this);
+        checkElementwiseAlias(C, B);
+    }
+
+    /**
+     * Throws an exception if the result of a product shares entries with one
+     * of its operands.
+     *
+     * @param B second operand
+     * @param C result matrix
+     */
+    private void checkProductAlias(Matrix B, Matrix C) {
+        if (C.overlaps(this) || C.overlaps(B)) {
+            throw new IllegalArgumentException("Result matrix must not share entries with the operands");
+        }
+    }
+
+    /**
+     * Throws an exception if the other matrix does not have the same size.
+     *
+     * @param B matrix to compare the size with
+     */
+    private void checkSameSize(Matrix B) {
+        if (n != B.n || m != B.m) {
+            throw new IllegalArgumentException("Matrix dimensions do not match: "
+                    + n + "x" + m + " and " + B.n + "x" + B.m);
+        }
+    }
+
+    /**
+     * Compares every entry of the matrix with another matrix.
+     *
+     * @param o other matrix to compare with
+     * @return true if matrices equal false if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Matrix)) {
+            return false;
+        }
+        Matrix B = ((Matrix) o);
+        if (n != B.n || m != B.m) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                if (get(i, j) != B.get(i, j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates hashcode.
+     *
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                hash = 67 * hash + Double.hashCode(get(i, j));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Generates string with all values of the matrix row and column organized.
+     * Single precision values are printed with the shortest representation
+     * that identifies the float.
+     *
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                if (getPrecision() == Precision.DOUBLE) {
+                    result.append(get(i, j)).append(" ");
+                } else {
+                    result.append((float) get(i, j)).append(" ");
+                }
             }
             result.append("\n");
         }
         return result.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package org.neural.network.mathlib.algebra;
+
+/**
+ * Textbook implementation of the kernels: reductions use a single
+ * accumulator and the matrix multiplication is a plain ikj loop without
+ * packing. Fastest for tiny operands where blocking does not pay off and the
+ * reference for the other backends.
+ *
+ */
+public class NaiveBackend extends BlockedBackend {
+
+    @Override
+    public String name() {
+        return "naive";
+    }
+
+    @Override
+    public int priority() {
+        return 0;
+    }
+
+    @Override
+    public double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        double s = 0;
+        for (int i = 0; i < len; i++) {
+            s += a[aOff + i] * b[bOff + i];
+        }
+        return s;
+    }
+
+    @Override
+    public double sum(double[] a, int aOff, int len) {
+        double s = 0;
+        for (int i = 0; i < len; i++) {
+            s += a[aOff + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void gemm(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        Gemm.naive(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemv(int n, int m, double[] a, int aOff, int aStride, double[] x, int xOff, double[] y, int yOff) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] = dot(a, aOff + i * aStride, x, xOff, m);
+        }
+    }
+
+    @Override
+    public double dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        float s = 0;
+        for (int i = 0; i < len; i++) {
+            s += a[aOff + i] * b[bOff + i];
+        }
+        return s;
+    }
+
+    @Override
+    public double sum(float[] a, int aOff, int len) {
+        float s = 0;
+        for (int i = 0; i < len; i++) {
+            s += a[aOff + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void gemm(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        Gemm.naive(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemv(int n, int m, float[] a, int aOff, int aStride, float[] x, int xOff, float[] y, int yOff) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] = (float) dot(a, aOff + i * aStride, x, xOff, m);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Controls how matrix operations are spread across threads. Operations whose
+ * amount of work (multiply-adds for products, entries for elementwise
+ * operations) stays below the threshold run on the calling thread. Larger
+ * operations are split into blocks of the output which are computed by the
+ * configured fork/join pool.
+ *
+ * Every kind of operation (see {@link Backends.Operation}) has its own
+ * threshold, since a memory bound elementwise operation gains less from more
+ * threads than a matrix product of the same size. The system property
+ * {@code neuralnet.parallel.threshold} sets all of them, and
+ * {@code neuralnet.parallel.threshold.gemm}, {@code .elementwise} and
+ * {@code .reduction} set the one of a single kind. Operations of the small
+ * size class always stay below the threshold.
+ *
+ * The blocks only depend on the shape of the operation and the threshold, never
+ * on the number of threads, and every entry of the output is computed by
+ * exactly one block. Results are therefore identical regardless of the size
+ * of the pool.
+ *
+ */
+public final class Parallelism {
+
+    /**
+     * Default amount of work below which operations stay sequential.
+     */
+    public static final long DEFAULT_THRESHOLD = 1L << 20;
+
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+    private static volatile long[] thresholds = defaultThresholds();
+
+    private Parallelism() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * Sets the pool executing parallel operations.
+     *
+     * @param pool pool to use
+     */
+    public static void setPool(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool must not be null");
+        }
+        Parallelism.pool = pool;
+    }
+
+    /**
+     * Gets the pool executing parallel operations.
+     *
+     * @return pool in use
+     */
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the amount of work below which operations of every kind stay
+     * sequential. Use {@link Long#MAX_VALUE} to disable parallel execution.
+     *
+     * @param threshold minimum amount of work of a parallel operation
+     */
+    public static void setThreshold(long threshold) {
+        for (Backends.Operation operation : Backends.Operation.values()) {
+            setThreshold(operation, threshold);
+        }
+    }
+
+    /**
+     * Sets the amount of work below which operations of one kind stay
+     * sequential. Use {@link Long#MAX_VALUE} to disable parallel execution.
+     *
+     * @param operation kind of operation
+     * @param threshold minimum amount of work of a parallel operation
+     */
+    public static synchronized void setThreshold(Backends.Operation operation, long threshold) {
+        if (operation == null) {
+            throw new IllegalArgumentException("Operation must not be null");
+        }
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        long[] copy = thresholds.clone();
+        copy[operation.ordinal()] = threshold;
+        thresholds = copy;
+    }
+
+    /**
+     * Gets the amount of work below which matrix multiplications stay
+     * sequential.
+     *
+     * @return minimum amount of work of a parallel matrix multiplication
+     */
+    public static long getThreshold() {
+        return getThreshold(Backends.Operation.GEMM);
+    }
+
+    /**
+     * Gets the amount of work below which operations of one kind stay
+     * sequential.
+     *
+     * @param operation kind of operation
+     * @return minimum amount of work of a parallel operation
+     */
+    public static long getThreshold(Backends.Operation operation) {
+        return thresholds[operation.ordinal()];
+    }
+
+    /**
+     * Reads the thresholds from the system properties.
+     *
+     * @return thresholds indexed by operation
+     */
+    private static long[] defaultThresholds() {
+        long all = Long.getLong("neuralnet.parallel.threshold", DEFAULT_THRESHOLD);
+        long[] defaults = new long[Backends.Operation.values().length];
+        for (Backends.Operation operation : Backends.Operation.values()) {
+            defaults[operation.ordinal()] = Long.getLong("neuralnet.parallel.threshold." + operation.name().toLowerCase(), all);
+        }
+        return defaults;
+    }
+
+    /**
+     * Work on a range of independent items.
+     */
+    @FunctionalInterface
+    interface RangeTask {
+
+        /**
+         * Processes the items from (inclusive) to (exclusive).
+         *
+         * @param from first item
+         * @param to end of range
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Processes a range of independent items, splitting it across the pool if
+     * the total work reaches the threshold of the operation.
+     *
+     * @param operation kind of operation
+     * @param count number of items
+     * @param workPerItem work needed for a single item
+     * @param task work to run on every part of the range
+     */
+    static void forRange(Backends.Operation operation, int count, long workPerItem, RangeTask task) {
+        long limit = thresholds[operation.ordinal()];
+        if (count < 2 || count * workPerItem < limit) {
+            task.run(0, count);
+        } else {
+            pool.invoke(new RangeAction(0, count, Math.max(1, limit / Math.max(1, workPerItem)), task));
+        }
+    }
+
+    /**
+     * Work on a rectangular block of an output matrix.
+     */
+    @FunctionalInterface
+    interface BlockTask {
+
+        /**
+         * Computes the rows from rowFrom (inclusive) to rowTo (exclusive) and
+         * the columns from colFrom (inclusive) to colTo (exclusive).
+         *
+         * @param rowFrom first row
+         * @param rowTo end of rows
+         * @param colFrom first column
+         * @param colTo end of columns
+         */
+        void run(int rowFrom, int rowTo, int colFrom, int colTo);
+    }
+
+    /**
+     * Computes an n x m output matrix, splitting it into blocks across the
+     * pool if the total work reaches the threshold of matrix multiplications.
+     * Used for matrix products where every entry needs k multiply-adds.
+     *
+     * @param n rows of the output
+     * @param m columns of the output
+     * @param workPerEntry work needed for a single entry
+     * @param task work to run on every block
+     */
+    static void forBlocks(int n, int m, long workPerEntry, BlockTask task) {
+        long limit = thresholds[Backends.Operation.GEMM.ordinal()];
+        if ((long) n * m * workPerEntry < limit) {
+            task.run(0, n, 0, m);
+        } else {
+            pool.invoke(new BlockAction(0, n, 0, m, Math.max(1, workPerEntry), limit, task));
+        }
+    }
+
+    /**
+     * Splits a range in halves until every part is small enough.
+     */
+    private static final class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final long grain;
+        // tasks only live inside the pool and are never serialized
+        private final transient RangeTask task;
+
+        RangeAction(int from, int to, long grain, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeAction(from, mid, grain, task), new RangeAction(mid, to, grain, task));
+            }
+        }
+    }
+
+    /**
+     * Splits an output matrix along its longer side until every block is small
+     * enough. Split points are aligned to the register tiles of the kernels.
+     */
+    private static final class BlockAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int ALIGN = 8;
+
+        private final int rowFrom;
+        private final int rowTo;
+        private final int colFrom;
+        private final int colTo;
+        private final long workPerEntry;
+        private final long limit;
+        // tasks only live inside the pool and are never serialized
+        private final transient BlockTask task;
+
+        BlockAction(int rowFrom, int rowTo, int colFrom, int colTo, long workPerEntry, long limit, BlockTask task) {
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+            this.colFrom = colFrom;
+            this.colTo = colTo;
+            this.workPerEntry = workPerEntry;
+            this.limit = limit;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = rowTo - rowFrom;
+            int cols = colTo - colFrom;
+            if ((long) rows * cols * workPerEntry >= limit && Math.max(rows, cols) >= 2 * ALIGN) {
+                if (cols >= rows) {
+                    int mid = colFrom + (cols / 2 / ALIGN) * ALIGN;
+                    invokeAll(new BlockAction(rowFrom, rowTo, colFrom, mid, workPerEntry, limit, task),
+                            new BlockAction(rowFrom, rowTo, mid, colTo, workPerEntry, limit, task));
+                } else {
+                    int mid = rowFrom + (rows / 2 / ALIGN) * ALIGN;
+                    invokeAll(new BlockAction(rowFrom, mid, colFrom, colTo, workPerEntry, limit, task),
+                            new BlockAction(mid, rowTo, colFrom, colTo, workPerEntry, limit, task));
+                }
+            } else {
+                task.run(rowFrom, rowTo, colFrom, colTo);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.neural.network.mathlib.algebra;
+
+/**
+ * Floating point format used to store the values of a matrix.
+ *
+ */
+public enum Precision {
+
+    /**
+     * 64 bit values. Default for all matrices.
+     */
+    DOUBLE,
+
+    /**
+     * 32 bit values. Halves memory and bandwidth and doubles the number of
+     * values processed per SIMD instruction at the cost of accuracy.
+     */
+    SINGLE
+}
@@ -0,0 +1,381 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Representation of a sparse real matrix in compressed sparse row (CSR)
+ * format. Only the non-zero entries are stored: the column indices and values
+ * of row i are located at positions rowPtr[i] (inclusive) to rowPtr[i + 1]
+ * (exclusive) of the colIdx and values arrays.
+ *
+ * Sparse matrices are immutable and meant as the right operand of products
+ * with dense matrices (see {@link Matrix#mulMat(SparseMatrix)} and
+ * {@link Matrix#mulTransposeB(SparseMatrix)}), where every product only costs
+ * work proportional to the number of non-zero entries. Pruned weights are
+ * the left operand of a layer computation instead (see
+ * {@link #mulMatAddVecMapInto(Matrix, Vector, DoubleUnaryOperator, Matrix, Matrix)}).
+ *
+ */
+public class SparseMatrix {
+
+    private static final ComputeBackend BACKEND = Backends.get();
+
+    private final int n;
+    private final int m;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final double[] values;
+
+    /**
+     * Initializes the matrix from existing CSR arrays. The arrays are not
+     * copied.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param rowPtr n + 1 positions of the first entry of every row, followed
+     * by the number of non-zero entries
+     * @param colIdx column index of every non-zero entry
+     * @param values value of every non-zero entry
+     */
+    public SparseMatrix(int n, int m, int[] rowPtr, int[] colIdx, double[] values) {
+        if (rowPtr.length != n + 1 || rowPtr[0] != 0) {
+            throw new IllegalArgumentException("Row pointers must have n + 1 entries starting at 0");
+        }
+        if (colIdx.length < rowPtr[n] || values.length < rowPtr[n]) {
+            throw new IllegalArgumentException("Arrays too small for " + rowPtr[n] + " non-zero entries");
+        }
+        this.n = n;
+        this.m = m;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    /**
+     * Initializes the matrix with the non-zero entries of a dense matrix.
+     *
+     * @param A dense matrix to compress
+     */
+    public SparseMatrix(Matrix A) {
+        this.n = A.getN();
+        this.m = A.getM();
+        this.rowPtr = new int[n + 1];
+        // one spare slot lets every entry be written unconditionally; the
+        // position only advances for non-zero values, which avoids a
+        // mispredicted branch per entry
+        int nonZeros = countNonZeros(A);
+        this.colIdx = new int[nonZeros + 1];
+        this.values = new double[nonZeros + 1];
+        double[] a = A.getData();
+        int q = 0;
+        for (int i = 0; i < n; i++) {
+            int row = A.getOffset() + i * A.getStride();
+            for (int j = 0; j < m; j++) {
+                double v = a != null ? a[row + j] : A.read(row + j);
+                colIdx[q] = j;
+                values[q] = v;
+                q += v != 0 ? 1 : 0;
+            }
+            rowPtr[i + 1] = q;
+        }
+    }
+
+    /**
+     * Calculates the fraction of non-zero entries of a dense matrix.
+     *
+     * @param A dense matrix
+     * @return number of non-zero entries divided by the number of entries
+     */
+    public static double density(Matrix A) {
+        long size = (long) A.getN() * A.getM();
+        return size == 0 ? 0 : countNonZeros(A) / (double) size;
+    }
+
+    /**
+     * Counts the non-zero entries of a dense matrix.
+     *
+     * @param A dense matrix
+     * @return number of non-zero entries
+     */
+    private static int countNonZeros(Matrix A) {
+        double[] a = A.getData();
+        int count = 0;
+        for (int i = 0; i < A.getN(); i++) {
+            int row = A.getOffset() + i * A.getStride();
+            for (int j = 0; j < A.getM(); j++) {
+                count += (a != null ? a[row + j] : A.read(row + j)) != 0 ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes rows from (inclusive) to (exclusive) of C = A * this, adding to
+     * the existing values of C.
+     *
+     * @param A dense left operand with m columns matching the n rows of this
+     * @param C result with the n rows of A and the m columns of this
+     * @param from first row of A
+     * @param to end of rows of A
+     */
+    void mulLeft(Matrix A, Matrix C, int from, int to) {
+        double[] a = A.getData();
+        double[] c = C.getData();
+        for (int i = from; i < to; i++) {
+            int aRow = A.getOffset() + i * A.getStride();
+            int cRow = C.getOffset() + i * C.getStride();
+            for (int p = 0; p < n; p++) {
+                double aip = a != null ? a[aRow + p] : A.read(aRow + p);
+                int end = rowPtr[p + 1];
+                if (c != null) {
+                    for (int q = rowPtr[p]; q < end; q++) {
+                        c[cRow + colIdx[q]] += aip * values[q];
+                    }
+                } else {
+                    for (int q = rowPtr[p]; q < end; q++) {
+                        int idx = cRow + colIdx[q];
+                        C.write(idx, C.read(idx) + aip * values[q]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes rows from (inclusive) to (exclusive) of C = A * transpose(this).
+     *
+     * @param A dense left operand with as many columns as this
+     * @param C result with the rows of A and a column for every row of this
+     * @param from first row of A
+     * @param to end of rows of A
+     */
+    void mulTransposeLeft(Matrix A, Matrix C, int from, int to) {
+        double[] a = A.getData();
+        for (int i = from; i < to; i++) {
+            int aRow = A.getOffset() + i * A.getStride();
+            int cRow = C.getOffset() + i * C.getStride();
+            for (int p = 0; p < n; p++) {
+                double s = 0;
+                int end = rowPtr[p + 1];
+                if (a != null) {
+                    for (int q = rowPtr[p]; q < end; q++) {
+                        s += a[aRow + colIdx[q]] * values[q];
+                    }
+                } else {
+                    for (int q = rowPtr[p]; q < end; q++) {
+                        s += A.read(aRow + colIdx[q]) * values[q];
+                    }
+                }
+                C.write(cRow + p, s);
+            }
+        }
+    }
+
+    /**
+     * Computes one layer of a neural network with sparse weights: values =
+     * this * B + b with b added to every column, and activations = f(values).
+     * Every row of the result is the sum of the rows of B selected by the
+     * non-zero entries of the same row of this matrix, so the work is
+     * proportional to the number of non-zero weights.
+     *
+     * @param B dense matrix to multiply with
+     * @param b vector with one entry per row to add to every column
+     * @param f function to apply to every entry
+     * @param values matrix of size n x B.m receiving the values before f was
+     * applied. Must not share any entries with B
+     * @param activations matrix of size n x B.m receiving the values after f
+     * was applied. Must not share any entries with B. May be values itself if
+     * the values before f are not needed
+     * @return activations
+     */
+    public Matrix mulMatAddVecMapInto(Matrix B, Vector b, DoubleUnaryOperator f, Matrix values, Matrix activations) {
+        if (m != B.getN()) {
+            throw new IllegalArgumentException("Column count does not match row count of other matrix");
+        }
+        int cols = B.getM();
+        if (b.getN() != n) {
+            throw new IllegalArgumentException("Vector size does not match row count");
+        }
+        if (values.getN() != n || values.getM() != cols || activations.getN() != n || activations.getM() != cols) {
+            throw new IllegalArgumentException("Result matrices must be " + n + "x" + cols);
+        }
+        if (values.overlaps(B) || activations.overlaps(B) || (values != activations && values.overlaps(activations))) {
+            throw new IllegalArgumentException("Result matrices must not share entries with the operands");
+        }
+        double[] ba = b.getArray();
+        double[] bd = B.getData();
+        double[] v = values.getData();
+        double[] a = activations.getData();
+        float[] bf = B.getFloatData();
+        float[] vf = values.getFloatData();
+        float[] af = activations.getFloatData();
+        Parallelism.forRange(Backends.Operation.GEMM, n, (long) Math.max(1, getNonZeros() / Math.max(1, n)) * cols, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int vRow = values.getOffset() + i * values.getStride();
+                int aRow = activations.getOffset() + i * activations.getStride();
+                if (bd != null && v != null && a != null) {
+                    Arrays.fill(v, vRow, vRow + cols, ba[i]);
+                    for (int q = rowPtr[i]; q < rowPtr[i + 1]; q++) {
+                        BACKEND.axpy(this.values[q], bd, B.getOffset() + colIdx[q] * B.getStride(), v, vRow, cols);
+                    }
+                    for (int j = 0; j < cols; j++) {
+                        a[aRow + j] = f.applyAsDouble(v[vRow + j]);
+                    }
+                } else if (bf != null && vf != null && af != null) {
+                    Arrays.fill(vf, vRow, vRow + cols, (float) ba[i]);
+                    for (int q = rowPtr[i]; q < rowPtr[i + 1]; q++) {
+                        BACKEND.axpy((float) this.values[q], bf, B.getOffset() + colIdx[q] * B.getStride(), vf, vRow, cols);
+                    }
+                    for (int j = 0; j < cols; j++) {
+                        af[aRow + j] = (float) f.applyAsDouble(vf[vRow + j]);
+                    }
+                } else {
+                    for (int j = 0; j < cols; j++) {
+                        double s = ba[i];
+                        for (int q = rowPtr[i]; q < rowPtr[i + 1]; q++) {
+                            s += this.values[q] * B.read(B.getOffset() + colIdx[q] * B.getStride() + j);
+                        }
+                        values.write(vRow + j, s);
+                        activations.write(aRow + j, f.applyAsDouble(s));
+                    }
+                }
+            }
+        });
+        return activations;
+    }
+
+    /**
+     * Computes one layer of a neural network with sparse weights for a single
+     * input: values = this * x + b and activations = f(values).
+     *
+     * @param x input vector with one entry per column
+     * @param b vector with one entry per row to add
+     * @param f function to apply to every entry
+     * @param values vector of size n receiving the values before f was
+     * applied. Must not be x
+     * @param activations vector of size n receiving the values after f was
+     * applied. Must not be x. May be values itself if the values before f
+     * are not needed
+     * @return activations
+     */
+    public Vector mulVecAddVecMapInto(Vector x, Vector b, DoubleUnaryOperator f, Vector values, Vector activations) {
+        if (x.getN() != m) {
+            throw new IllegalArgumentException("Vector size does not match column count");
+        }
+        if (b.getN() != n || values.getN() != n || activations.getN() != n) {
+            throw new IllegalArgumentException("Vector sizes do not match row count");
+        }
+        double[] xa = x.getArray();
+        double[] ba = b.getArray();
+        double[] va = values.getArray();
+        double[] aa = activations.getArray();
+        if (va == xa || aa == xa) {
+            throw new IllegalArgumentException("Result vectors must not share entries with the input");
+        }
+        for (int i = 0; i < n; i++) {
+            double s = ba[i];
+            for (int q = rowPtr[i]; q < rowPtr[i + 1]; q++) {
+                s += this.values[q] * xa[colIdx[q]];
+            }
+            va[i] = s;
+            aa[i] = f.applyAsDouble(s);
+        }
+        return activations;
+    }
+
+    /**
+     * Converts the matrix to a dense matrix.
+     *
+     * @return dense matrix with the same values
+     */
+    public Matrix toDense() {
+        Matrix A = new Matrix(n, m);
+        for (int i = 0; i < n; i++) {
+            for (int q = rowPtr[i]; q < rowPtr[i + 1]; q++) {
+                A.set(i, colIdx[q], values[q]);
+            }
+        }
+        return A;
+    }
+
+    /**
+     * Gets row count.
+     *
+     * @return row count
+     */
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Gets column count.
+     *
+     * @return column count
+     */
+    public int getM() {
+        return m;
+    }
+
+    /**
+     * Gets the number of stored entries.
+     *
+     * @return number of non-zero entries
+     */
+    public int getNonZeros() {
+        return rowPtr[n];
+    }
+
+    /**
+     * Gets the fraction of non-zero entries.
+     *
+     * @return number of non-zero entries divided by the number of entries
+     */
+    public double getDensity() {
+        long size = (long) n * m;
+        return size == 0 ? 0 : getNonZeros() / (double) size;
+    }
+
+    /**
+     * Compares every entry of the matrix with another sparse matrix.
+     *
+     * @param o other matrix to compare with
+     * @return true if matrices equal false if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SparseMatrix)) {
+            return false;
+        }
+        SparseMatrix B = (SparseMatrix) o;
+        int nonZeros = getNonZeros();
+        return n == B.n && m == B.m
+                && Arrays.equals(rowPtr, B.rowPtr)
+                && Arrays.equals(colIdx, 0, nonZeros, B.colIdx, 0, nonZeros)
+                && Arrays.equals(values, 0, nonZeros, B.values, 0, nonZeros);
+    }
+
+    /**
+     * Generates hashcode.
+     *
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + n;
+        hash = 31 * hash + m;
+        hash = 31 * hash + Arrays.hashCode(rowPtr);
+        return hash;
+    }
+
+    /**
+     * Generates string with all values of the matrix row and column organized.
+     *
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        return toDense().toString();
+    }
+}
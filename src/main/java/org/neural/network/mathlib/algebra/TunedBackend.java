@@ -0,0 +1,209 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.Map;
+
+/**
+ * Backend forwarding every call to the backend selected by {@link Backends}
+ * for its kind of operation and size.
+ *
+ */
+final class TunedBackend extends ComputeBackend {
+
+    private final ComputeBackend smallGemm;
+    private final ComputeBackend largeGemm;
+    private final ComputeBackend smallElementwise;
+    private final ComputeBackend largeElementwise;
+    private final ComputeBackend smallReduction;
+    private final ComputeBackend largeReduction;
+
+    /**
+     * Initializes the backend.
+     *
+     * @param selected backends by operation, indexed by size class
+     */
+    TunedBackend(Map<Backends.Operation, ComputeBackend[]> selected) {
+        int small = Backends.SizeClass.SMALL.ordinal();
+        int large = Backends.SizeClass.LARGE.ordinal();
+        this.smallGemm = selected.get(Backends.Operation.GEMM)[small];
+        this.largeGemm = selected.get(Backends.Operation.GEMM)[large];
+        this.smallElementwise = selected.get(Backends.Operation.ELEMENTWISE)[small];
+        this.largeElementwise = selected.get(Backends.Operation.ELEMENTWISE)[large];
+        this.smallReduction = selected.get(Backends.Operation.REDUCTION)[small];
+        this.largeReduction = selected.get(Backends.Operation.REDUCTION)[large];
+    }
+
+    /**
+     * Gets the backend for a matrix multiplication.
+     *
+     * @param n rows of the result
+     * @param k shared dimension
+     * @param m columns of the result
+     * @return backend to use
+     */
+    private ComputeBackend gemm(int n, int k, int m) {
+        return (long) n * k * m < Backends.SMALL_PRODUCT ? smallGemm : largeGemm;
+    }
+
+    /**
+     * Gets the backend for an elementwise operation.
+     *
+     * @param len number of entries
+     * @return backend to use
+     */
+    private ComputeBackend elementwise(int len) {
+        return len < Backends.SMALL_ENTRIES ? smallElementwise : largeElementwise;
+    }
+
+    /**
+     * Gets the backend for a reduction.
+     *
+     * @param len number of entries
+     * @return backend to use
+     */
+    private ComputeBackend reduction(int len) {
+        return len < Backends.SMALL_ENTRIES ? smallReduction : largeReduction;
+    }
+
+    @Override
+    public String name() {
+        return "tuned";
+    }
+
+    @Override
+    public double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        return reduction(len).dot(a, aOff, b, bOff, len);
+    }
+
+    @Override
+    public double sum(double[] a, int aOff, int len) {
+        return reduction(len).sum(a, aOff, len);
+    }
+
+    @Override
+    public void axpy(double s, double[] x, int xOff, double[] y, int yOff, int len) {
+        elementwise(len).axpy(s, x, xOff, y, yOff, len);
+    }
+
+    @Override
+    public void add(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        elementwise(len).add(a, aOff, b, bOff, c, cOff, len);
+    }
+
+    @Override
+    public void sub(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        elementwise(len).sub(a, aOff, b, bOff, c, cOff, len);
+    }
+
+    @Override
+    public void mul(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        elementwise(len).mul(a, aOff, b, bOff, c, cOff, len);
+    }
+
+    @Override
+    public void scale(double s, double[] a, int aOff, double[] c, int cOff, int len) {
+        elementwise(len).scale(s, a, aOff, c, cOff, len);
+    }
+
+    @Override
+    public void addScalar(double s, double[] a, int aOff, double[] c, int cOff, int len) {
+        elementwise(len).addScalar(s, a, aOff, c, cOff, len);
+    }
+
+    @Override
+    public void gemm(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        gemm(n, k, m).gemm(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemmTransA(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        gemm(n, k, m).gemmTransA(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemmTransB(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        gemm(n, k, m).gemmTransB(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public double dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        return reduction(len).dot(a, aOff, b, bOff, len);
+    }
+
+    @Override
+    public double sum(float[] a, int aOff, int len) {
+        return reduction(len).sum(a, aOff, len);
+    }
+
+    @Override
+    public void axpy(float s, float[] x, int xOff, float[] y, int yOff, int len) {
+        elementwise(len).axpy(s, x, xOff, y, yOff, len);
+    }
+
+    @Override
+    public void add(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        elementwise(len).add(a, aOff, b, bOff, c, cOff, len);
+    }
+
+    @Override
+    public void sub(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        elementwise(len).sub(a, aOff, b, bOff, c, cOff, len);
+    }
+
+    @Override
+    public void mul(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        elementwise(len).mul(a, aOff, b, bOff, c, cOff, len);
+    }
+
+    @Override
+    public void scale(float s, float[] a, int aOff, float[] c, int cOff, int len) {
+        elementwise(len).scale(s, a, aOff, c, cOff, len);
+    }
+
+    @Override
+    public void addScalar(float s, float[] a, int aOff, float[] c, int cOff, int len) {
+        elementwise(len).addScalar(s, a, aOff, c, cOff, len);
+    }
+
+    @Override
+    public void gemm(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        gemm(n, k, m).gemm(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemmTransA(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        gemm(n, k, m).gemmTransA(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemmTransB(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        gemm(n, k, m).gemmTransB(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+    }
+
+    @Override
+    public void gemv(int n, int m, double[] a, int aOff, int aStride, double[] x, int xOff, double[] y, int yOff) {
+        gemm(n, m, 1).gemv(n, m, a, aOff, aStride, x, xOff, y, yOff);
+    }
+
+    @Override
+    public void gemv(int n, int m, float[] a, int aOff, int aStride, float[] x, int xOff, float[] y, int yOff) {
+        gemm(n, m, 1).gemv(n, m, a, aOff, aStride, x, xOff, y, yOff);
+    }
+}
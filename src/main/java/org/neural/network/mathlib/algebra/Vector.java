@@ -8,6 +8,8 @@ import java.util.Arrays;
  */
 public class Vector {
 
+    private static final ComputeBackend BACKEND = Backends.get();
+
     private final int n;
     private final double[] a;
 
@@ -38,13 +40,48 @@ public class Vector {
      * @return resulting vector
      */
     public Vector addVec(Vector b) {
-        Vector c = new Vector(n);
-        for (int i = 0; i < n; i++) {
-            c.a[i] = a[i] + b.a[i];
-        }
+        return addVecInto(b, new Vector(n));
+    }
+
+    /**
+     * Adds another vector and stores the result in a third vector.
+     *
+     * @param b other vector to add
+     * @param c vector of the same size receiving the result. May be one of the
+     * operands
+     * @return c
+     */
+    public Vector addVecInto(Vector b, Vector c) {
+        checkSameSize(b);
+        checkSameSize(c);
+        BACKEND.add(a, 0, b.a, 0, c.a, 0, n);
         return c;
     }
 
+    /**
+     * Adds another vector, overwriting the values of this vector.
+     *
+     * @param b other vector to add
+     * @return this vector
+     */
+    public Vector addVecInPlace(Vector b) {
+        return addVecInto(b, this);
+    }
+
+    /**
+     * Adds a scaled vector, overwriting the values of this vector:
+     * this = this + s * b.
+     *
+     * @param s scalar to multiply b with
+     * @param b other vector to add
+     * @return this vector
+     */
+    public Vector addScaledInPlace(double s, Vector b) {
+        checkSameSize(b);
+        BACKEND.axpy(s, b.a, 0, a, 0, n);
+        return this;
+    }
+
     /**
      * Subtracts another vector.
      *
@@ -52,13 +89,34 @@ public class Vector {
      * @return resulting vector
      */
     public Vector subVec(Vector b) {
-        Vector c = new Vector(n);
-        for (int i = 0; i < n; i++) {
-            c.a[i] = a[i] - b.a[i];
-        }
+        return subVecInto(b, new Vector(n));
+    }
+
+    /**
+     * Subtracts another vector and stores the result in a third vector.
+     *
+     * @param b vector to be subtracted
+     * @param c vector of the same size receiving the result. May be one of the
+     * operands
+     * @return c
+     */
+    public Vector subVecInto(Vector b, Vector c) {
+        checkSameSize(b);
+        checkSameSize(c);
+        BACKEND.sub(a, 0, b.a, 0, c.a, 0, n);
         return c;
     }
 
+    /**
+     * Subtracts another vector, overwriting the values of this vector.
+     *
+     * @param b vector to be subtracted
+     * @return this vector
+     */
+    public Vector subVecInPlace(Vector b) {
+        return subVecInto(b, this);
+    }
+
     /**
      * Takes the hadamard product with another vector. That means multiplying
      * all values in place.
@@ -67,13 +125,36 @@ public class Vector {
      * @return resulting vector
      */
     public Vector hadamardVec(Vector b) {
-        Vector c = new Vector(n);
-        for (int i = 0; i < n; i++) {
-            c.a[i] = a[i] * b.a[i];
-        }
+        return hadamardVecInto(b, new Vector(n));
+    }
+
+    /**
+     * Takes the hadamard product with another vector and stores the result in
+     * a third vector.
+     *
+     * @param b other vector
+     * @param c vector of the same size receiving the result. May be one of the
+     * operands
+     * @return c
+     */
+    public Vector hadamardVecInto(Vector b, Vector c) {
+        checkSameSize(b);
+        checkSameSize(c);
+        BACKEND.mul(a, 0, b.a, 0, c.a, 0, n);
         return c;
     }
 
+    /**
+     * Takes the hadamard product with another vector, overwriting the values
+     * of this vector.
+     *
+     * @param b other vector
+     * @return this vector
+     */
+    public Vector hadamardVecInPlace(Vector b) {
+        return hadamardVecInto(b, this);
+    }
+
     /**
      * Multiplies with scalar.
      *
@@ -81,13 +162,33 @@ public class Vector {
      * @return
      */
     public Vector mulSca(double s) {
-        Vector c = new Vector(n);
-        for (int i = 0; i < n; i++) {
-            c.a[i] = a[i] * s;
-        }
+        return mulScaInto(s, new Vector(n));
+    }
+
+    /**
+     * Multiplies with scalar and stores the result in another vector.
+     *
+     * @param s scalar to multiply with
+     * @param c vector of the same size receiving the result. May be this
+     * vector itself
+     * @return c
+     */
+    public Vector mulScaInto(double s, Vector c) {
+        checkSameSize(c);
+        BACKEND.scale(s, a, 0, c.a, 0, n);
         return c;
     }
 
+    /**
+     * Multiplies with scalar, overwriting the values of this vector.
+     *
+     * @param s scalar to multiply with
+     * @return this vector
+     */
+    public Vector mulScaInPlace(double s) {
+        return mulScaInto(s, this);
+    }
+
     /**
      * Applies dot product.
      *
@@ -95,11 +196,7 @@ public class Vector {
      * @return resulting scalar
      */
     public double dotVec(Vector b) {
-        double s = 0;
-        for (int i = 0; i < n; i++) {
-            s += a[i] * b.a[i];
-        }
-        return s;
+        return BACKEND.dot(a, 0, b.a, 0, n);
     }
 
     /**
@@ -129,6 +226,19 @@ public class Vector {
         return a;
     }
 
+    /**
+     * Throws an exception if the other vector does not have the same size.
+     * Vectors either share all of their values or none, so elementwise
+     * operations are safe for any combination of operands and result.
+     *
+     * @param b vector to compare the size with
+     */
+    private void checkSameSize(Vector b) {
+        if (n != b.n) {
+            throw new IllegalArgumentException("Vector sizes do not match: " + n + " and " + b.n);
+        }
+    }
+
     /**
      * Compares all values to other vector.
      *
@@ -0,0 +1,186 @@
+package org.neural.network.mathlib.algebra;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of temporary matrices that can be borrowed and returned again, so that
+ * repeated computations like training batches reuse their buffers instead of
+ * allocating new ones. Matrices are kept by shape, precision and storage.
+ *
+ * Every thread has its own workspace (see {@link #get()}), so borrowing and
+ * returning needs no synchronization. A borrowed matrix may be returned on
+ * another thread; it then simply moves to the workspace of that thread.
+ *
+ */
+public final class Workspace {
+
+    /**
+     * Maximum number of free matrices kept per shape. Further returned
+     * matrices are left to the garbage collector.
+     */
+    public static final int MAX_FREE_PER_SHAPE = 16;
+
+    private static final ThreadLocal<Workspace> CURRENT = ThreadLocal.withInitial(Workspace::new);
+
+    private final List<Pool> pools = new ArrayList<>();
+    private long borrows;
+    private long allocations;
+
+    /**
+     * Initializes an empty workspace. Most code should use the workspace of
+     * the current thread instead (see {@link #get()}).
+     */
+    public Workspace() {
+    }
+
+    /**
+     * Gets the workspace of the current thread.
+     *
+     * @return workspace of the current thread
+     */
+    public static Workspace get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Borrows a matrix stored on the heap. The values of the matrix are
+     * undefined.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param precision precision of the values
+     * @return matrix to be returned with {@link #release(Matrix)}
+     */
+    public Matrix borrow(int n, int m, Precision precision) {
+        return borrow(n, m, precision, false);
+    }
+
+    /**
+     * Borrows a matrix stored off-heap. The values of the matrix are
+     * undefined.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param precision precision of the values
+     * @return matrix to be returned with {@link #release(Matrix)}
+     */
+    public Matrix borrowOffHeap(int n, int m, Precision precision) {
+        return borrow(n, m, precision, true);
+    }
+
+    /**
+     * Borrows a matrix, allocating a new one if none of the shape is free.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param precision precision of the values
+     * @param offHeap true for off-heap storage
+     * @return borrowed matrix
+     */
+    private Matrix borrow(int n, int m, Precision precision, boolean offHeap) {
+        borrows++;
+        Pool pool = find(n, m, precision, offHeap);
+        if (pool != null && pool.size > 0) {
+            Matrix M = pool.free[--pool.size];
+            pool.free[pool.size] = null;
+            return M;
+        }
+        allocations++;
+        return offHeap ? Matrix.allocateOffHeap(n, m, precision) : new Matrix(n, m, precision);
+    }
+
+    /**
+     * Returns a matrix so that it can be borrowed again. The matrix must not
+     * be used afterwards. Any whole matrix may be returned, not only borrowed
+     * ones, but views are rejected because they share their storage.
+     *
+     * @param M matrix to return, ignored if null
+     */
+    public void release(Matrix M) {
+        if (M == null) {
+            return;
+        }
+        if (M.getOffset() != 0 || !M.isContiguous()) {
+            throw new IllegalArgumentException("Views can not be returned to a workspace");
+        }
+        Pool pool = find(M.getN(), M.getM(), M.getPrecision(), M.isOffHeap());
+        if (pool == null) {
+            pool = new Pool(M.getN(), M.getM(), M.getPrecision(), M.isOffHeap());
+            pools.add(pool);
+        }
+        for (int i = 0; i < pool.size; i++) {
+            if (pool.free[i] == M) {
+                throw new IllegalArgumentException("Matrix was already returned");
+            }
+        }
+        if (pool.size < MAX_FREE_PER_SHAPE) {
+            pool.free[pool.size++] = M;
+        }
+    }
+
+    /**
+     * Drops all free matrices.
+     */
+    public void clear() {
+        pools.clear();
+    }
+
+    /**
+     * Gets the number of borrowed matrices since the workspace was created.
+     *
+     * @return number of borrows
+     */
+    public long getBorrows() {
+        return borrows;
+    }
+
+    /**
+     * Gets the number of borrows that had to allocate a new matrix.
+     *
+     * @return number of allocations
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * Finds the pool of free matrices of a shape. Networks only use a handful
+     * of shapes, so a linear search is fast and does not allocate keys.
+     *
+     * @param n number of rows
+     * @param m number of columns
+     * @param precision precision of the values
+     * @param offHeap true for off-heap storage
+     * @return pool or null if no matrix of the shape was returned yet
+     */
+    private Pool find(int n, int m, Precision precision, boolean offHeap) {
+        for (int i = 0; i < pools.size(); i++) {
+            Pool pool = pools.get(i);
+            if (pool.n == n && pool.m == m && pool.precision == precision && pool.offHeap == offHeap) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Free matrices of one shape.
+     */
+    private static final class Pool {
+
+        private final int n;
+        private final int m;
+        private final Precision precision;
+        private final boolean offHeap;
+        private final Matrix[] free = new Matrix[MAX_FREE_PER_SHAPE];
+        private int size;
+
+        Pool(int n, int m, Precision precision, boolean offHeap) {
+            this.n = n;
+            this.m = m;
+            this.precision = precision;
+            this.offHeap = offHeap;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
 import org.neural.network.mathlib.algebra.Vector;
 import org.neural.network.neuralnetlib.net.NeuralNetwork;
 import org.neural.network.neuralnetlib.options.activation.ActivationFunction;
@@ -19,12 +20,16 @@ import org.neural.network.neuralnetlib.options.activation.SigmoidFunction;
  */
 public class NetworkIO {
 
+    private static final String SINGLE_PRECISION = "SINGLE_PRECISION";
+
     private NetworkIO(){
         throw new IllegalStateException("Utility Class");
     }
 
     /**
-     * Loads a neural network from the specified location.
+     * Loads a neural network from the specified location. Files marked with
+     * SINGLE_PRECISION after the activation function are loaded as single
+     * precision networks.
      *
      * @param file filename of a neural network e.g. "network.dat"
      * @return the loaded neural network with all its weights and biases
@@ -34,25 +39,31 @@ public class NetworkIO {
         Matrix[] weights;
         ActivationFunction activationFunction = null;
         int size = 0;
+        Precision precision = Precision.DOUBLE;
         try {
             List<String> lines = Files.readAllLines(Paths.get(file));
             if (lines.get(0).trim().equals("SIGMOID_ACTIVATION_FUNCTION")) {
                 activationFunction = new SigmoidFunction();
             }
-            size = Integer.parseInt(lines.get(1));
+            int header = 1;
+            if (lines.get(1).trim().equals(SINGLE_PRECISION)) {
+                precision = Precision.SINGLE;
+                header = 2;
+            }
+            size = Integer.parseInt(lines.get(header));
             biases = new Vector[size - 1];
-            for (int i = 2; i < size + 1; i++) {
+            for (int i = header + 1; i < size + header; i++) {
                 String[] components = lines.get(i).trim().split(" ");
                 double[] values = new double[components.length];
                 for (int j = 0; j < components.length; j++) {
                     values[j] = Double.parseDouble(components[j]);
                 }
-                biases[i - 2] = new Vector(values);
+                biases[i - header - 1] = new Vector(values);
             }
             weights = new Matrix[size - 1];
             int matrixIndex = 0;
             ArrayList<Double[]> rows = new ArrayList<>();
-            for (int i = size + 1; i < lines.size(); i++) {
+            for (int i = size + header; i < lines.size(); i++) {
                 if (lines.get(i).isEmpty()) {
                     double[][] matrix = new double[rows.size()][rows.get(0).length];
                     for (int j = 0; j < rows.size(); j++) {
@@ -61,7 +72,7 @@ public class NetworkIO {
                         }
                     }
                     rows.clear();
-                    weights[matrixIndex++] = new Matrix(matrix);
+                    weights[matrixIndex++] = new Matrix(matrix).toPrecision(precision);
                     i++;
                 }
                 if (i >= lines.size() || lines.get(i).isEmpty()) {
@@ -83,7 +94,8 @@ public class NetworkIO {
 
     /**
      * Saves the current state of a neural network. Can be imported again later
-     * on.
+     * on. Weights of single precision networks are written with float
+     * precision.
      *
      * @param file the location and filename to save the network to
      * @param net the network that is to be saved
@@ -93,6 +105,9 @@ public class NetworkIO {
         if (net.getActivationFunction() instanceof SigmoidFunction) {
             functions += "SIGMOID_ACTIVATION_FUNCTION\n";
         }
+        if (net.getPrecision() == Precision.SINGLE) {
+            functions += SINGLE_PRECISION + "\n";
+        }
         StringBuilder text = new StringBuilder(functions + net.getSize() + "\n");
         for (Vector bias : net.getBiases()) {
             text.append(bias.toString()).append("\n");
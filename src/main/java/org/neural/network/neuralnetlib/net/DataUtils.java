@@ -1,6 +1,7 @@
 package org.neural.network.neuralnetlib.net;
 
 import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
 import org.neural.network.mathlib.algebra.Vector;
 
 import java.util.Random;
@@ -19,6 +20,19 @@ public class DataUtils {
      * @return parts of vector array represented as matrix array
      */
     public static Matrix[] subdivide(Vector[] in, int size) {
+        return subdivide(in, size, Precision.DOUBLE);
+    }
+
+    /**
+     * Divides the given array into parts of specified size and precision. The
+     * last part could be shorter if size of array is indivisible
+     *
+     * @param in array to be subdivided
+     * @param size size of individual parts
+     * @param precision precision of the resulting matrices
+     * @return parts of vector array represented as matrix array
+     */
+    public static Matrix[] subdivide(Vector[] in, int size, Precision precision) {
         Matrix[] result = new Matrix[(int) Math.ceil((double) in.length / size)];
         for (int i = 0; i < result.length; i++) {
             int pos = i * size;
@@ -31,11 +45,37 @@ public class DataUtils {
             for (int j = 0; j < part.length; j++) {
                 part[j] = in[pos + j];
             }
-            result[i] = new Matrix(part);
+            result[i] = new Matrix(precision, part);
         }
         return result;
     }
 
+    /**
+     * Copies consecutive vectors of the given array into the columns of an
+     * existing matrix, for example one borrowed from a
+     * {@link org.neural.network.mathlib.algebra.Workspace}.
+     *
+     * @param in array to copy from
+     * @param from index of the vector copied into the first column
+     * @param target matrix receiving one vector per column
+     * @return target
+     */
+    public static Matrix gather(Vector[] in, int from, Matrix target) {
+        if (from < 0 || from + target.getM() > in.length) {
+            throw new IllegalArgumentException("Vectors " + from + " to " + (from + target.getM()) + " out of range");
+        }
+        for (int j = 0; j < target.getM(); j++) {
+            double[] v = in[from + j].getArray();
+            if (v.length != target.getN()) {
+                throw new IllegalArgumentException("Vector size does not match row count");
+            }
+            for (int i = 0; i < v.length; i++) {
+                target.set(i, j, v[i]);
+            }
+        }
+        return target;
+    }
+
     /**
      * Swaps two elements in vector array.
      *
@@ -0,0 +1,180 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.Random;
+
+/**
+ * Training or test data packed into two matrices, one column per sample. The
+ * inputs and desired outputs are copied once when the dataset is created.
+ * Minibatches are handed out as views on consecutive columns, so training
+ * does not copy any data.
+ *
+ * Shuffling permutes the columns of both matrices in place, one row at a
+ * time. A row of all samples is small enough to stay in the cache, so the
+ * random reads of the permutation stay cheap even for large datasets.
+ *
+ */
+public class Dataset {
+
+    private final Matrix inputs;
+    private final Matrix outputs;
+    private final int[] order;
+    private double[] row;
+    private float[] floatRow;
+
+    /**
+     * Packs input and output vectors in double precision.
+     *
+     * @param in input vectors
+     * @param out desired output vector of every input
+     */
+    public Dataset(Vector[] in, Vector[] out) {
+        this(in, out, Precision.DOUBLE);
+    }
+
+    /**
+     * Packs input and output vectors in the given precision.
+     *
+     * @param in input vectors
+     * @param out desired output vector of every input
+     * @param precision precision of the packed values
+     */
+    public Dataset(Vector[] in, Vector[] out, Precision precision) {
+        this(new Matrix(precision, in), new Matrix(precision, out));
+    }
+
+    /**
+     * Initializes the dataset with already packed matrices. The matrices are
+     * not copied and are changed by {@link #shuffle(Random)}.
+     *
+     * @param inputs one input per column
+     * @param outputs desired output of every input in the same column
+     */
+    public Dataset(Matrix inputs, Matrix outputs) {
+        if (inputs.getM() != outputs.getM()) {
+            throw new IllegalArgumentException("Inputs and outputs must have the same number of samples: "
+                    + inputs.getM() + " and " + outputs.getM());
+        }
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.order = new int[inputs.getM()];
+    }
+
+    /**
+     * Shuffles the samples randomly.
+     *
+     * @param rand source of randomness
+     */
+    public void shuffle(Random rand) {
+        for (int j = 0; j < order.length; j++) {
+            order[j] = j;
+        }
+        for (int j = order.length - 1; j > 0; j--) {
+            int k = rand.nextInt(j + 1);
+            int temp = order[j];
+            order[j] = order[k];
+            order[k] = temp;
+        }
+        permute(inputs, order);
+        permute(outputs, order);
+    }
+
+    /**
+     * Reorders the columns of a matrix, row by row through a reused buffer.
+     *
+     * @param A matrix to reorder
+     * @param order index of the old column moved to every column
+     */
+    private void permute(Matrix A, int[] order) {
+        int m = A.getM();
+        if (A.getData() != null) {
+            if (row == null) {
+                row = new double[m];
+            }
+            double[] a = A.getData();
+            for (int i = 0; i < A.getN(); i++) {
+                int off = A.getOffset() + i * A.getStride();
+                for (int j = 0; j < m; j++) {
+                    row[j] = a[off + order[j]];
+                }
+                System.arraycopy(row, 0, a, off, m);
+            }
+        } else if (A.getFloatData() != null) {
+            if (floatRow == null) {
+                floatRow = new float[m];
+            }
+            float[] a = A.getFloatData();
+            for (int i = 0; i < A.getN(); i++) {
+                int off = A.getOffset() + i * A.getStride();
+                for (int j = 0; j < m; j++) {
+                    floatRow[j] = a[off + order[j]];
+                }
+                System.arraycopy(floatRow, 0, a, off, m);
+            }
+        } else {
+            if (row == null) {
+                row = new double[m];
+            }
+            for (int i = 0; i < A.getN(); i++) {
+                for (int j = 0; j < m; j++) {
+                    row[j] = A.get(i, order[j]);
+                }
+                for (int j = 0; j < m; j++) {
+                    A.set(i, j, row[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the inputs of a range of samples as a view.
+     *
+     * @param from first sample
+     * @param to end of samples
+     * @return view with one input per column
+     */
+    public Matrix getInputs(int from, int to) {
+        return inputs.viewBlock(0, from, inputs.getN(), to - from);
+    }
+
+    /**
+     * Gets the desired outputs of a range of samples as a view.
+     *
+     * @param from first sample
+     * @param to end of samples
+     * @return view with one output per column
+     */
+    public Matrix getOutputs(int from, int to) {
+        return outputs.viewBlock(0, from, outputs.getN(), to - from);
+    }
+
+    /**
+     * Gets the inputs of all samples.
+     *
+     * @return matrix with one input per column
+     */
+    public Matrix getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Gets the desired outputs of all samples.
+     *
+     * @return matrix with one output per column
+     */
+    public Matrix getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * Gets the number of samples.
+     *
+     * @return number of samples
+     */
+    public int size() {
+        return inputs.getM();
+    }
+}
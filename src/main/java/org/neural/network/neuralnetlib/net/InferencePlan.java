@@ -0,0 +1,270 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.neural.network.mathlib.algebra.Backends;
+import org.neural.network.mathlib.algebra.ComputeBackend;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.options.activation.ActivationFunction;
+import org.neural.network.neuralnetlib.options.activation.SigmoidFunction;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Frozen copy of a network for fast inference, created with
+ * {@link NeuralNetwork#compile(int)}. The weights and biases are copied once
+ * into contiguous row-major arrays on the heap, so later changes of the
+ * network do not affect the plan. The buffers of all layers are allocated
+ * up front for batches of up to the given size, and
+ * {@link #predict(double[], double[])} does not allocate anything.
+ *
+ * The sigmoid function is applied directly instead of through the
+ * {@link ActivationFunction} of the network. Other functions are called
+ * through a single function object resolved when compiling.
+ *
+ * A plan must only be used by one thread at a time. {@link #copy()} creates
+ * plans for other threads sharing the same weights.
+ *
+ */
+public final class InferencePlan {
+
+    private static final ComputeBackend BACKEND = Backends.get();
+
+    private final int maxBatch;
+    private final int[] sizes;
+    private final Precision precision;
+    private final Matrix[] weights;
+    private final double[][] weightData;
+    private final float[][] floatWeightData;
+    private final Vector[] biases;
+    private final ActivationFunction function;
+    private final boolean sigmoid;
+    private final DoubleUnaryOperator activation;
+    private final double[][] vectors;
+    private final float[][] floatVectors;
+    private final Matrix[][] batchBuffers;
+
+    /**
+     * Compiles a plan from the current weights and biases of a network.
+     *
+     * @param net network to compile
+     * @param maxBatch largest number of inputs predicted at once
+     */
+    InferencePlan(NeuralNetwork net, int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1");
+        }
+        Matrix[] netWeights = net.getWeights();
+        Vector[] netBiases = net.getBiases();
+        int layers = netWeights.length;
+        this.maxBatch = maxBatch;
+        this.precision = net.getPrecision();
+        this.sizes = new int[layers + 1];
+        this.weights = new Matrix[layers];
+        this.weightData = new double[layers][];
+        this.floatWeightData = new float[layers][];
+        this.biases = new Vector[layers];
+        sizes[0] = netWeights[0].getM();
+        for (int i = 0; i < layers; i++) {
+            sizes[i + 1] = netWeights[i].getN();
+            weights[i] = new Matrix(netWeights[i].getN(), netWeights[i].getM(), precision).copyFrom(netWeights[i]);
+            weightData[i] = weights[i].getData();
+            floatWeightData[i] = weights[i].getFloatData();
+            biases[i] = new Vector(netBiases[i].getArray().clone());
+        }
+        this.function = net.getActivationFunction();
+        this.sigmoid = function.getClass() == SigmoidFunction.class;
+        this.activation = sigmoid ? InferencePlan::sigmoid : function::calculate;
+        this.vectors = new double[layers + 1][];
+        this.floatVectors = new float[layers + 1][];
+        this.batchBuffers = new Matrix[layers][];
+        allocate();
+    }
+
+    /**
+     * Creates a plan sharing the weights of another plan, with buffers of its
+     * own.
+     *
+     * @param plan plan to copy
+     */
+    private InferencePlan(InferencePlan plan) {
+        this.maxBatch = plan.maxBatch;
+        this.sizes = plan.sizes;
+        this.precision = plan.precision;
+        this.weights = plan.weights;
+        this.weightData = plan.weightData;
+        this.floatWeightData = plan.floatWeightData;
+        this.biases = plan.biases;
+        this.function = plan.function;
+        this.sigmoid = plan.sigmoid;
+        this.activation = plan.activation;
+        this.vectors = new double[sizes.length][];
+        this.floatVectors = new float[sizes.length][];
+        this.batchBuffers = new Matrix[sizes.length - 1][];
+        allocate();
+    }
+
+    /**
+     * Allocates the buffers of all layers. Every batch size gets its own
+     * contiguous matrix wrapping the same array.
+     */
+    private void allocate() {
+        for (int i = 0; i < sizes.length; i++) {
+            if (precision == Precision.SINGLE) {
+                floatVectors[i] = new float[sizes[i]];
+            } else if (i > 0) {
+                vectors[i] = new double[sizes[i]];
+            }
+        }
+        for (int i = 0; i < batchBuffers.length; i++) {
+            int n = sizes[i + 1];
+            batchBuffers[i] = new Matrix[maxBatch];
+            if (precision == Precision.SINGLE) {
+                float[] data = new float[n * maxBatch];
+                for (int m = 1; m <= maxBatch; m++) {
+                    batchBuffers[i][m - 1] = new Matrix(n, m, data);
+                }
+            } else {
+                double[] data = new double[n * maxBatch];
+                for (int m = 1; m <= maxBatch; m++) {
+                    batchBuffers[i][m - 1] = new Matrix(n, m, data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a plan for another thread. The weights are shared, the buffers
+     * are not.
+     *
+     * @return new plan with the same weights
+     */
+    public InferencePlan copy() {
+        return new InferencePlan(this);
+    }
+
+    /**
+     * Predicts the output of a single input without allocating memory.
+     * Every layer is a matrix-vector product followed by bias and activation
+     * while the result is still in the cache.
+     *
+     * @param in input values
+     * @param out array receiving the values of the output layer, not the
+     * input array
+     */
+    public void predict(double[] in, double[] out) {
+        if (in.length != sizes[0] || out.length != sizes[sizes.length - 1]) {
+            throw new IllegalArgumentException("Expected " + sizes[0] + " inputs and " + sizes[sizes.length - 1]
+                    + " outputs, got " + in.length + " and " + out.length);
+        }
+        if (in == out) {
+            throw new IllegalArgumentException("Input and output must be different arrays");
+        }
+        int layers = weights.length;
+        if (precision == Precision.SINGLE) {
+            float[] x = floatVectors[0];
+            for (int j = 0; j < x.length; j++) {
+                x[j] = (float) in[j];
+            }
+            for (int i = 0; i < layers; i++) {
+                float[] w = floatWeightData[i];
+                double[] b = biases[i].getArray();
+                int m = sizes[i];
+                float[] y = floatVectors[i + 1];
+                BACKEND.gemv(y.length, m, w, 0, m, x, 0, y, 0);
+                for (int r = 0; r < y.length; r++) {
+                    double v = activate(y[r] + b[r]);
+                    y[r] = (float) v;
+                    if (i == layers - 1) {
+                        out[r] = v;
+                    }
+                }
+                x = y;
+            }
+        } else {
+            double[] x = in;
+            for (int i = 0; i < layers; i++) {
+                double[] w = weightData[i];
+                double[] b = biases[i].getArray();
+                int m = sizes[i];
+                double[] y = i == layers - 1 ? out : vectors[i + 1];
+                BACKEND.gemv(y.length, m, w, 0, m, x, 0, y, 0);
+                for (int r = 0; r < y.length; r++) {
+                    y[r] = activate(y[r] + b[r]);
+                }
+                x = y;
+            }
+        }
+    }
+
+    /**
+     * Predicts the outputs of a batch of inputs using the preallocated
+     * buffers. Inputs in a different precision than the plan are converted
+     * first.
+     *
+     * @param in input values organized in a matrix out of input columns, at
+     * most the maximum batch size
+     * @return result of the output layer, one column per input column. The
+     * matrix belongs to the plan and is only valid until its next call
+     */
+    public Matrix predict(Matrix in) {
+        if (in.getN() != sizes[0] || in.getM() < 1 || in.getM() > maxBatch) {
+            throw new IllegalArgumentException("Input must have " + sizes[0] + " rows and 1 to "
+                    + maxBatch + " columns");
+        }
+        Matrix current = in.toPrecision(precision);
+        for (int i = 0; i < weights.length; i++) {
+            Matrix out = batchBuffers[i][in.getM() - 1];
+            weights[i].mulMatAddVecMapInto(current, biases[i], activation, out, out);
+            current = out;
+        }
+        return current;
+    }
+
+    /**
+     * Applies the activation function of the network.
+     *
+     * @param x value
+     * @return activation
+     */
+    private double activate(double x) {
+        return sigmoid ? sigmoid(x) : function.calculate(x);
+    }
+
+    /**
+     * Calculates the sigmoid function.
+     *
+     * @param x value
+     * @return 1 / (1 + e^-x)
+     */
+    private static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    /**
+     * Gets the largest number of inputs predicted at once.
+     *
+     * @return maximum batch size
+     */
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * Gets the number of input values.
+     *
+     * @return input size
+     */
+    public int getInputSize() {
+        return sizes[0];
+    }
+
+    /**
+     * Gets the number of output values.
+     *
+     * @return output size
+     */
+    public int getOutputSize() {
+        return sizes[sizes.length - 1];
+    }
+}
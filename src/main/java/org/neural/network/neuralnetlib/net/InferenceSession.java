@@ -0,0 +1,288 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.mathlib.algebra.SparseMatrix;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.options.activation.ActivationFunction;
+
+/**
+ * Runs forward passes through a neural network without touching its training
+ * state. A session only reads the weights and biases of the network and keeps
+ * the activations of every layer in buffers of its own, which are reused by
+ * the next call with the same number of columns. Sessions created with a
+ * maximum batch size allocate the buffers of every width up to it at once,
+ * so batches of changing sizes do not allocate. Single inputs take a
+ * separate matrix-vector path.
+ *
+ * A session must only be used by one thread at a time, but any number of
+ * sessions can predict concurrently with the same network. Every session
+ * predicts with a snapshot of the weights and biases, copied again whenever
+ * the version of the network changed. The snapshot of a network moved off
+ * the heap is kept off the heap as well. The copy is only taken while no
+ * update is in progress (see {@link NeuralNetwork#beginUpdate()}), so a
+ * session predicting during training never sees a half-applied update. Only
+ * under asynchronous training, where updates overlap all the time, the
+ * session gives up waiting after a while and copies the weights as they are.
+ *
+ */
+public class InferenceSession {
+
+    /**
+     * Number of times a session waits for a running update to end before it
+     * copies the weights anyway.
+     */
+    private static final int SNAPSHOT_ATTEMPTS = 100;
+
+    private final NeuralNetwork net;
+    private final Matrix[] weights;
+    private final Vector[] biases;
+    private final SparseMatrix[] sparseWeights;
+    private long version = -1;
+    private final Matrix[] activations;
+    private final Vector[] vectors;
+    private final Matrix[][] batchBuffers;
+
+    /**
+     * Initializes a session for the network. Use
+     * {@link NeuralNetwork#newSession()} to create sessions.
+     *
+     * @param net network to run
+     */
+    InferenceSession(NeuralNetwork net) {
+        this(net, 0);
+    }
+
+    /**
+     * Initializes a session for the network with buffers for all batches of
+     * up to the given size. Use {@link NeuralNetwork#newSession(int)} to
+     * create sessions.
+     *
+     * @param net network to run
+     * @param maxBatch largest number of inputs of a preallocated buffer, 0
+     * for none
+     */
+    InferenceSession(NeuralNetwork net, int maxBatch) {
+        if (maxBatch < 0) {
+            throw new IllegalArgumentException("Maximum batch size must not be negative");
+        }
+        this.net = net;
+        this.weights = new Matrix[net.getSize() - 1];
+        this.biases = new Vector[net.getSize() - 1];
+        this.sparseWeights = new SparseMatrix[net.getSize() - 1];
+        this.activations = new Matrix[net.getSize() - 1];
+        this.vectors = new Vector[net.getSize() - 1];
+        this.batchBuffers = new Matrix[net.getSize() - 1][];
+        if (maxBatch > 0) {
+            allocate(maxBatch);
+        }
+    }
+
+    /**
+     * Allocates the buffers of all layers for every batch width up to the
+     * maximum. On the heap every width wraps the same array contiguously,
+     * off the heap every width is a view of one matrix.
+     *
+     * @param maxBatch largest number of inputs
+     */
+    private void allocate(int maxBatch) {
+        Matrix[] netWeights = net.getWeights();
+        Precision precision = net.getPrecision();
+        for (int i = 0; i < batchBuffers.length; i++) {
+            int n = netWeights[i].getN();
+            batchBuffers[i] = new Matrix[maxBatch];
+            if (net.isOffHeap()) {
+                Matrix full = Matrix.allocateOffHeap(n, maxBatch, precision);
+                for (int m = 1; m <= maxBatch; m++) {
+                    batchBuffers[i][m - 1] = full.viewBlock(0, 0, n, m);
+                }
+            } else if (precision == Precision.SINGLE) {
+                float[] data = new float[n * maxBatch];
+                for (int m = 1; m <= maxBatch; m++) {
+                    batchBuffers[i][m - 1] = new Matrix(n, m, data);
+                }
+            } else {
+                double[] data = new double[n * maxBatch];
+                for (int m = 1; m <= maxBatch; m++) {
+                    batchBuffers[i][m - 1] = new Matrix(n, m, data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Feedforwards the input values organized in a matrix through the network.
+     * Inputs with a density below the sparse threshold of the network are
+     * multiplied as a sparse matrix, as are sparse weights of the network.
+     *
+     * @param in input values organized in a matrix out of input columns
+     * @return result of the output layer, one column per input column. The
+     * matrix belongs to the session and is only valid until its next call
+     */
+    public Matrix feedforward(Matrix in) {
+        snapshot();
+        ActivationFunction f = net.getActivationFunction();
+        Matrix current = in.toPrecision(net.getPrecision());
+        double threshold = net.getSparseThreshold();
+        SparseMatrix sparse = threshold > 0 && SparseMatrix.density(current) < threshold
+                ? new SparseMatrix(current) : null;
+        for (int i = 0; i < activations.length; i++) {
+            Matrix out = buffer(i, weights[i].getN(), current.getM());
+            if (sparseWeights[i] != null) {
+                sparseWeights[i].mulMatAddVecMapInto(current, biases[i], f::calculate, out, out);
+            } else if (i == 0 && sparse != null) {
+                weights[i].mulMatAddVecMapInto(sparse, biases[i], f::calculate, out, out);
+            } else {
+                weights[i].mulMatAddVecMapInto(current, biases[i], f::calculate, out, out);
+            }
+            current = out;
+        }
+        return current;
+    }
+
+    /**
+     * Feedforwards a single input vector through the network. Every layer is
+     * a matrix-vector product with the bias and the activation applied in the
+     * same pass, which is much faster for one input than a matrix product.
+     *
+     * @param in input values
+     * @return new vector holding the result of the output layer
+     */
+    public Vector predict(Vector in) {
+        snapshot();
+        ActivationFunction f = net.getActivationFunction();
+        Vector current = in;
+        for (int i = 0; i < weights.length; i++) {
+            Vector out = i == weights.length - 1 ? new Vector(weights[i].getN()) : vector(i, weights[i].getN());
+            if (sparseWeights[i] != null) {
+                sparseWeights[i].mulVecAddVecMapInto(current, biases[i], f::calculate, out, out);
+            } else {
+                weights[i].mulVecAddVecMapInto(current, biases[i], f::calculate, out, out);
+            }
+            current = out;
+        }
+        return current;
+    }
+
+    /**
+     * Copies the weights and biases of the network, unless the snapshot is
+     * of the current version. A copy counts only if no update was running
+     * before or during it and the version did not change meanwhile.
+     */
+    private void snapshot() {
+        long current = net.getVersion();
+        if (current == version) {
+            return;
+        }
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            if (net.isUpdating()) {
+                Thread.yield();
+            } else {
+                copyWeights();
+                if (!net.isUpdating() && net.getVersion() == current) {
+                    version = current;
+                    return;
+                }
+            }
+            current = net.getVersion();
+        }
+        // updates never paused, as in asynchronous training
+        copyWeights();
+    }
+
+    /**
+     * Copies the weights, biases and sparse weights of the network into the
+     * snapshot, reusing its matrices if the sizes did not change. The weights
+     * of an off-heap network are copied off the heap as well.
+     */
+    private void copyWeights() {
+        Matrix[] netWeights = net.getWeights();
+        Vector[] netBiases = net.getBiases();
+        for (int i = 0; i < weights.length; i++) {
+            Matrix W = netWeights[i];
+            if (weights[i] == null || weights[i].getN() != W.getN() || weights[i].getM() != W.getM()
+                    || weights[i].getPrecision() != W.getPrecision()
+                    || weights[i].isOffHeap() != net.isOffHeap()) {
+                weights[i] = net.isOffHeap()
+                        ? Matrix.allocateOffHeap(W.getN(), W.getM(), W.getPrecision())
+                        : new Matrix(W.getN(), W.getM(), W.getPrecision());
+            }
+            weights[i].copyFrom(W);
+            double[] b = netBiases[i].getArray();
+            if (biases[i] == null || biases[i].getN() != b.length) {
+                biases[i] = new Vector(b.length);
+            }
+            System.arraycopy(b, 0, biases[i].getArray(), 0, b.length);
+            sparseWeights[i] = net.getSparseWeights(i);
+        }
+    }
+
+    /**
+     * Gets the vector buffer of a hidden layer.
+     *
+     * @param layer index of the layer
+     * @param n size of the layer
+     * @return buffer of the layer
+     */
+    private Vector vector(int layer, int n) {
+        Vector v = vectors[layer];
+        if (v == null || v.getN() != n) {
+            v = new Vector(n);
+            vectors[layer] = v;
+        }
+        return v;
+    }
+
+    /**
+     * Gets the buffer of a layer. Preallocated widths are taken from the
+     * buffers of every width, other sizes are reallocated if the size changed.
+     *
+     * @param layer index of the layer
+     * @param n row count
+     * @param m column count
+     * @return buffer of the layer
+     */
+    private Matrix buffer(int layer, int n, int m) {
+        Matrix[] widths = batchBuffers[layer];
+        if (widths != null && m > 0 && m <= widths.length && widths[m - 1].getN() == n) {
+            return widths[m - 1];
+        }
+        Matrix M = activations[layer];
+        if (M == null || M.getN() != n || M.getM() != m) {
+            M = net.isOffHeap()
+                    ? Matrix.allocateOffHeap(n, m, net.getPrecision())
+                    : new Matrix(n, m, net.getPrecision());
+            activations[layer] = M;
+        }
+        return M;
+    }
+
+    /**
+     * Gets the weights of a layer in the snapshot of the session.
+     *
+     * @param layer index of the weight matrix
+     * @return weights of the snapshot
+     */
+    Matrix getWeights(int layer) {
+        return weights[layer];
+    }
+
+    /**
+     * Gets the sparse weights of a layer in the snapshot of the session.
+     *
+     * @param layer index of the weight matrix
+     * @return sparse weights or null if the layer is multiplied densely
+     */
+    SparseMatrix getSparseWeights(int layer) {
+        return sparseWeights[layer];
+    }
+
+    /**
+     * Gets the network of the session.
+     *
+     * @return network
+     */
+    public NeuralNetwork getNetwork() {
+        return net;
+    }
+}
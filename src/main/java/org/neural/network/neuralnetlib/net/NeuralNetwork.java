@@ -2,13 +2,19 @@ package org.neural.network.neuralnetlib.net;
 
 
 import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.mathlib.algebra.SparseMatrix;
 import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.mathlib.algebra.Workspace;
 import org.neural.network.neuralnetlib.options.activation.ActivationFunction;
 import org.neural.network.neuralnetlib.options.activation.SigmoidFunction;
 import org.neural.network.neuralnetlib.options.cost.CostFunction;
 import org.neural.network.neuralnetlib.options.initialization.NormalizedInitialization;
 import org.neural.network.neuralnetlib.options.initialization.WeightInitialization;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Representing a neural network. Neural Networks are very small representations
  * of the human brain. Every network consists of different layers and performs
@@ -19,16 +25,34 @@ import org.neural.network.neuralnetlib.options.initialization.WeightInitializati
  */
 public class NeuralNetwork {
 
+    /**
+     * Default input density below which the first layer multiplies with a
+     * sparse copy of the input. The copy is built anew on every call, so
+     * sparse inputs are disabled unless enabled with
+     * {@link #setSparseThreshold(double)} or the system property
+     * neuralnet.sparse.threshold.
+     */
+    public static final double DEFAULT_SPARSE_THRESHOLD = 0;
+
     private final int size;
     private Vector[] biases;
     private Matrix[] weights;
     private final Matrix[] lastValues;
     private final Matrix[] lastActivations;
     private final ActivationFunction activationFunction;
+    private final Precision precision;
+    private boolean offHeap;
+    private double sparseThreshold = Double.parseDouble(
+            System.getProperty("neuralnet.sparse.threshold", String.valueOf(DEFAULT_SPARSE_THRESHOLD)));
+    private SparseMatrix sparseInput;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger updating = new AtomicInteger();
+    private volatile SparseWeights sparseWeights;
 
     /**
      * Initializes the neural network based on the following options. This
-     * constructor should only be used by the NetworkIO class
+     * constructor should only be used by the NetworkIO class. The precision of
+     * the network is taken from the weights.
      *
      * @param weights weights of the network
      * @param biases biases of the network
@@ -42,6 +66,7 @@ public class NeuralNetwork {
         this.lastValues = new Matrix[size - 1];
         this.lastActivations = new Matrix[size];
         this.activationFunction = activationFunction;
+        this.precision = weights[0].getPrecision();
     }
 
     /**
@@ -53,7 +78,22 @@ public class NeuralNetwork {
      * @param sizes an array of layer sizes
      */
     public NeuralNetwork(ActivationFunction neuronFunc, WeightInitialization weightInitialization, int... sizes) {
-        this(weightInitialization.initWeights(sizes), weightInitialization.initBiases(sizes), sizes.length, neuronFunc);
+        this(neuronFunc, weightInitialization, Precision.DOUBLE, sizes);
+    }
+
+    /**
+     * Initializes the neural network based on the following options. Single
+     * precision halves the memory needed for weights and activations. Biases
+     * are always kept in double precision.
+     *
+     * @param neuronFunc activation function to apply to ever neuron
+     * @param weightInitialization defines a method to initialize the weight and
+     * biases with
+     * @param precision precision of weights and activations
+     * @param sizes an array of layer sizes
+     */
+    public NeuralNetwork(ActivationFunction neuronFunc, WeightInitialization weightInitialization, Precision precision, int... sizes) {
+        this(toPrecision(weightInitialization.initWeights(sizes), precision), weightInitialization.initBiases(sizes), sizes.length, neuronFunc);
     }
 
     /**
@@ -69,27 +109,138 @@ public class NeuralNetwork {
 
     /**
      * Feedforwards the input values organized in a matrix through the network.
-     * The neuron values and activations are saved for later use.
+     * The neuron values and activations are saved for later use. Every layer
+     * adds its biases and applies the activation function in the same pass
+     * as its matrix product. Inputs with a density below the sparse threshold
+     * are multiplied as a sparse matrix, as are weights compressed with
+     * {@link #sparsify(double)}.
+     *
+     * Neuron values and activations are borrowed from the {@link Workspace} of
+     * the current thread, off-heap after {@link #moveOffHeap()}. The returned
+     * matrix is a copy of the output layer belonging to the caller.
+     *
+     * This method stores the state used by training and must not be called
+     * from several threads at once. Use an {@link InferenceSession} to
+     * predict concurrently or while the network is being trained.
      *
      * @param in input values organized in a matrix out of input columns
-     * @return result of the output layer. Every input column has its
-     * corresponding output column in the returned matrix
+     * @return new matrix holding the result of the output layer. Every input
+     * column has its corresponding output column in the returned matrix. The
+     * result has the precision of the network
      *
      * Forward Propagation:
      *  yi = bj + Sum(Xi * Wij) for i,j in Wnxm
      * 
      */
     public Matrix feedforward(Matrix in) {
-        lastActivations[0] = in;
+        Matrix out = forward(in);
+        return new Matrix(out.getN(), out.getM(), precision).copyFrom(out);
+    }
+
+    /**
+     * Feedforwards the input values and keeps the neuron values and
+     * activations for backpropagation. All of them, including the returned
+     * output layer, are borrowed from the {@link Workspace} of the current
+     * thread and returned there by the next call.
+     *
+     * @param in input values organized in a matrix out of input columns
+     * @return result of the output layer, only valid until the next call
+     */
+    private Matrix forward(Matrix in) {
+        lastActivations[0] = in.toPrecision(precision);
+        sparseInput = sparseThreshold > 0 && SparseMatrix.density(lastActivations[0]) < sparseThreshold
+                ? new SparseMatrix(lastActivations[0]) : null;
+        Workspace workspace = Workspace.get();
         for (int i = 0; i < size - 1; i++) {
+            int rows = weights[i].getN();
+            int cols = lastActivations[i].getM();
+            release(workspace, lastValues[i]);
+            release(workspace, lastActivations[i + 1]);
+            lastValues[i] = borrow(workspace, rows, cols);
+            Matrix activations = borrow(workspace, rows, cols);
+            SparseMatrix sparse = getSparseWeights(i);
+            if (sparse != null) {
+                sparse.mulMatAddVecMapInto(lastActivations[i], biases[i], activationFunction::calculate, lastValues[i], activations);
+            } else if (i == 0 && sparseInput != null) {
+                weights[i].mulMatAddVecMapInto(sparseInput, biases[i], activationFunction::calculate, lastValues[i], activations);
+            } else {
+                weights[i].mulMatAddVecMapInto(lastActivations[i], biases[i], activationFunction::calculate, lastValues[i], activations);
+            }
+            lastActivations[i + 1] = activations;
+        }
+        return lastActivations[size - 1];
+    }
 
-            lastValues[i] = weights[i]
-                    .mulMat(lastActivations[i])
-                    .addVec(biases[i]);
+    /**
+     * Creates a session running forward passes with its own buffers. Sessions
+     * do not change the state of the network, so every thread can predict
+     * with its own session while the network is used elsewhere.
+     *
+     * @return new inference session
+     */
+    public InferenceSession newSession() {
+        return new InferenceSession(this);
+    }
 
-            lastActivations[i + 1] = activationFunction.calculateMat(lastValues[i]);
+    /**
+     * Creates a session with buffers for all batches of up to the given size
+     * allocated at once, for callers predicting batches of changing sizes.
+     *
+     * @param maxBatch largest number of inputs of a preallocated buffer
+     * @return new inference session
+     */
+    public InferenceSession newSession(int maxBatch) {
+        return new InferenceSession(this, maxBatch);
+    }
+
+    /**
+     * Creates a network sharing the weights and biases of this network, but
+     * with neuron values and activations of its own. Several threads can
+     * backpropagate at once with one replica each, and updates of the shared
+     * weights are seen by all replicas. Replicas keep the weights present
+     * when they were created; after {@link #setWeights(Matrix[])} or
+     * {@link #setBiases(Vector[])} new replicas are needed.
+     *
+     * @return new replica of the network
+     */
+    public NeuralNetwork replica() {
+        NeuralNetwork replica = new NeuralNetwork(weights, biases, size, activationFunction);
+        replica.offHeap = offHeap;
+        replica.sparseThreshold = sparseThreshold;
+        return replica;
+    }
+
+    /**
+     * Creates an independent network with copies of the weights and biases.
+     * Training the copy does not change this network.
+     *
+     * @return new network with the same weights and biases
+     */
+    public NeuralNetwork copy() {
+        Matrix[] weightsCopy = new Matrix[weights.length];
+        Vector[] biasesCopy = new Vector[biases.length];
+        for (int i = 0; i < weights.length; i++) {
+            weightsCopy[i] = new Matrix(weights[i].getN(), weights[i].getM(), precision).copyFrom(weights[i]);
+            biasesCopy[i] = new Vector(biases[i].getArray().clone());
         }
-        return lastActivations[size - 1];
+        NeuralNetwork copy = new NeuralNetwork(weightsCopy, biasesCopy, size, activationFunction);
+        copy.sparseThreshold = sparseThreshold;
+        if (offHeap) {
+            copy.moveOffHeap();
+        }
+        return copy;
+    }
+
+    /**
+     * Compiles the current weights and biases into a frozen plan with
+     * preallocated buffers. Predicting single inputs with the plan does not
+     * allocate any memory. Later training does not change the plan.
+     *
+     * @param maxBatch largest number of inputs predicted at once
+     * @return new inference plan
+     */
+    public InferencePlan compile(int maxBatch) {
+        return new InferencePlan(this, maxBatch);
     }
 
     /**
@@ -98,20 +249,105 @@ public class NeuralNetwork {
      * @param trainingIn input data
      * @param trainingOut output data with correct values
      * @param weightErrors is going to containg error values of every weight in
-     * every layer
+     * every layer. Matrices already present with the right size are
+     * overwritten, missing ones are allocated
      * @param biasErrors is going to containg error values of every bias in
-     * every layer
+     * every layer. Vectors already present with the right size are
+     * overwritten, missing ones are allocated
      * @param costFunction cost function being used to calculate error
      */
     public void backpropagate(Matrix trainingIn, Matrix trainingOut, Matrix[] weightErrors, Vector[] biasErrors, CostFunction costFunction) {
-        Matrix error = costFunction.calculateError(feedforward(trainingIn), trainingOut, lastValues[size - 2], activationFunction);
+        Workspace workspace = Workspace.get();
+        Matrix out = forward(trainingIn);
+        Matrix error = costFunction.calculateErrorInto(out, trainingOut, lastValues[size - 2], activationFunction,
+                workspace.borrow(out.getN(), out.getM(), precision));
         for (int i = size - 2; i >= 0; i--) {
-            weightErrors[i] = error.mulMat(lastActivations[i].transpose());
-            biasErrors[i] = error.sumCols();
+            if (i == 0 && sparseInput != null) {
+                weightErrors[i] = error.mulTransposeBInto(sparseInput, reuse(weightErrors[i], weights[i]));
+            } else {
+                weightErrors[i] = error.mulTransposeBInto(lastActivations[i], reuse(weightErrors[i], weights[i]));
+            }
+            biasErrors[i] = error.sumColsInto(reuse(biasErrors[i], biases[i]));
             if (i > 0) {
-                error = weights[i].transpose().mulMat(error).hadamardMat(activationFunction.calculateDerivMat(lastValues[i - 1]));
+                Matrix next = workspace.borrow(weights[i].getM(), error.getM(), precision);
+                weights[i].mulTransposeAInto(error, next).lazy()
+                        .hadamardMat(lastValues[i - 1].lazy().map(activationFunction::calculateDeriv))
+                        .evaluateInto(next);
+                workspace.release(error);
+                error = next;
             }
         }
+        workspace.release(error);
+    }
+
+    /**
+     * Returns the given matrix if it has the same size as the template,
+     * otherwise a new matrix of that size and the precision of the template.
+     *
+     * @param M matrix to reuse, may be null
+     * @param template matrix with the required size
+     * @return matrix to write into
+     */
+    private static Matrix reuse(Matrix M, Matrix template) {
+        if (M != null && M.getN() == template.getN() && M.getM() == template.getM()) {
+            return M;
+        }
+        return new Matrix(template.getN(), template.getM(), template.getPrecision());
+    }
+
+    /**
+     * Borrows a matrix for neuron values or activations with the precision of
+     * the network, stored off-heap after {@link #moveOffHeap()}.
+     *
+     * @param workspace workspace to borrow from
+     * @param n row count
+     * @param m column count
+     * @return borrowed matrix
+     */
+    private Matrix borrow(Workspace workspace, int n, int m) {
+        return offHeap ? workspace.borrowOffHeap(n, m, precision) : workspace.borrow(n, m, precision);
+    }
+
+    /**
+     * Returns neuron values or activations of the previous call to the
+     * workspace, unless they are used as the current input.
+     *
+     * @param workspace workspace to return to
+     * @param M matrix to return, may be null
+     */
+    private void release(Workspace workspace, Matrix M) {
+        if (M != lastActivations[0]) {
+            workspace.release(M);
+        }
+    }
+
+    /**
+     * Converts all matrices to the given precision.
+     *
+     * @param matrices matrices to convert
+     * @param precision desired precision
+     * @return the same array holding the converted matrices
+     */
+    private static Matrix[] toPrecision(Matrix[] matrices, Precision precision) {
+        for (int i = 0; i < matrices.length; i++) {
+            matrices[i] = matrices[i].toPrecision(precision);
+        }
+        return matrices;
+    }
+
+    /**
+     * Returns the given vector if it has the same size as the template,
+     * otherwise a new vector of that size.
+     *
+     * @param v vector to reuse, may be null
+     * @param template vector with the required size
+     * @return vector to write into
+     */
+    private static Vector reuse(Vector v, Vector template) {
+        if (v != null && v.getN() == template.getN()) {
+            return v;
+        }
+        return new Vector(template.getN());
     }
 
     /**
@@ -150,6 +386,62 @@ public class NeuralNetwork {
         return activationFunction;
     }
 
+    /**
+     * Moves the weights into off-heap memory and keeps the neuron values and
+     * activations of later feedforward calls off-heap as well. Large networks
+     * then need less heap and cause shorter garbage collection pauses.
+     */
+    public void moveOffHeap() {
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weights[i].toOffHeap();
+        }
+        offHeap = true;
+    }
+
+    /**
+     * Checks whether weights and activations are kept off-heap.
+     *
+     * @return true if {@link #moveOffHeap()} was called
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Sets the input density below which the first layer multiplies with a
+     * sparse copy of the input. Use 0 to always multiply densely. The
+     * density of every input is checked and its sparse copy built on every
+     * call, which pays off when the input is much sparser than the
+     * threshold and the first layer is large.
+     *
+     * @param sparseThreshold fraction of non-zero inputs
+     */
+    public void setSparseThreshold(double sparseThreshold) {
+        if (sparseThreshold < 0 || sparseThreshold > 1) {
+            throw new IllegalArgumentException("Sparse threshold must be between 0 and 1");
+        }
+        this.sparseThreshold = sparseThreshold;
+    }
+
+    /**
+     * Gets the input density below which the first layer multiplies with a
+     * sparse copy of the input.
+     *
+     * @return fraction of non-zero inputs
+     */
+    public double getSparseThreshold() {
+        return sparseThreshold;
+    }
+
+    /**
+     * Gets the precision of weights and activations.
+     *
+     * @return precision
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
     /**
      * Set weights.
      *
@@ -157,6 +449,7 @@ public class NeuralNetwork {
      */
     public void setWeights(Matrix[] weights) {
         this.weights = weights;
+        weightsChanged();
     }
 
     /**
@@ -166,5 +459,125 @@ public class NeuralNetwork {
      */
     public void setBiases(Vector[] biases) {
         this.biases = biases;
+        weightsChanged();
+    }
+
+    /**
+     * Marks the weights or biases as changed, so that cached predictions are
+     * no longer used. Called by the setters and by trainers after every
+     * update. Code changing the weights in place must call it as well.
+     */
+    public void weightsChanged() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Marks the start of an in-place change of the weights or biases.
+     * Inference sessions do not copy the weights until every change begun
+     * has ended, so they never see a half-applied update. Every call must be
+     * followed by {@link #endUpdate()}.
+     */
+    public void beginUpdate() {
+        updating.incrementAndGet();
+    }
+
+    /**
+     * Marks the end of an in-place change of the weights or biases begun with
+     * {@link #beginUpdate()}, which also marks the weights as changed.
+     */
+    public void endUpdate() {
+        weightsChanged();
+        updating.decrementAndGet();
+    }
+
+    /**
+     * Checks if the weights or biases are being changed in place right now.
+     *
+     * @return true between {@link #beginUpdate()} and {@link #endUpdate()}
+     */
+    public boolean isUpdating() {
+        return updating.get() > 0;
+    }
+
+    /**
+     * Stores a sparse copy of every layer whose weights have at most the
+     * given density, usually after pruning (see {@link Pruning}). Forward
+     * passes multiply these layers with the sparse copy, which costs work
+     * proportional to the remaining weights. The dense weights are kept for
+     * training and saving; the sparse copies are dropped as soon as the
+     * weights change and have to be created again. Storing the copies counts
+     * as a change of the weights, so existing sessions pick them up.
+     *
+     * @param maxDensity largest fraction of non-zero weights of a layer to
+     * store sparsely
+     * @return number of layers stored sparsely
+     */
+    public int sparsify(double maxDensity) {
+        if (maxDensity < 0 || maxDensity > 1) {
+            throw new IllegalArgumentException("Density must be between 0 and 1");
+        }
+        SparseMatrix[] sparse = new SparseMatrix[weights.length];
+        int count = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (SparseMatrix.density(weights[i]) <= maxDensity) {
+                sparse[i] = new SparseMatrix(weights[i]);
+                count++;
+            }
+        }
+        // the copies are published under the next version before it is
+        // counted, so sessions refreshing on the new version find them. If
+        // the weights changed meanwhile the version moved on and the copies
+        // are never used
+        long current = version.get();
+        sparseWeights = count > 0 ? new SparseWeights(sparse, current + 1) : null;
+        if (!version.compareAndSet(current, current + 1)) {
+            weightsChanged();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the sparse copy of the weights of a layer.
+     *
+     * @param layer index of the weight matrix
+     * @return sparse weights or null if the layer is not stored sparsely or
+     * the weights changed since {@link #sparsify(double)}
+     */
+    public SparseMatrix getSparseWeights(int layer) {
+        SparseWeights sparse = sparseWeights;
+        if (sparse == null || sparse.version != version.get()) {
+            return null;
+        }
+        return sparse.layers[layer];
+    }
+
+    /**
+     * Gets a counter increased whenever the weights or biases change.
+     *
+     * @return current version of the weights
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Sparse copies of the weights together with the version they were made
+     * of, published as one object so that readers never mix the two.
+     */
+    private static final class SparseWeights {
+
+        private final SparseMatrix[] layers;
+        private final long version;
+
+        /**
+         * Initializes the sparse copies.
+         *
+         * @param layers sparse copy of every layer, null for dense layers
+         * @param version version of the weights the copies were made of
+         */
+        private SparseWeights(SparseMatrix[] layers, long version) {
+            this.layers = layers;
+            this.version = version;
+        }
     }
-}
\ No newline at end of file
+}
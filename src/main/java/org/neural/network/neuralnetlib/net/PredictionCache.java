@@ -0,0 +1,287 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache in front of the predictions of a network for inputs that are
+ * repeated, like drawings submitted twice. Results are stored by input and
+ * the least recently used ones are evicted once the cache grows beyond its
+ * budget in bytes.
+ *
+ * With quantization every input value is rounded to 8 bits before it is
+ * used as key, so inputs differing only slightly share one entry. This
+ * expects input values between 0 and 1, like the pixels of MNIST digits;
+ * values outside are clamped for the key. The prediction itself always uses
+ * the exact input.
+ *
+ * All entries are dropped as soon as the version of the network changes,
+ * which happens whenever its weights or biases are set or trained. The
+ * cache can be used by several threads at once; each thread predicts with
+ * its own {@link InferenceSession}.
+ *
+ */
+public class PredictionCache {
+
+    /**
+     * Estimated bytes of an entry besides its key and value arrays: map
+     * entry, key object and array headers.
+     */
+    static final int ENTRY_OVERHEAD = 112;
+
+    private final NeuralNetwork net;
+    private final long maxBytes;
+    private final boolean quantize;
+    private final ThreadLocal<InferenceSession> sessions;
+    private final LinkedHashMap<Key, double[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long version;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Initializes the cache.
+     *
+     * @param net network to predict with
+     * @param maxBytes budget of the cache in bytes
+     * @param quantize if true, inputs are rounded to 8 bits for the key
+     */
+    public PredictionCache(NeuralNetwork net, long maxBytes, boolean quantize) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Budget must not be negative");
+        }
+        this.net = net;
+        this.maxBytes = maxBytes;
+        this.quantize = quantize;
+        this.sessions = ThreadLocal.withInitial(net::newSession);
+        this.version = net.getVersion();
+    }
+
+    /**
+     * Predicts the output of a single input, from the cache if possible.
+     *
+     * @param in input values
+     * @return new vector holding the result of the output layer
+     */
+    public Vector predict(Vector in) {
+        Key key = quantize ? Key.quantized(in.getArray()) : Key.exact(in.getArray());
+        long current = net.getVersion();
+        synchronized (this) {
+            checkVersion(current);
+            double[] cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return new Vector(cached.clone());
+            }
+            misses++;
+        }
+        Vector out = sessions.get().predict(in);
+        synchronized (this) {
+            if (net.getVersion() == current) {
+                checkVersion(current);
+                put(key, out.getArray().clone());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Drops all entries if the weights changed since they were stored.
+     *
+     * @param current current version of the network
+     */
+    private void checkVersion(long current) {
+        if (current != version) {
+            entries.clear();
+            bytes = 0;
+            version = current;
+        }
+    }
+
+    /**
+     * Stores a result and evicts the least recently used entries until the
+     * cache fits its budget again.
+     *
+     * @param key key of the input
+     * @param value result of the output layer
+     */
+    private void put(Key key, double[] value) {
+        long size = size(key, value);
+        if (size > maxBytes) {
+            return;
+        }
+        double[] old = entries.put(key, value);
+        bytes += size;
+        if (old != null) {
+            bytes -= size(key, old);
+        }
+        Iterator<Map.Entry<Key, double[]>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, double[]> eldest = it.next();
+            bytes -= size(eldest.getKey(), eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Estimates the memory used by an entry.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     * @return size in bytes
+     */
+    private static long size(Key key, double[] value) {
+        return ENTRY_OVERHEAD + key.bytes() + 8L * value.length;
+    }
+
+    /**
+     * Removes all entries and resets the statistics.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Gets the number of predictions answered from the cache.
+     *
+     * @return hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of predictions that had to be computed.
+     *
+     * @return miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the fraction of predictions answered from the cache.
+     *
+     * @return hit rate between 0 and 1, 0 before the first prediction
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Gets the estimated memory used by the entries.
+     *
+     * @return bytes used
+     */
+    public synchronized long getBytesUsed() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of cached predictions.
+     *
+     * @return entry count
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the network predicting with.
+     *
+     * @return network
+     */
+    public NeuralNetwork getNetwork() {
+        return net;
+    }
+
+    /**
+     * Gets the budget of the cache.
+     *
+     * @return maximum bytes used
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Key of an input, either its exact values or the values rounded to 8
+     * bits. The hash is computed once.
+     */
+    private static final class Key {
+
+        private final double[] values;
+        private final byte[] quantized;
+        private final int hash;
+
+        /**
+         * Initializes the key.
+         *
+         * @param values exact values or null
+         * @param quantized rounded values or null
+         * @param hash hash of the values
+         */
+        private Key(double[] values, byte[] quantized, int hash) {
+            this.values = values;
+            this.quantized = quantized;
+            this.hash = hash;
+        }
+
+        /**
+         * Creates a key from the exact input values.
+         *
+         * @param in input values, copied
+         * @return key
+         */
+        static Key exact(double[] in) {
+            double[] values = in.clone();
+            return new Key(values, null, Arrays.hashCode(values));
+        }
+
+        /**
+         * Creates a key from the input values rounded to 8 bits.
+         *
+         * @param in input values between 0 and 1
+         * @return key
+         */
+        static Key quantized(double[] in) {
+            byte[] quantized = new byte[in.length];
+            for (int i = 0; i < in.length; i++) {
+                double v = Math.min(1.0, Math.max(0.0, in[i]));
+                quantized[i] = (byte) Math.round(v * 255);
+            }
+            return new Key(null, quantized, Arrays.hashCode(quantized));
+        }
+
+        /**
+         * Gets the size of the stored values.
+         *
+         * @return bytes of the key array
+         */
+        long bytes() {
+            return values != null ? 8L * values.length : quantized.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && Arrays.equals(values, k.values) && Arrays.equals(quantized, k.quantized);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
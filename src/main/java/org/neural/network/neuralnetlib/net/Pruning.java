@@ -0,0 +1,133 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.neural.network.mathlib.algebra.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Magnitude pruning of network weights. Weights close to zero, as produced
+ * by {@link org.neural.network.neuralnetlib.options.regularization.L1Regularization},
+ * contribute little to the output and can be set to exactly zero. A pruned
+ * network is usually fine-tuned with the returned masks (see
+ * {@link org.neural.network.neuralnetlib.trainer.StochasticGradientDescentTrainer#setMasks(Matrix[])})
+ * and then compressed with {@link NeuralNetwork#sparsify(double)}.
+ *
+ * Biases are never pruned.
+ *
+ */
+public final class Pruning {
+
+    private Pruning() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * Sets all weights with a magnitude below the threshold to zero.
+     *
+     * @param net network to prune
+     * @param threshold smallest magnitude of weights to keep
+     * @return one mask per weight matrix, 1 for kept and 0 for pruned weights
+     */
+    public static Matrix[] pruneBelow(NeuralNetwork net, double threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        Matrix[] weights = net.getWeights();
+        Matrix[] masks = new Matrix[weights.length];
+        for (int l = 0; l < weights.length; l++) {
+            masks[l] = prune(weights[l], threshold, 0);
+        }
+        net.weightsChanged();
+        return masks;
+    }
+
+    /**
+     * Sets the weights with the smallest magnitudes to zero, so that every
+     * layer reaches the given sparsity.
+     *
+     * @param net network to prune
+     * @param sparsity fraction of weights of every layer to set to zero
+     * @return one mask per weight matrix, 1 for kept and 0 for pruned weights
+     */
+    public static Matrix[] pruneToSparsity(NeuralNetwork net, double sparsity) {
+        if (sparsity < 0 || sparsity > 1) {
+            throw new IllegalArgumentException("Sparsity must be between 0 and 1");
+        }
+        Matrix[] weights = net.getWeights();
+        Matrix[] masks = new Matrix[weights.length];
+        for (int l = 0; l < weights.length; l++) {
+            Matrix W = weights[l];
+            int count = (int) Math.round(sparsity * W.getN() * W.getM());
+            if (count == 0) {
+                masks[l] = prune(W, 0, 0);
+                continue;
+            }
+            double[] magnitudes = new double[W.getN() * W.getM()];
+            for (int i = 0; i < W.getN(); i++) {
+                for (int j = 0; j < W.getM(); j++) {
+                    magnitudes[i * W.getM() + j] = Math.abs(W.get(i, j));
+                }
+            }
+            Arrays.sort(magnitudes);
+            double threshold = magnitudes[count - 1];
+            int below = 0;
+            while (below < count && magnitudes[below] < threshold) {
+                below++;
+            }
+            // weights below the threshold are pruned, ties at the threshold
+            // only until the count is reached
+            masks[l] = prune(W, threshold, count - below);
+        }
+        net.weightsChanged();
+        return masks;
+    }
+
+    /**
+     * Sets the weights of one matrix to zero.
+     *
+     * @param W weights to prune
+     * @param threshold weights with a smaller magnitude are pruned
+     * @param ties number of weights with exactly the threshold as magnitude
+     * to prune as well
+     * @return mask of the weights
+     */
+    private static Matrix prune(Matrix W, double threshold, int ties) {
+        Matrix mask = new Matrix(W.getN(), W.getM(), W.getPrecision());
+        for (int i = 0; i < W.getN(); i++) {
+            for (int j = 0; j < W.getM(); j++) {
+                double magnitude = Math.abs(W.get(i, j));
+                boolean pruned = magnitude < threshold;
+                if (!pruned && ties > 0 && magnitude == threshold) {
+                    pruned = true;
+                    ties--;
+                }
+                if (pruned) {
+                    W.set(i, j, 0);
+                } else {
+                    mask.set(i, j, 1);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Calculates the fraction of weights of the whole network that are zero.
+     *
+     * @param net network to analyze
+     * @return number of zero weights divided by the number of weights
+     */
+    public static double getSparsity(NeuralNetwork net) {
+        long zeros = 0;
+        long total = 0;
+        for (Matrix W : net.getWeights()) {
+            for (int i = 0; i < W.getN(); i++) {
+                for (int j = 0; j < W.getM(); j++) {
+                    zeros += W.get(i, j) == 0 ? 1 : 0;
+                }
+            }
+            total += (long) W.getN() * W.getM();
+        }
+        return total == 0 ? 0 : (double) zeros / total;
+    }
+}
@@ -10,6 +10,29 @@ import org.neural.network.mathlib.algebra.Vector;
  * */
 public abstract class ActivationFunction {
 
+    /**
+     * Calculates activation for a single value. Subclasses should override
+     * this, so that layers can apply the activation while computing their
+     * values.
+     *
+     * @param x value
+     * @return calculated activation
+     */
+    public double calculate(double x) {
+        return calculateVec(new Vector(x)).getArray()[0];
+    }
+
+    /**
+     * Calculates derived activation for a single value. Subclasses should
+     * override this.
+     *
+     * @param x value
+     * @return calculated derived activation
+     */
+    public double calculateDeriv(double x) {
+        return calculateDerivVec(new Vector(x)).getArray()[0];
+    }
+
     /**
      * Calculates activation for every entry of vector.
      *
@@ -26,6 +49,18 @@ public abstract class ActivationFunction {
      */
     public abstract Matrix calculateMat(Matrix M);
 
+    /**
+     * Calculates result for every entry of matrix and stores it in another
+     * matrix. Subclasses should override this to avoid the temporary matrix.
+     *
+     * @param M matrix with data to calculate
+     * @param C matrix of the same size receiving the calculated values
+     * @return C
+     */
+    public Matrix calculateMatInto(Matrix M, Matrix C) {
+        return C.copyFrom(calculateMat(M));
+    }
+
     /**
      * Calculates derived activation for every entry of vector.
      *
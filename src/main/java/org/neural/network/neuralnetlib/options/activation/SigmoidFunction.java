@@ -17,7 +17,8 @@ public class SigmoidFunction extends ActivationFunction {
      * @param x value
      * @return calculated activation
      */
-    private double calculate(double x) {
+    @Override
+    public double calculate(double x) {
         return 1 / (1 + Math.exp(-x));
     }
 
@@ -45,14 +46,20 @@ public class SigmoidFunction extends ActivationFunction {
      */
     @Override
     public Matrix calculateMat(Matrix M) {
-        double[][] C = new double[M.getN()][M.getM()];
-        double[][] MA = M.getArray();
-        for (int i = 0; i < M.getN(); i++) {
-            for (int j = 0; j < M.getM(); j++) {
-                C[i][j] = calculate(MA[i][j]);
-            }
-        }
-        return new Matrix(C);
+        return M.map(this::calculate);
+    }
+
+    /**
+     * Calculates result for every entry of matrix and stores it in another
+     * matrix.
+     *
+     * @param M matrix with data to calculate
+     * @param C matrix of the same size receiving the calculated values
+     * @return C
+     */
+    @Override
+    public Matrix calculateMatInto(Matrix M, Matrix C) {
+        return M.mapInto(this::calculate, C);
     }
 
     /**
@@ -61,7 +68,8 @@ public class SigmoidFunction extends ActivationFunction {
      * @param x value
      * @return calculated activation
      */
-    private double calculateDeriv(double x) {
+    @Override
+    public double calculateDeriv(double x) {
         return Math.exp(x) / Math.pow(Math.exp(x) + 1.0, 2.0);
     }
 
@@ -89,13 +97,6 @@ public class SigmoidFunction extends ActivationFunction {
      */
     @Override
     public Matrix calculateDerivMat(Matrix M) {
-        double[][] C = new double[M.getN()][M.getM()];
-        double[][] MA = M.getArray();
-        for (int i = 0; i < M.getN(); i++) {
-            for (int j = 0; j < M.getM(); j++) {
-                C[i][j] = calculateDeriv(MA[i][j]);
-            }
-        }
-        return new Matrix(C);
+        return M.map(this::calculateDeriv);
     }
 }
\ No newline at end of file
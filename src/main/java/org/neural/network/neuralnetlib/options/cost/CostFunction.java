@@ -23,6 +23,20 @@ public abstract class CostFunction {
      */
     public abstract double calculateTotal(NeuralNetwork net, Vector[] dataIn, Vector[] dataOut);
 
+    /**
+     * Calculates the total cost for test data packed into matrices with one
+     * sample per column. Subclasses should override this to avoid splitting
+     * the matrices into vectors.
+     *
+     * @param net network to test
+     * @param dataIn input test data
+     * @param dataOut output test data for evaluation
+     * @return cost evaluated
+     */
+    public double calculateTotal(NeuralNetwork net, Matrix dataIn, Matrix dataOut) {
+        return calculateTotal(net, dataIn.getCols(), dataOut.getCols());
+    }
+
     /**
      * Calculates the error for one vector of training data.
      *
@@ -33,4 +47,20 @@ public abstract class CostFunction {
      * @return calculated error
      */
     public abstract Matrix calculateError(Matrix calcOut, Matrix dataOut, Matrix values, ActivationFunction activationFunction);
+
+    /**
+     * Calculates the error for one vector of training data and stores it in a
+     * given matrix. Subclasses should override this to avoid the temporary
+     * matrix.
+     *
+     * @param calcOut calculated output vector
+     * @param dataOut output vector for evaluation
+     * @param values values of network without activation applied
+     * @param activationFunction activation function used in neural network
+     * @param C matrix of the size of calcOut receiving the error
+     * @return C
+     */
+    public Matrix calculateErrorInto(Matrix calcOut, Matrix dataOut, Matrix values, ActivationFunction activationFunction, Matrix C) {
+        return C.copyFrom(calculateError(calcOut, dataOut, values, activationFunction));
+    }
 }
\ No newline at end of file
@@ -22,16 +22,37 @@ public class CrossEntropyCostFunction extends CostFunction {
     @Override
     public double calculateTotal(NeuralNetwork net, Vector[] dataIn, Vector[] dataOut) {
         double sum = 0;
-        double[][] MA = net.feedforward(new Matrix(dataIn)).getArray();
+        Matrix out = net.feedforward(new Matrix(net.getPrecision(), dataIn));
         for (int i = 0; i < dataIn.length; i++) {
             double[] y = dataOut[i].getArray();
             for (int j = 0; j < y.length; j++) {
-                sum += y[j] * Math.log(MA[j][i]) + (1.0 - y[j]) * Math.log(1.0 - MA[j][i]);
+                sum += y[j] * Math.log(out.get(j, i)) + (1.0 - y[j]) * Math.log(1.0 - out.get(j, i));
             }
         }
         return -(1.0 / dataIn.length) * sum;
     }
 
+    /**
+     * Calculates the total cost for test data packed into matrices.
+     *
+     * @param net network to test
+     * @param dataIn input test data, one sample per column
+     * @param dataOut output test data for evaluation
+     * @return cost evaluated
+     */
+    @Override
+    public double calculateTotal(NeuralNetwork net, Matrix dataIn, Matrix dataOut) {
+        double sum = 0;
+        Matrix out = net.feedforward(dataIn);
+        for (int i = 0; i < dataIn.getM(); i++) {
+            for (int j = 0; j < dataOut.getN(); j++) {
+                double y = dataOut.get(j, i);
+                sum += y * Math.log(out.get(j, i)) + (1.0 - y) * Math.log(1.0 - out.get(j, i));
+            }
+        }
+        return -(1.0 / dataIn.getM()) * sum;
+    }
+
     /**
      * Calculates the error for one vector of training data.
      *
@@ -46,4 +67,20 @@ public class CrossEntropyCostFunction extends CostFunction {
         return calcOut.subMat(dataOut);
     }
 
+    /**
+     * Calculates the error for one vector of training data and stores it in a
+     * given matrix.
+     *
+     * @param calcOut calculated output vector
+     * @param dataOut output vector for evaluation
+     * @param values values of network without activation applied
+     * @param activationFunction activation function used in neural network
+     * @param C matrix of the size of calcOut receiving the error
+     * @return C
+     */
+    @Override
+    public Matrix calculateErrorInto(Matrix calcOut, Matrix dataOut, Matrix values, ActivationFunction activationFunction, Matrix C) {
+        return calcOut.subMatInto(dataOut, C);
+    }
+
 }
\ No newline at end of file
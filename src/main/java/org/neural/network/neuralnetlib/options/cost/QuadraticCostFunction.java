@@ -1,5 +1,6 @@
 package org.neural.network.neuralnetlib.options.cost;
 
+import org.neural.network.mathlib.algebra.Expression;
 import org.neural.network.mathlib.algebra.Matrix;
 import org.neural.network.mathlib.algebra.Vector;
 import org.neural.network.neuralnetlib.net.NeuralNetwork;
@@ -22,13 +23,34 @@ public class QuadraticCostFunction extends CostFunction {
     @Override
     public double calculateTotal(NeuralNetwork net, Vector[] dataIn, Vector[] dataOut) {
         double sum = 0;
-        Vector[] errorCols = new Matrix(dataOut).subMat(net.feedforward(new Matrix(dataIn))).getCols();
+        Vector[] errorCols = new Matrix(dataOut).subMat(net.feedforward(new Matrix(net.getPrecision(), dataIn))).getCols();
         for (int i = 0; i < dataIn.length; i++) {
             sum += Math.pow(errorCols[i].length(), 2);
         }
         return (1.0 / (2.0 * dataIn.length)) * sum;
     }
 
+    /**
+     * Calculates the total cost for test data packed into matrices.
+     *
+     * @param net network to test
+     * @param dataIn input test data, one sample per column
+     * @param dataOut output test data for evaluation
+     * @return cost evaluated
+     */
+    @Override
+    public double calculateTotal(NeuralNetwork net, Matrix dataIn, Matrix dataOut) {
+        double sum = 0;
+        Matrix out = net.feedforward(dataIn);
+        for (int i = 0; i < dataIn.getM(); i++) {
+            for (int j = 0; j < dataOut.getN(); j++) {
+                double d = dataOut.get(j, i) - out.get(j, i);
+                sum += d * d;
+            }
+        }
+        return (1.0 / (2.0 * dataIn.getM())) * sum;
+    }
+
     /**
      * Calculates the error for one vector of training data.
      *
@@ -40,6 +62,36 @@ public class QuadraticCostFunction extends CostFunction {
      */
     @Override
     public Matrix calculateError(Matrix calcOut, Matrix dataOut, Matrix values, ActivationFunction activationFunction) {
-        return calcOut.subMat(dataOut).hadamardMat(activationFunction.calculateDerivMat(values));
+        return error(calcOut, dataOut, values, activationFunction).evaluate();
+    }
+
+    /**
+     * Calculates the error for one vector of training data and stores it in a
+     * given matrix.
+     *
+     * @param calcOut calculated output vector
+     * @param dataOut output vector for evaluation
+     * @param values values of network without activation applied
+     * @param activationFunction activation function used in neural network
+     * @param C matrix of the size of calcOut receiving the error
+     * @return C
+     */
+    @Override
+    public Matrix calculateErrorInto(Matrix calcOut, Matrix dataOut, Matrix values, ActivationFunction activationFunction, Matrix C) {
+        return error(calcOut, dataOut, values, activationFunction).evaluateInto(C);
+    }
+
+    /**
+     * Builds the error as one lazy expression, so that the difference, the
+     * derivative and their product are computed in a single pass.
+     *
+     * @param calcOut calculated output vector
+     * @param dataOut output vector for evaluation
+     * @param values values of network without activation applied
+     * @param activationFunction activation function used in neural network
+     * @return expression of the error
+     */
+    private Expression error(Matrix calcOut, Matrix dataOut, Matrix values, ActivationFunction activationFunction) {
+        return calcOut.lazy().subMat(dataOut).hadamardMat(values.lazy().map(activationFunction::calculateDeriv));
     }
 }
\ No newline at end of file
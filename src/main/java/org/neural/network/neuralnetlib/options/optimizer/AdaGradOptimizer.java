@@ -0,0 +1,121 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+
+import org.neural.network.mathlib.algebra.DoubleTernaryOperator;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Represents AdaGrad. Every weight has its own learning rate, divided by the
+ * root of the sum of all its squared gradients so far:
+ * s = s + g^2, w = w - learningrate * g / (sqrt(s) + epsilon). Weights with
+ * rare but large gradients keep learning while frequently changed weights
+ * slow down.
+ *
+ */
+public class AdaGradOptimizer extends Optimizer {
+
+    private final double epsilon;
+    private Matrix[] weightSquares;
+    private Vector[] biasSquares;
+    private double scale;
+    private double rate;
+    private final DoubleBinaryOperator accumulate = this::accumulate;
+    private final DoubleTernaryOperator step = this::step;
+
+    /**
+     * Initializes the optimizer with an epsilon of 1e-8.
+     */
+    public AdaGradOptimizer() {
+        this(1e-8);
+    }
+
+    /**
+     * Initializes the optimizer.
+     *
+     * @param epsilon small positive value added to the divisor
+     */
+    public AdaGradOptimizer(double epsilon) {
+        if (epsilon <= 0) {
+            throw new IllegalArgumentException("Epsilon must be positive");
+        }
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Allocates the sums of squared gradients of all weights and biases.
+     *
+     * @param weights weights of the network
+     * @param biases biases of the network
+     */
+    @Override
+    public void init(Matrix[] weights, Vector[] biases) {
+        super.init(weights, biases);
+        weightSquares = zeros(weights);
+        biasSquares = zeros(biases);
+    }
+
+    /**
+     * Adds the squared gradients of the layer and moves the weights and
+     * biases by their adapted learning rates.
+     *
+     * @param layer index of the weight matrix
+     * @param weights weights of the layer, changed in place
+     * @param weightErrors gradient of the weights summed over the batch
+     * @param biases biases of the layer, changed in place
+     * @param biasErrors gradient of the biases summed over the batch
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param m size of the batch
+     */
+    @Override
+    public void update(int layer, Matrix weights, Matrix weightErrors, Vector biases, Vector biasErrors,
+            double learningRate, int m) {
+        scale = 1.0 / m;
+        rate = learningRate;
+        weightSquares[layer].zipInPlace(weightErrors, accumulate);
+        weights.zipInPlace(weightErrors, weightSquares[layer], step);
+        double[] b = biases.getArray();
+        double[] g = biasErrors.getArray();
+        double[] s = biasSquares[layer].getArray();
+        for (int i = 0; i < b.length; i++) {
+            s[i] = accumulate.applyAsDouble(s[i], g[i]);
+            b[i] = step.applyAsDouble(b[i], g[i], s[i]);
+        }
+    }
+
+    /**
+     * Adds the squared gradient of an entry to its sum.
+     *
+     * @param s sum of squared gradients
+     * @param g gradient summed over the batch
+     * @return new sum
+     */
+    private double accumulate(double s, double g) {
+        return s + (g * scale) * (g * scale);
+    }
+
+    /**
+     * Moves an entry by its adapted step.
+     *
+     * @param w weight or bias
+     * @param g gradient summed over the batch
+     * @param s sum of squared gradients
+     * @return new weight or bias
+     */
+    private double step(double w, double g, double s) {
+        return w - rate * (g * scale) / (Math.sqrt(s) + epsilon);
+    }
+
+    /**
+     * Creates an optimizer with the same epsilon and no state.
+     *
+     * @return new optimizer
+     */
+    @Override
+    public Optimizer copy() {
+        return new AdaGradOptimizer(epsilon);
+    }
+}
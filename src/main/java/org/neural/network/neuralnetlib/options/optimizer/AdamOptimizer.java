@@ -0,0 +1,146 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+
+import org.neural.network.mathlib.algebra.DoubleTernaryOperator;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Represents Adam. Combines momentum with the adapted learning rates of
+ * {@link RMSPropOptimizer}: the averages of the gradients and of the squared
+ * gradients are both kept, corrected for starting at zero and used as
+ * w = w - learningrate * m / (sqrt(v) + epsilon). Works well for most
+ * networks with a learning rate around 0.001.
+ *
+ */
+public class AdamOptimizer extends Optimizer {
+
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+    private Matrix[] weightMeans;
+    private Matrix[] weightSquares;
+    private Vector[] biasMeans;
+    private Vector[] biasSquares;
+    private double scale;
+    private double rate;
+    private double correction1;
+    private double correction2;
+    private final DoubleBinaryOperator average = this::average;
+    private final DoubleTernaryOperator step = this::step;
+
+    /**
+     * Initializes the optimizer with the usual settings beta1 = 0.9,
+     * beta2 = 0.999 and epsilon = 1e-8.
+     */
+    public AdamOptimizer() {
+        this(0.9, 0.999, 1e-8);
+    }
+
+    /**
+     * Initializes the optimizer.
+     *
+     * @param beta1 decay of the average of gradients, between 0 (inclusive)
+     * and 1 (exclusive)
+     * @param beta2 decay of the average of squared gradients, between 0
+     * (inclusive) and 1 (exclusive)
+     * @param epsilon small positive value added to the divisor
+     */
+    public AdamOptimizer(double beta1, double beta2, double epsilon) {
+        if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+            throw new IllegalArgumentException("Betas must be at least 0 and less than 1");
+        }
+        if (epsilon <= 0) {
+            throw new IllegalArgumentException("Epsilon must be positive");
+        }
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Allocates the averages of gradients and squared gradients of all
+     * weights and biases.
+     *
+     * @param weights weights of the network
+     * @param biases biases of the network
+     */
+    @Override
+    public void init(Matrix[] weights, Vector[] biases) {
+        super.init(weights, biases);
+        weightMeans = zeros(weights);
+        weightSquares = zeros(weights);
+        biasMeans = zeros(biases);
+        biasSquares = zeros(biases);
+    }
+
+    /**
+     * Updates both averages of the layer and moves the weights and biases by
+     * the corrected step.
+     *
+     * @param layer index of the weight matrix
+     * @param weights weights of the layer, changed in place
+     * @param weightErrors gradient of the weights summed over the batch
+     * @param biases biases of the layer, changed in place
+     * @param biasErrors gradient of the biases summed over the batch
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param m size of the batch
+     */
+    @Override
+    public void update(int layer, Matrix weights, Matrix weightErrors, Vector biases, Vector biasErrors,
+            double learningRate, int m) {
+        int t = Math.max(1, getStep());
+        scale = 1.0 / m;
+        rate = learningRate;
+        correction1 = 1 - Math.pow(beta1, t);
+        correction2 = 1 - Math.pow(beta2, t);
+        weightMeans[layer].scaleAddScaledInPlace(beta1, (1 - beta1) * scale, weightErrors);
+        weightSquares[layer].zipInPlace(weightErrors, average);
+        weights.zipInPlace(weightMeans[layer], weightSquares[layer], step);
+        double[] b = biases.getArray();
+        double[] g = biasErrors.getArray();
+        double[] mean = biasMeans[layer].getArray();
+        double[] v = biasSquares[layer].getArray();
+        for (int i = 0; i < b.length; i++) {
+            mean[i] = beta1 * mean[i] + (1 - beta1) * scale * g[i];
+            v[i] = average.applyAsDouble(v[i], g[i]);
+            b[i] = step.applyAsDouble(b[i], mean[i], v[i]);
+        }
+    }
+
+    /**
+     * Adds the squared gradient of an entry to its decaying average.
+     *
+     * @param v average of squared gradients
+     * @param g gradient summed over the batch
+     * @return new average
+     */
+    private double average(double v, double g) {
+        return beta2 * v + (1 - beta2) * (g * scale) * (g * scale);
+    }
+
+    /**
+     * Moves an entry by the step of its corrected averages.
+     *
+     * @param w weight or bias
+     * @param mean average of gradients
+     * @param v average of squared gradients
+     * @return new weight or bias
+     */
+    private double step(double w, double mean, double v) {
+        return w - rate * (mean / correction1) / (Math.sqrt(v / correction2) + epsilon);
+    }
+
+    /**
+     * Creates an optimizer with the same settings and no state.
+     *
+     * @return new optimizer
+     */
+    @Override
+    public Optimizer copy() {
+        return new AdamOptimizer(beta1, beta2, epsilon);
+    }
+}
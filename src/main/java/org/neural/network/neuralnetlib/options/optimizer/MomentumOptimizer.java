@@ -0,0 +1,89 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+/**
+ * Represents gradient descent with momentum. Every step keeps a fraction of
+ * the previous step, called velocity: v = momentum * v - learningrate * g,
+ * w = w + v. Steps in consistent directions add up while oscillating ones
+ * cancel out, so training needs fewer epochs.
+ *
+ */
+public class MomentumOptimizer extends Optimizer {
+
+    protected final double momentum;
+    protected Matrix[] weightVelocities;
+    protected Vector[] biasVelocities;
+
+    /**
+     * Initializes the optimizer with a momentum of 0.9.
+     */
+    public MomentumOptimizer() {
+        this(0.9);
+    }
+
+    /**
+     * Initializes the optimizer.
+     *
+     * @param momentum fraction of the previous step kept, between 0
+     * (inclusive) and 1 (exclusive)
+     */
+    public MomentumOptimizer(double momentum) {
+        if (momentum < 0 || momentum >= 1) {
+            throw new IllegalArgumentException("Momentum must be at least 0 and less than 1");
+        }
+        this.momentum = momentum;
+    }
+
+    /**
+     * Allocates the velocities of all weights and biases.
+     *
+     * @param weights weights of the network
+     * @param biases biases of the network
+     */
+    @Override
+    public void init(Matrix[] weights, Vector[] biases) {
+        super.init(weights, biases);
+        weightVelocities = zeros(weights);
+        biasVelocities = zeros(biases);
+    }
+
+    /**
+     * Updates the velocity of the layer and adds it to the weights and
+     * biases.
+     *
+     * @param layer index of the weight matrix
+     * @param weights weights of the layer, changed in place
+     * @param weightErrors gradient of the weights summed over the batch
+     * @param biases biases of the layer, changed in place
+     * @param biasErrors gradient of the biases summed over the batch
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param m size of the batch
+     */
+    @Override
+    public void update(int layer, Matrix weights, Matrix weightErrors, Vector biases, Vector biasErrors,
+            double learningRate, int m) {
+        double s = -learningRate / m;
+        weights.addMatInPlace(weightVelocities[layer].scaleAddScaledInPlace(momentum, s, weightErrors));
+        double[] b = biases.getArray();
+        double[] g = biasErrors.getArray();
+        double[] v = biasVelocities[layer].getArray();
+        for (int i = 0; i < b.length; i++) {
+            v[i] = momentum * v[i] + s * g[i];
+            b[i] += v[i];
+        }
+    }
+
+    /**
+     * Creates an optimizer with the same momentum and no velocities.
+     *
+     * @return new optimizer
+     */
+    @Override
+    public Optimizer copy() {
+        return new MomentumOptimizer(momentum);
+    }
+}
@@ -0,0 +1,88 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+
+import org.neural.network.mathlib.algebra.DoubleTernaryOperator;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+/**
+ * Represents Nesterov accelerated gradient descent. Like
+ * {@link MomentumOptimizer}, but the weights take the step the velocity is
+ * going to make next: v = momentum * v - learningrate * g,
+ * w = w + momentum * v - learningrate * g. This looks ahead and corrects
+ * overshooting steps earlier than plain momentum.
+ *
+ */
+public class NesterovOptimizer extends MomentumOptimizer {
+
+    private double stepSize;
+    private final DoubleTernaryOperator step = this::step;
+
+    /**
+     * Initializes the optimizer with a momentum of 0.9.
+     */
+    public NesterovOptimizer() {
+        super();
+    }
+
+    /**
+     * Initializes the optimizer.
+     *
+     * @param momentum fraction of the previous step kept, between 0
+     * (inclusive) and 1 (exclusive)
+     */
+    public NesterovOptimizer(double momentum) {
+        super(momentum);
+    }
+
+    /**
+     * Updates the velocity of the layer and moves the weights and biases by
+     * the look-ahead step.
+     *
+     * @param layer index of the weight matrix
+     * @param weights weights of the layer, changed in place
+     * @param weightErrors gradient of the weights summed over the batch
+     * @param biases biases of the layer, changed in place
+     * @param biasErrors gradient of the biases summed over the batch
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param m size of the batch
+     */
+    @Override
+    public void update(int layer, Matrix weights, Matrix weightErrors, Vector biases, Vector biasErrors,
+            double learningRate, int m) {
+        double s = -learningRate / m;
+        stepSize = s;
+        weightVelocities[layer].scaleAddScaledInPlace(momentum, s, weightErrors);
+        weights.zipInPlace(weightVelocities[layer], weightErrors, step);
+        double[] b = biases.getArray();
+        double[] g = biasErrors.getArray();
+        double[] v = biasVelocities[layer].getArray();
+        for (int i = 0; i < b.length; i++) {
+            v[i] = momentum * v[i] + s * g[i];
+            b[i] = step.applyAsDouble(b[i], v[i], g[i]);
+        }
+    }
+
+    /**
+     * Moves an entry by the look-ahead step.
+     *
+     * @param w weight or bias
+     * @param v velocity
+     * @param g gradient summed over the batch
+     * @return new weight or bias
+     */
+    private double step(double w, double v, double g) {
+        return w + momentum * v + stepSize * g;
+    }
+
+    /**
+     * Creates an optimizer with the same momentum and no velocities.
+     *
+     * @return new optimizer
+     */
+    @Override
+    public Optimizer copy() {
+        return new NesterovOptimizer(momentum);
+    }
+}
@@ -0,0 +1,114 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An abstract superclass for optimizers. An optimizer decides how the weights
+ * and biases are changed by the errors of a training batch. Plain stochastic
+ * gradient descent moves them against the gradient by the learning rate;
+ * optimizers keep state like the previous steps or the magnitudes of past
+ * gradients to move faster in consistent directions.
+ *
+ * The state is allocated once by {@link #init(Matrix[], Vector[])} and every
+ * update changes the weights and the state in place. The functions applied
+ * to every entry are created once per optimizer, with the constants of the
+ * current step kept in fields, so a step creates no objects of its own. The
+ * elementwise matrix operations it runs still create a few small objects per
+ * call.
+ *
+ * When several threads train without waiting for each other, they share one
+ * optimizer. The step count is atomic, so no step is lost, but the state
+ * buffers and the constants of the current step are updated without locking
+ * like the weights themselves: an element may be read while another thread
+ * writes it, and an update may see a step count already advanced by other
+ * threads.
+ *
+ */
+public abstract class Optimizer {
+
+    private final AtomicInteger step = new AtomicInteger();
+
+    /**
+     * Allocates the state for the weights and biases of a network and resets
+     * the step count. Called by the trainer before the first update.
+     * Subclasses allocating state must call this method as well.
+     *
+     * @param weights weights of the network
+     * @param biases biases of the network
+     */
+    public void init(Matrix[] weights, Vector[] biases) {
+        step.set(0);
+    }
+
+    /**
+     * Counts a step. Called by the trainer once per batch before the layers
+     * are updated, possibly by several threads at the same time.
+     */
+    public void nextStep() {
+        step.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of steps counted since {@link #init(Matrix[], Vector[])}.
+     *
+     * @return step count
+     */
+    public int getStep() {
+        return step.get();
+    }
+
+    /**
+     * Changes the weights and biases of one layer by the errors of a batch.
+     *
+     * @param layer index of the weight matrix
+     * @param weights weights of the layer, changed in place
+     * @param weightErrors gradient of the weights summed over the batch
+     * @param biases biases of the layer, changed in place
+     * @param biasErrors gradient of the biases summed over the batch
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param m size of the batch
+     */
+    public abstract void update(int layer, Matrix weights, Matrix weightErrors, Vector biases, Vector biasErrors,
+            double learningRate, int m);
+
+    /**
+     * Creates an optimizer with the same settings and no state, for example
+     * for another copy of the network.
+     *
+     * @return new optimizer
+     */
+    public abstract Optimizer copy();
+
+    /**
+     * Creates zero matrices with the sizes and precisions of the given ones.
+     *
+     * @param template matrices with the required sizes
+     * @return new matrices filled with zeros
+     */
+    protected static Matrix[] zeros(Matrix[] template) {
+        Matrix[] zeros = new Matrix[template.length];
+        for (int i = 0; i < template.length; i++) {
+            zeros[i] = new Matrix(template[i].getN(), template[i].getM(), template[i].getPrecision());
+        }
+        return zeros;
+    }
+
+    /**
+     * Creates zero vectors with the sizes of the given ones.
+     *
+     * @param template vectors with the required sizes
+     * @return new vectors filled with zeros
+     */
+    protected static Vector[] zeros(Vector[] template) {
+        Vector[] zeros = new Vector[template.length];
+        for (int i = 0; i < template.length; i++) {
+            zeros[i] = new Vector(template[i].getN());
+        }
+        return zeros;
+    }
+}
@@ -0,0 +1,129 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+
+import org.neural.network.mathlib.algebra.DoubleTernaryOperator;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Represents RMSProp. Like {@link AdaGradOptimizer}, but the squared
+ * gradients are averaged with exponentially decaying weights instead of
+ * summed up: s = decay * s + (1 - decay) * g^2,
+ * w = w - learningrate * g / (sqrt(s) + epsilon). The learning rates do not
+ * shrink towards zero during long training. Works best with small learning
+ * rates like 0.001.
+ *
+ */
+public class RMSPropOptimizer extends Optimizer {
+
+    private final double decay;
+    private final double epsilon;
+    private Matrix[] weightSquares;
+    private Vector[] biasSquares;
+    private double scale;
+    private double rate;
+    private final DoubleBinaryOperator average = this::average;
+    private final DoubleTernaryOperator step = this::step;
+
+    /**
+     * Initializes the optimizer with a decay of 0.9 and an epsilon of 1e-8.
+     */
+    public RMSPropOptimizer() {
+        this(0.9, 1e-8);
+    }
+
+    /**
+     * Initializes the optimizer.
+     *
+     * @param decay weight of the previous average of squared gradients,
+     * between 0 (inclusive) and 1 (exclusive)
+     * @param epsilon small positive value added to the divisor
+     */
+    public RMSPropOptimizer(double decay, double epsilon) {
+        if (decay < 0 || decay >= 1) {
+            throw new IllegalArgumentException("Decay must be at least 0 and less than 1");
+        }
+        if (epsilon <= 0) {
+            throw new IllegalArgumentException("Epsilon must be positive");
+        }
+        this.decay = decay;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Allocates the averages of squared gradients of all weights and biases.
+     *
+     * @param weights weights of the network
+     * @param biases biases of the network
+     */
+    @Override
+    public void init(Matrix[] weights, Vector[] biases) {
+        super.init(weights, biases);
+        weightSquares = zeros(weights);
+        biasSquares = zeros(biases);
+    }
+
+    /**
+     * Updates the average of squared gradients of the layer and moves the
+     * weights and biases by their adapted learning rates.
+     *
+     * @param layer index of the weight matrix
+     * @param weights weights of the layer, changed in place
+     * @param weightErrors gradient of the weights summed over the batch
+     * @param biases biases of the layer, changed in place
+     * @param biasErrors gradient of the biases summed over the batch
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param m size of the batch
+     */
+    @Override
+    public void update(int layer, Matrix weights, Matrix weightErrors, Vector biases, Vector biasErrors,
+            double learningRate, int m) {
+        scale = 1.0 / m;
+        rate = learningRate;
+        weightSquares[layer].zipInPlace(weightErrors, average);
+        weights.zipInPlace(weightErrors, weightSquares[layer], step);
+        double[] b = biases.getArray();
+        double[] g = biasErrors.getArray();
+        double[] s = biasSquares[layer].getArray();
+        for (int i = 0; i < b.length; i++) {
+            s[i] = average.applyAsDouble(s[i], g[i]);
+            b[i] = step.applyAsDouble(b[i], g[i], s[i]);
+        }
+    }
+
+    /**
+     * Adds the squared gradient of an entry to its decaying average.
+     *
+     * @param s average of squared gradients
+     * @param g gradient summed over the batch
+     * @return new average
+     */
+    private double average(double s, double g) {
+        return decay * s + (1 - decay) * (g * scale) * (g * scale);
+    }
+
+    /**
+     * Moves an entry by its adapted step.
+     *
+     * @param w weight or bias
+     * @param g gradient summed over the batch
+     * @param s average of squared gradients
+     * @return new weight or bias
+     */
+    private double step(double w, double g, double s) {
+        return w - rate * (g * scale) / (Math.sqrt(s) + epsilon);
+    }
+
+    /**
+     * Creates an optimizer with the same settings and no state.
+     *
+     * @return new optimizer
+     */
+    @Override
+    public Optimizer copy() {
+        return new RMSPropOptimizer(decay, epsilon);
+    }
+}
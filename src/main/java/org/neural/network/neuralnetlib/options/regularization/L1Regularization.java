@@ -26,18 +26,48 @@ public class L1Regularization extends Regularization {
     @Override
     public Matrix calculate(Matrix weights, double learningRate, double lambda, int n) {
         double factor = (learningRate * lambda) / n;
-        double[][] C = new double[weights.getN()][weights.getM()];
-        double[][] A = weights.getArray();
-        for (int i = 0; i < weights.getN(); i++) {
-            for (int j = 0; j < weights.getM(); j++) {
-                if (A[i][j] < 0) {
-                    C[i][j] = A[i][j] + factor;
-                } else {
-                    C[i][j] = A[i][j] - factor;
-                }
-            }
-        }
-        return new Matrix(C);
+        return weights.map(w -> w < 0 ? w + factor : w - factor);
+    }
+
+    /**
+     * Subtracts the scaled gradient and moves every weight towards zero by
+     * (lambda*learningrate)/n in a single pass. Unlike
+     * {@link #calculate(Matrix, double, double, int)} this soft thresholding
+     * sets weights that would cross zero to exactly zero, so unimportant
+     * weights end up as zeros that can be pruned.
+     *
+     * @param weights current weights of neural network, overwritten
+     * @param gradient gradient of the weights summed over the batch
+     * @param learningRate the learning rate used in training the network
+     * @param lambda the lambda that affects how intense the changes to the
+     * weights are
+     * @param n count of training data used for training
+     * @param m size of the batch
+     */
+    @Override
+    public void update(Matrix weights, Matrix gradient, double learningRate, double lambda, int n, int m) {
+        double factor = (learningRate * lambda) / n;
+        double s = -learningRate / m;
+        weights.zipInPlace(gradient, (w, g) -> {
+            double v = w + s * g;
+            return v > factor ? v - factor : v < -factor ? v + factor : 0;
+        });
+    }
+
+    /**
+     * Moves every weight towards zero by (lambda*learningrate)/n in place,
+     * stopping at zero like {@link #update(Matrix, Matrix, double, double, int, int)}.
+     *
+     * @param weights current weights of neural network, overwritten
+     * @param learningRate the learning rate used in training the network
+     * @param lambda the lambda that affects how intense the changes to the
+     * weights are
+     * @param n count of training data used for training
+     */
+    @Override
+    public void decay(Matrix weights, double learningRate, double lambda, int n) {
+        double factor = (learningRate * lambda) / n;
+        weights.mapInPlace(w -> w > factor ? w - factor : w < -factor ? w + factor : 0);
     }
 
 }
\ No newline at end of file
@@ -27,4 +27,35 @@ public class L2Regularization extends Regularization {
         return weights.mulSca(1.0 - ((lambda * learningRate) / n));
     }
 
+    /**
+     * Scales the weights and subtracts the scaled gradient in a single pass:
+     * w = w * (1 - learningRate * lambda / n) - learningRate / m * g.
+     *
+     * @param weights current weights of neural network, overwritten
+     * @param gradient gradient of the weights summed over the batch
+     * @param learningRate the learning rate used in training the network
+     * @param lambda the lambda that affects how intense the changes to the
+     * weights are
+     * @param n count of training data used for training
+     * @param m size of the batch
+     */
+    @Override
+    public void update(Matrix weights, Matrix gradient, double learningRate, double lambda, int n, int m) {
+        weights.scaleAddScaledInPlace(1.0 - ((lambda * learningRate) / n), -learningRate / m, gradient);
+    }
+
+    /**
+     * Scales the weights in place.
+     *
+     * @param weights current weights of neural network, overwritten
+     * @param learningRate the learning rate used in training the network
+     * @param lambda the lambda that affects how intense the changes to the
+     * weights are
+     * @param n count of training data used for training
+     */
+    @Override
+    public void decay(Matrix weights, double learningRate, double lambda, int n) {
+        weights.mulScaInPlace(1.0 - ((lambda * learningRate) / n));
+    }
+
 }
\ No newline at end of file
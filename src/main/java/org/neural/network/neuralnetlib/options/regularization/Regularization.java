@@ -20,4 +20,40 @@ public abstract class Regularization {
      * @return regularised weight array
      */
     public abstract Matrix calculate(Matrix weights, double learningRate, double lambda, int n);
+
+    /**
+     * Regularizes the weights and subtracts the scaled gradient of a batch
+     * in place. The default implementation regularizes a copy of the weights
+     * with {@link #calculate(Matrix, double, double, int)} and subtracts the
+     * gradient afterwards. Subclasses override it to do both in a single
+     * pass over the weights without allocating.
+     *
+     * @param weights current weights of neural network, overwritten
+     * @param gradient gradient of the weights summed over the batch
+     * @param learningRate the learning rate used in training the network
+     * @param lambda the lambda that affects how intense the changes to the
+     * weights are
+     * @param n count of training data used for training
+     * @param m size of the batch
+     */
+    public void update(Matrix weights, Matrix gradient, double learningRate, double lambda, int n, int m) {
+        weights.copyFrom(calculate(weights, learningRate, lambda, n));
+        weights.addScaledInPlace(-learningRate / m, gradient);
+    }
+
+    /**
+     * Regularizes the weights in place without a gradient step, used when
+     * an optimizer takes the step afterwards. The default implementation
+     * copies the result of {@link #calculate(Matrix, double, double, int)}
+     * back into the weights.
+     *
+     * @param weights current weights of neural network, overwritten
+     * @param learningRate the learning rate used in training the network
+     * @param lambda the lambda that affects how intense the changes to the
+     * weights are
+     * @param n count of training data used for training
+     */
+    public void decay(Matrix weights, double learningRate, double lambda, int n) {
+        weights.copyFrom(calculate(weights, learningRate, lambda, n));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,250 @@
+package org.neural.network.neuralnetlib.server;
+
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.neuralnetlib.net.InferenceSession;
+import org.neural.network.neuralnetlib.net.NeuralNetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects predictions requested by many threads into batches. A dispatcher
+ * thread waits for the first request, then keeps collecting until the batch
+ * is full or the maximum wait time has passed since that request. The whole
+ * batch is packed into one matrix and computed in a single forward pass, so
+ * concurrent requests share one matrix product instead of running one
+ * matrix-vector product each.
+ *
+ * Larger batches and longer waits increase the throughput, shorter waits
+ * decrease the latency at low load. {@link #getMetrics()} shows the batch
+ * sizes and latencies actually reached.
+ *
+ */
+public class BatchingPredictor implements AutoCloseable {
+
+    private final NeuralNetwork net;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final int inputSize;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final InferenceMetrics metrics;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * Initializes the predictor and starts its dispatcher thread.
+     *
+     * @param net network to predict with
+     * @param maxBatch maximum number of requests computed together
+     * @param maxWaitMicros maximum time in microseconds the first request of
+     * a batch waits for more requests
+     */
+    public BatchingPredictor(NeuralNetwork net, int maxBatch, long maxWaitMicros) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1");
+        }
+        if (maxWaitMicros < 0) {
+            throw new IllegalArgumentException("Maximum wait time must not be negative");
+        }
+        this.net = net;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.inputSize = net.getWeights()[0].getM();
+        this.metrics = new InferenceMetrics(maxBatch);
+        this.dispatcher = Thread.ofPlatform().name("inference-dispatcher").daemon().start(this::dispatch);
+    }
+
+    /**
+     * Requests a prediction. The result is completed by the dispatcher thread
+     * once the batch of the request was computed.
+     *
+     * @param input input values of one sample
+     * @return future result of the output layer
+     */
+    public CompletableFuture<double[]> submit(double[] input) {
+        if (input.length != inputSize) {
+            throw new IllegalArgumentException("Input must have " + inputSize + " values, got " + input.length);
+        }
+        if (closed) {
+            throw new IllegalStateException("Predictor is closed");
+        }
+        Request request = new Request(input);
+        metrics.enqueued();
+        queue.add(request);
+        if (closed && queue.remove(request)) {
+            metrics.removed(1);
+            request.result.completeExceptionally(new IllegalStateException("Predictor is closed"));
+        }
+        return request.result;
+    }
+
+    /**
+     * Requests a prediction and waits for it. Blocking is cheap on virtual
+     * threads, which makes this the method to call from request handlers.
+     *
+     * @param input input values of one sample
+     * @return result of the output layer
+     */
+    public double[] predict(double[] input) {
+        try {
+            return submit(input).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Takes batches from the queue and computes them until the predictor is
+     * closed.
+     */
+    private void dispatch() {
+        InferenceSession session = net.newSession(maxBatch);
+        Matrix[] packed = packedInputs();
+        List<Request> batch = new ArrayList<>(maxBatch);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = batch.get(0).start + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    Request next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                    batch.add(next);
+                }
+                metrics.batch(batch.size());
+                run(session, packed, batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // requests taken but not yet counted as a batch
+        metrics.removed(batch.size());
+        for (Request request : batch) {
+            request.result.completeExceptionally(new IllegalStateException("Predictor is closed"));
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            metrics.removed(1);
+            request.result.completeExceptionally(new IllegalStateException("Predictor is closed"));
+        }
+    }
+
+    /**
+     * Allocates the input matrices of every batch size, all wrapping the same
+     * array.
+     *
+     * @return input matrices indexed by batch size - 1
+     */
+    private Matrix[] packedInputs() {
+        Matrix[] packed = new Matrix[maxBatch];
+        if (net.getPrecision() == Precision.SINGLE) {
+            float[] data = new float[inputSize * maxBatch];
+            for (int m = 1; m <= maxBatch; m++) {
+                packed[m - 1] = new Matrix(inputSize, m, data);
+            }
+        } else {
+            double[] data = new double[inputSize * maxBatch];
+            for (int m = 1; m <= maxBatch; m++) {
+                packed[m - 1] = new Matrix(inputSize, m, data);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Computes one batch and completes its requests.
+     *
+     * @param session session to run the network with
+     * @param packed input matrices of every batch size
+     * @param batch requests to compute
+     */
+    private void run(InferenceSession session, Matrix[] packed, List<Request> batch) {
+        int count = batch.size();
+        try {
+            Matrix in = packed[count - 1];
+            for (int j = 0; j < count; j++) {
+                double[] input = batch.get(j).input;
+                for (int i = 0; i < inputSize; i++) {
+                    in.set(i, j, input[i]);
+                }
+            }
+            Matrix out = session.feedforward(in);
+            long now = System.nanoTime();
+            for (int j = 0; j < count; j++) {
+                Request request = batch.get(j);
+                double[] result = new double[out.getN()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = out.get(i, j);
+                }
+                metrics.latency(now - request.start);
+                request.result.complete(result);
+            }
+        } catch (RuntimeException ex) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the dispatcher. Requests still waiting fail with an
+     * IllegalStateException.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+    }
+
+    /**
+     * Gets the metrics of this predictor.
+     *
+     * @return live metrics
+     */
+    public InferenceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the network predicting with.
+     *
+     * @return network
+     */
+    public NeuralNetwork getNetwork() {
+        return net;
+    }
+
+    /**
+     * A requested prediction waiting for its batch.
+     */
+    private static final class Request {
+
+        private final double[] input;
+        private final long start = System.nanoTime();
+        private final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        /**
+         * Initializes the request.
+         *
+         * @param input input values of one sample
+         */
+        private Request(double[] input) {
+            this.input = input;
+        }
+    }
+}
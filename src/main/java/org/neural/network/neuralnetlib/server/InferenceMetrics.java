@@ -0,0 +1,166 @@
+package org.neural.network.neuralnetlib.server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of a {@link BatchingPredictor}: the number of requests waiting,
+ * how many batches of every size were run, and the latency of recent
+ * requests from submission until their result was available.
+ *
+ * Latencies are kept in a ring of the most recent {@link #WINDOW} requests,
+ * so the percentiles follow the current load.
+ *
+ */
+public class InferenceMetrics {
+
+    /**
+     * Number of recent requests the latency percentiles are computed from.
+     */
+    public static final int WINDOW = 4096;
+
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLongArray batchSizes;
+    private final long[] latencies = new long[WINDOW];
+    private int latencyCount;
+    private int latencyPos;
+
+    /**
+     * Initializes the metrics.
+     *
+     * @param maxBatch largest possible batch size
+     */
+    InferenceMetrics(int maxBatch) {
+        this.batchSizes = new AtomicLongArray(maxBatch + 1);
+    }
+
+    /**
+     * Counts a request entering the queue.
+     */
+    void enqueued() {
+        queueDepth.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Counts a batch taken from the queue.
+     *
+     * @param size number of requests in the batch
+     */
+    void batch(int size) {
+        queueDepth.addAndGet(-size);
+        batches.incrementAndGet();
+        batchSizes.incrementAndGet(size);
+    }
+
+    /**
+     * Counts requests leaving the queue without being computed, for example
+     * when the predictor is closed.
+     *
+     * @param count number of requests
+     */
+    void removed(int count) {
+        queueDepth.addAndGet(-count);
+    }
+
+    /**
+     * Records the latency of a finished request.
+     *
+     * @param nanos time from submission until the result was available
+     */
+    synchronized void latency(long nanos) {
+        latencies[latencyPos] = nanos;
+        latencyPos = (latencyPos + 1) % WINDOW;
+        latencyCount = Math.min(latencyCount + 1, WINDOW);
+    }
+
+    /**
+     * Gets the number of requests waiting for a batch.
+     *
+     * @return queue depth
+     */
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Gets the number of requests submitted so far.
+     *
+     * @return request count
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of batches run so far.
+     *
+     * @return batch count
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets how often every batch size was run.
+     *
+     * @return counts indexed by batch size, index 0 is always 0
+     */
+    public long[] getBatchSizeCounts() {
+        long[] counts = new long[batchSizes.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = batchSizes.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Gets a percentile of the latency of recent requests.
+     *
+     * @param percentile percentile between 0 and 100, like 50 or 99
+     * @return latency in nanoseconds, 0 if no request finished yet
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(latencies, latencyCount);
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Formats the metrics as text, one value per line.
+     *
+     * @return metrics in the Prometheus text format
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("inference_queue_depth ").append(getQueueDepth()).append('\n');
+        sb.append("inference_requests_total ").append(getRequests()).append('\n');
+        sb.append("inference_batches_total ").append(getBatches()).append('\n');
+        long[] counts = getBatchSizeCounts();
+        for (int size = 1; size < counts.length; size++) {
+            if (counts[size] > 0) {
+                sb.append("inference_batch_size_count{size=\"").append(size).append("\"} ")
+                        .append(counts[size]).append('\n');
+            }
+        }
+        sb.append("inference_latency_seconds{quantile=\"0.5\"} ")
+                .append(getLatencyPercentile(50) / 1e9).append('\n');
+        sb.append("inference_latency_seconds{quantile=\"0.99\"} ")
+                .append(getLatencyPercentile(99) / 1e9).append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,183 @@
+package org.neural.network.neuralnetlib.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.neural.network.neuralnetlib.net.NeuralNetwork;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small HTTP server making a network available to other processes on the
+ * same machine. It only listens on the loopback address. Every request is
+ * handled on its own virtual thread and the predictions are batched by a
+ * {@link BatchingPredictor}.
+ *
+ * Endpoints:
+ * <ul>
+ * <li>{@code POST /predict} with the input values as body, separated by
+ * commas or whitespace and optionally enclosed in brackets. The response is
+ * the output layer as a JSON array.</li>
+ * <li>{@code GET /metrics} returns queue depth, batch sizes and latency
+ * percentiles in the Prometheus text format.</li>
+ * </ul>
+ *
+ */
+public class InferenceServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BatchingPredictor predictor;
+
+    /**
+     * Initializes the server. Call {@link #start()} to accept requests.
+     *
+     * @param net network to predict with
+     * @param port port to listen on, 0 to choose a free one
+     * @param maxBatch maximum number of requests computed together
+     * @param maxWaitMicros maximum time in microseconds the first request of
+     * a batch waits for more requests
+     * @throws IOException if the port cannot be opened
+     */
+    public InferenceServer(NeuralNetwork net, int port, int maxBatch, long maxWaitMicros) throws IOException {
+        this.predictor = new BatchingPredictor(net, maxBatch, maxWaitMicros);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server and the predictor. Requests in progress get up to a
+     * second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        predictor.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the predictor batching the requests.
+     *
+     * @return predictor
+     */
+    public BatchingPredictor getPredictor() {
+        return predictor;
+    }
+
+    /**
+     * Handles a prediction request.
+     *
+     * @param exchange request and response
+     * @throws IOException if the connection fails
+     */
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "Use POST\n");
+            return;
+        }
+        double[] input;
+        try {
+            input = parse(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException ex) {
+            send(exchange, 400, "Invalid number: " + ex.getMessage() + "\n");
+            return;
+        }
+        double[] output;
+        try {
+            output = predictor.predict(input);
+        } catch (IllegalArgumentException ex) {
+            send(exchange, 400, ex.getMessage() + "\n");
+            return;
+        } catch (RuntimeException ex) {
+            send(exchange, 503, ex.getMessage() + "\n");
+            return;
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < output.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(output[i]);
+        }
+        send(exchange, 200, sb.append("]\n").toString());
+    }
+
+    /**
+     * Handles a metrics request.
+     *
+     * @param exchange request and response
+     * @throws IOException if the connection fails
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "Use GET\n");
+            return;
+        }
+        send(exchange, 200, predictor.getMetrics().toString());
+    }
+
+    /**
+     * Parses input values separated by commas or whitespace.
+     *
+     * @param body request body
+     * @return input values
+     */
+    private static double[] parse(String body) {
+        String trimmed = body.trim();
+        if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        if (trimmed.isEmpty()) {
+            return new double[0];
+        }
+        String[] parts = trimmed.split("[,\\s]+");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Sends a text response and closes the exchange.
+     *
+     * @param exchange request and response
+     * @param status HTTP status code
+     * @param body response body
+     * @throws IOException if the connection fails
+     */
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                status == 200 && body.startsWith("[") ? "application/json" : "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
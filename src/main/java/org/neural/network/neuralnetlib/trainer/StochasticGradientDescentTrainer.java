@@ -3,11 +3,23 @@ package org.neural.network.neuralnetlib.trainer;
 
 import org.neural.network.mathlib.algebra.Matrix;
 import org.neural.network.mathlib.algebra.Vector;
-import org.neural.network.neuralnetlib.net.DataUtils;
+import org.neural.network.neuralnetlib.net.Dataset;
 import org.neural.network.neuralnetlib.net.NeuralNetwork;
 import org.neural.network.neuralnetlib.options.cost.CostFunction;
+import org.neural.network.neuralnetlib.options.optimizer.Optimizer;
 import org.neural.network.neuralnetlib.options.regularization.Regularization;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class is used to train a neural network using stochastic gradient
  * descent. The idea is to minimize the specified cost function. That means
@@ -15,16 +27,51 @@ import org.neural.network.neuralnetlib.options.regularization.Regularization;
  * evaluation of the cost after each training batch and changing the weights
  * with respect to the "downhill" direction of the cost function.
  *
+ * With more than one thread (see {@link #setThreads(int)}) every batch is
+ * split into equal parts which are backpropagated at the same time, each by
+ * its own replica of the network. The errors of the parts are summed up in
+ * pairs and the weights are updated once, so the result matches training
+ * with a single thread up to rounding. In {@link TrainingMode#ASYNCHRONOUS}
+ * mode every thread trains whole batches instead and updates the weights
+ * without waiting for the others. In {@link TrainingMode#LOCAL} mode every
+ * thread trains a copy of the network on its own part of the data, and the
+ * copies are averaged every few batches.
+ *
+ * By default the weights are moved against the gradient by the learning
+ * rate. An {@link Optimizer} set with {@link #setOptimizer(Optimizer)} takes
+ * these steps instead, for example with momentum or adapted learning rates.
+ *
  */
 public class StochasticGradientDescentTrainer {
 
     private final NeuralNetwork net;
     private final CostFunction costFunction;
     private final Regularization regularization;
-    private Vector[] trainingIn;
-    private Vector[] trainingOut;
-    private Vector[] testIn;
-    private Vector[] testOut;
+    private final Random random = new Random();
+    private Dataset training;
+    private Dataset test;
+    private Matrix[] masks;
+    private Optimizer optimizer;
+    private Matrix[] optimizerWeights;
+    private Matrix[] weightErrors;
+    private Vector[] biasErrors;
+    private int threads = 1;
+    private TrainingMode mode = TrainingMode.SYNCHRONOUS;
+    private double averageStaleness;
+    private long maxStaleness;
+    private int localSteps = 1;
+    private double averagingMomentum;
+    private StochasticGradientDescentTrainer[] localTrainers;
+    private Matrix[] weightVelocities;
+    private Vector[] biasVelocities;
+    private Matrix[] weightAverages;
+    private Vector[] biasAverages;
+    private double computeTime;
+    private double communicationTime;
+    private ForkJoinPool pool;
+    private NeuralNetwork[] replicas;
+    private Matrix[][] shardWeightErrors;
+    private Vector[][] shardBiasErrors;
 
     /**
      * Initializes the Trainer.
@@ -55,14 +102,14 @@ public class StochasticGradientDescentTrainer {
      * insights.
      */
     public void train(int iteration, double learningRate, double lambda, int batchSize, boolean evaluate) {
-        if (trainingIn == null || trainingOut == null || testIn == null || testOut == null) {
+        if (training == null || test == null) {
             System.out.println("\n--- Training was cancelled because of missing data - Please specify training and test data ---");
         }
 
         System.out.printf("%n---Training Network---%n"
                         + "Training data: %d, Test data: %d, Batch size: %d%n"
                         + "iteration: %d, Learning rate: %.2f, Lambda: %.2f%n%n",
-                trainingIn.length, testIn.length, batchSize, iteration, learningRate, lambda);
+                training.size(), test.size(), batchSize, iteration, learningRate, lambda);
         for (int i = 0; i < iteration; i++) {
             trainEpoch(i, learningRate, lambda, batchSize, evaluate);
         }
@@ -71,15 +118,17 @@ public class StochasticGradientDescentTrainer {
                         + "            error: %f%n"
                         + "   Test  accuracy: %.2f%n"
                         + "            error: %f%n",
-                test(trainingIn, trainingOut),
-                costFunction.calculateTotal(net, trainingIn, trainingOut),
-                test(testIn, testOut),
-                costFunction.calculateTotal(net, testIn, testOut));
+                test(training),
+                costFunction.calculateTotal(net, training.getInputs(), training.getOutputs()),
+                test(test),
+                costFunction.calculateTotal(net, test.getInputs(), test.getOutputs()));
     }
 
     /**
      * Trains one epoch using the training data. Divides the whole data into
-     * smaller batches and trains the network with them.
+     * smaller batches and trains the network with them. The samples are
+     * shuffled in place, so every batch is a view on consecutive columns of
+     * the packed training data.
      *
      * @param epoch current epoch
      * @param learningRate learning rate determines how fast the weights in the
@@ -94,16 +143,31 @@ public class StochasticGradientDescentTrainer {
      */
     private void trainEpoch(int epoch, double learningRate, double lambda, int batchSize, boolean evaluate) {
         long millis = System.currentTimeMillis();
-        DataUtils.shuffle(trainingIn, trainingOut);
-        Matrix[] dataIn = DataUtils.subdivide(trainingIn, batchSize);
-        Matrix[] dataOut = DataUtils.subdivide(trainingOut, batchSize);
+        prepareOptimizer();
+        training.shuffle(random);
         long millisPrepare = System.currentTimeMillis();
-        for (int j = 0; j < trainingIn.length / (double) batchSize; j++) {
-            trainBatch(dataIn[j], dataOut[j], learningRate, lambda, trainingIn.length);
+        int n = training.size();
+        boolean asynchronous = threads > 1 && mode == TrainingMode.ASYNCHRONOUS;
+        boolean local = threads > 1 && mode == TrainingMode.LOCAL;
+        if (asynchronous) {
+            trainAsynchronous(learningRate, lambda, batchSize);
+        } else if (local) {
+            trainLocal(learningRate, lambda, batchSize);
+        } else {
+            for (int pos = 0; pos < n; pos += batchSize) {
+                int end = Math.min(pos + batchSize, n);
+                trainBatch(training.getInputs(pos, end), training.getOutputs(pos, end), learningRate, lambda, n);
+            }
         }
         long millisTrain = System.currentTimeMillis();
         System.out.printf("Epoch: %d%n",
                 epoch + 1);
+        if (asynchronous) {
+            System.out.printf("Staleness: %.2f average, %d max%n", averageStaleness, maxStaleness);
+        }
+        if (local) {
+            System.out.printf("Compute: %.4f, communication: %.4f%n", computeTime, communicationTime);
+        }
         if (evaluate) {
             System.out.printf("Training accuracy: %.2f%n"
                             + "            error: %f%n"
@@ -113,10 +177,10 @@ public class StochasticGradientDescentTrainer {
                             + "     prepare: %.4f%n"
                             + "    training: %.4f%n"
                             + "    evaluate: %.4f%n",
-                    test(trainingIn, trainingOut),
-                    costFunction.calculateTotal(net, trainingIn, trainingOut),
-                    test(testIn, testOut),
-                    costFunction.calculateTotal(net, testIn, testOut),
+                    test(training),
+                    costFunction.calculateTotal(net, training.getInputs(), training.getOutputs()),
+                    test(test),
+                    costFunction.calculateTotal(net, test.getInputs(), test.getOutputs()),
                     (System.currentTimeMillis() - millis) / 1000.0,
                     (millisPrepare - millis) / 1000.0,
                     (millisTrain - millisPrepare) / 1000.0,
@@ -137,23 +201,375 @@ public class StochasticGradientDescentTrainer {
      */
     private void trainBatch(Matrix trainingIn, Matrix trainingOut, double learningRate, double lambda, int n) {
         int size = net.getSize();
+        int shards = Math.min(threads, trainingIn.getM());
+        Matrix[] weightErrors;
+        Vector[] biasErrors;
+        if (shards > 1) {
+            backpropagateShards(trainingIn, trainingOut, shards);
+            weightErrors = shardWeightErrors[0];
+            biasErrors = shardBiasErrors[0];
+        } else {
+            if (this.weightErrors == null || this.weightErrors.length != size - 1) {
+                this.weightErrors = new Matrix[size - 1];
+                this.biasErrors = new Vector[size - 1];
+            }
+            weightErrors = this.weightErrors;
+            biasErrors = this.biasErrors;
+            net.backpropagate(trainingIn, trainingOut, weightErrors, biasErrors, costFunction);
+        }
+        update(weightErrors, biasErrors, learningRate, lambda, n, trainingIn.getM());
+    }
+
+    /**
+     * Changes the weights and biases of the network by the errors of a
+     * batch. With an optimizer the regularization is applied to the weights
+     * first and the optimizer takes the step afterwards.
+     *
+     * @param weightErrors summed up errors of the weights
+     * @param biasErrors summed up errors of the biases
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param lambda strength of regularization
+     * @param n total size of training data
+     * @param m size of the batch
+     */
+    private void update(Matrix[] weightErrors, Vector[] biasErrors, double learningRate, double lambda, int n, int m) {
         Matrix[] weights = net.getWeights();
         Vector[] biases = net.getBiases();
-        Matrix[] weightErrors = new Matrix[size - 1];
-        Vector[] biasErrors = new Vector[size - 1];
-        for (int i = 0; i < size - 1; i++) {
-            weightErrors[i] = new Matrix(weights[i].getN(), weights[i].getM());
-            biasErrors[i] = new Vector(biases[i].getN());
-        }
-        net.backpropagate(trainingIn, trainingOut, weightErrors, biasErrors, costFunction);
-        double stochasticFactor = learningRate / trainingIn.getM();
-        for (int i = 0; i < size - 1; i++) {
-            if (regularization == null) {
-                weights[i] = weights[i].subMat(weightErrors[i].mulSca(stochasticFactor));
-            } else {
-                weights[i] = regularization.calculate(weights[i], learningRate, lambda, n).subMat(weightErrors[i].mulSca(stochasticFactor));
+        double stochasticFactor = learningRate / m;
+        net.beginUpdate();
+        try {
+            if (optimizer != null) {
+                optimizer.nextStep();
+            }
+            for (int i = 0; i < weights.length; i++) {
+                if (optimizer != null) {
+                    if (regularization != null) {
+                        regularization.decay(weights[i], learningRate, lambda, n);
+                    }
+                    optimizer.update(i, weights[i], weightErrors[i], biases[i], biasErrors[i], learningRate, m);
+                } else {
+                    if (regularization != null) {
+                        regularization.update(weights[i], weightErrors[i], learningRate, lambda, n, m);
+                    } else {
+                        weights[i].addScaledInPlace(-stochasticFactor, weightErrors[i]);
+                    }
+                    biases[i].addScaledInPlace(-stochasticFactor, biasErrors[i]);
+                }
+                if (masks != null) {
+                    weights[i].hadamardMatInPlace(masks[i]);
+                }
+            }
+        } finally {
+            net.endUpdate();
+        }
+    }
+
+    /**
+     * Backpropagates the parts of a batch on the threads of the pool and sums
+     * up their errors in a tree: in every round each remaining part adds the
+     * errors of its neighbour, until the first part holds the errors of the
+     * whole batch.
+     *
+     * @param trainingIn part of whole input training data
+     * @param trainingOut part of whole output training data
+     * @param shards number of parts, at most the number of threads and
+     * columns
+     */
+    private void backpropagateShards(Matrix trainingIn, Matrix trainingOut, int shards) {
+        prepareReplicas();
+        int m = trainingIn.getM();
+        List<Callable<Void>> tasks = new ArrayList<>(shards);
+        for (int k = 0; k < shards; k++) {
+            int shard = k;
+            int from = (int) ((long) m * k / shards);
+            int to = (int) ((long) m * (k + 1) / shards);
+            tasks.add(() -> {
+                replicas[shard].backpropagate(
+                        trainingIn.viewBlock(0, from, trainingIn.getN(), to - from),
+                        trainingOut.viewBlock(0, from, trainingOut.getN(), to - from),
+                        shardWeightErrors[shard], shardBiasErrors[shard], costFunction);
+                return null;
+            });
+        }
+        runAll(tasks);
+        for (int stride = 1; stride < shards; stride *= 2) {
+            tasks.clear();
+            for (int k = 0; k + stride < shards; k += 2 * stride) {
+                int target = k;
+                int source = k + stride;
+                tasks.add(() -> {
+                    for (int i = 0; i < shardWeightErrors[target].length; i++) {
+                        shardWeightErrors[target][i].addMatInPlace(shardWeightErrors[source][i]);
+                        shardBiasErrors[target][i].addVecInPlace(shardBiasErrors[source][i]);
+                    }
+                    return null;
+                });
+            }
+            runAll(tasks);
+        }
+    }
+
+    /**
+     * Trains one epoch with every thread taking the next batch as soon as it
+     * is done with the previous one. Each thread backpropagates with its own
+     * replica and applies its errors directly to the shared weights using
+     * plain writes, so concurrent updates of the same weight may overwrite
+     * each other. The staleness of an update is the number of updates by
+     * other threads between backpropagating and applying it.
+     *
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param lambda strength of regularization
+     * @param batchSize size of training data to be trained at once
+     */
+    private void trainAsynchronous(double learningRate, double lambda, int batchSize) {
+        prepareReplicas();
+        int n = training.size();
+        int batches = (n + batchSize - 1) / batchSize;
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong updates = new AtomicLong();
+        long[] staleSums = new long[threads];
+        long[] staleMaxima = new long[threads];
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int k = 0; k < threads; k++) {
+            int worker = k;
+            tasks.add(() -> {
+                for (int b = next.getAndIncrement(); b < batches; b = next.getAndIncrement()) {
+                    int pos = b * batchSize;
+                    int end = Math.min(pos + batchSize, n);
+                    long start = updates.get();
+                    replicas[worker].backpropagate(training.getInputs(pos, end), training.getOutputs(pos, end),
+                            shardWeightErrors[worker], shardBiasErrors[worker], costFunction);
+                    update(shardWeightErrors[worker], shardBiasErrors[worker], learningRate, lambda, n, end - pos);
+                    long staleness = updates.getAndIncrement() - start;
+                    staleSums[worker] += staleness;
+                    staleMaxima[worker] = Math.max(staleMaxima[worker], staleness);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+        long sum = 0;
+        long max = 0;
+        for (int k = 0; k < threads; k++) {
+            sum += staleSums[k];
+            max = Math.max(max, staleMaxima[k]);
+        }
+        averageStaleness = batches == 0 ? 0 : (double) sum / batches;
+        maxStaleness = max;
+    }
+
+    /**
+     * Trains one epoch with local SGD. The shuffled training data is split
+     * into one part per thread. In every round each thread trains up to the
+     * configured number of batches of its part with its own copy of the
+     * network, using {@link #trainBatch(Matrix, Matrix, double, double, int)}
+     * of a trainer of its own. Then the copies are averaged into the network
+     * and the result is copied back to all of them. Time spent training the
+     * copies counts as compute time, averaging and copying as communication
+     * time.
+     *
+     * @param learningRate learning rate determines how fast the weights in the
+     * network are changed
+     * @param lambda strength of regularization
+     * @param batchSize size of training data to be trained at once
+     */
+    private void trainLocal(double learningRate, double lambda, int batchSize) {
+        prepareLocalTrainers();
+        int n = training.size();
+        int[] positions = new int[threads];
+        int[] ends = new int[threads];
+        for (int k = 0; k < threads; k++) {
+            positions[k] = (int) ((long) n * k / threads);
+            ends[k] = (int) ((long) n * (k + 1) / threads);
+        }
+        long compute = 0;
+        long communication = 0;
+        long start = System.nanoTime();
+        broadcast();
+        communication += System.nanoTime() - start;
+        boolean[] active = new boolean[threads];
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        while (true) {
+            tasks.clear();
+            for (int k = 0; k < threads; k++) {
+                active[k] = positions[k] < ends[k];
+                if (!active[k]) {
+                    continue;
+                }
+                int worker = k;
+                tasks.add(() -> {
+                    for (int step = 0; step < localSteps && positions[worker] < ends[worker]; step++) {
+                        int pos = positions[worker];
+                        int end = Math.min(pos + batchSize, ends[worker]);
+                        localTrainers[worker].trainBatch(training.getInputs(pos, end), training.getOutputs(pos, end),
+                                learningRate, lambda, n);
+                        positions[worker] = end;
+                    }
+                    return null;
+                });
+            }
+            if (tasks.isEmpty()) {
+                break;
+            }
+            start = System.nanoTime();
+            runAll(tasks);
+            long trained = System.nanoTime();
+            average(active);
+            broadcast();
+            compute += trained - start;
+            communication += System.nanoTime() - trained;
+        }
+        computeTime = compute / 1e9;
+        communicationTime = communication / 1e9;
+    }
+
+    /**
+     * Averages the weights and biases of the copies that trained in the last
+     * round into the network. With averaging momentum the network moves by
+     * its velocity instead, which is the change towards the average plus the
+     * previous velocity scaled by the momentum.
+     *
+     * @param active copies that trained in the last round
+     */
+    private void average(boolean[] active) {
+        Matrix[] weights = net.getWeights();
+        Vector[] biases = net.getBiases();
+        int count = 0;
+        for (boolean a : active) {
+            count += a ? 1 : 0;
+        }
+        net.beginUpdate();
+        try {
+            for (int i = 0; i < weights.length; i++) {
+                Matrix weightSum = weightAverages[i];
+                Vector biasSum = biasAverages[i];
+                weightSum.fill(0);
+                Arrays.fill(biasSum.getArray(), 0);
+                for (int k = 0; k < threads; k++) {
+                    if (active[k]) {
+                        weightSum.addMatInPlace(localTrainers[k].net.getWeights()[i]);
+                        biasSum.addVecInPlace(localTrainers[k].net.getBiases()[i]);
+                    }
+                }
+                weightSum.mulScaInPlace(1.0 / count);
+                biasSum.mulScaInPlace(1.0 / count);
+                if (averagingMomentum > 0) {
+                    weightVelocities[i].mulScaInPlace(averagingMomentum)
+                            .addMatInPlace(weightSum.subMatInPlace(weights[i]));
+                    biasVelocities[i].mulScaInPlace(averagingMomentum)
+                            .addVecInPlace(biasSum.subVecInPlace(biases[i]));
+                    weights[i].addMatInPlace(weightVelocities[i]);
+                    biases[i].addVecInPlace(biasVelocities[i]);
+                } else {
+                    weights[i].copyFrom(weightSum);
+                    System.arraycopy(biasSum.getArray(), 0, biases[i].getArray(), 0, biasSum.getN());
+                }
+                if (masks != null) {
+                    weights[i].hadamardMatInPlace(masks[i]);
+                }
+            }
+        } finally {
+            net.endUpdate();
+        }
+    }
+
+    /**
+     * Copies the weights and biases of the network to all local copies.
+     */
+    private void broadcast() {
+        Matrix[] weights = net.getWeights();
+        Vector[] biases = net.getBiases();
+        for (StochasticGradientDescentTrainer trainer : localTrainers) {
+            for (int i = 0; i < weights.length; i++) {
+                trainer.net.getWeights()[i].copyFrom(weights[i]);
+                System.arraycopy(biases[i].getArray(), 0, trainer.net.getBiases()[i].getArray(), 0, biases[i].getN());
+            }
+            trainer.net.weightsChanged();
+        }
+    }
+
+    /**
+     * Creates the local copies of the network with their trainers and the
+     * buffers used for averaging, unless they exist for the current number
+     * of threads and shape of the network.
+     */
+    private void prepareLocalTrainers() {
+        if (localTrainers != null && localTrainers.length == threads
+                && weightAverages.length == net.getWeights().length) {
+            return;
+        }
+        localTrainers = new StochasticGradientDescentTrainer[threads];
+        for (int k = 0; k < threads; k++) {
+            localTrainers[k] = new StochasticGradientDescentTrainer(net.copy(), costFunction, regularization);
+            localTrainers[k].setMasks(masks);
+            localTrainers[k].setOptimizer(optimizer == null ? null : optimizer.copy());
+            localTrainers[k].prepareOptimizer();
+        }
+        Matrix[] weights = net.getWeights();
+        Vector[] biases = net.getBiases();
+        weightAverages = new Matrix[weights.length];
+        biasAverages = new Vector[weights.length];
+        weightVelocities = new Matrix[weights.length];
+        biasVelocities = new Vector[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            weightAverages[i] = new Matrix(weights[i].getN(), weights[i].getM(), weights[i].getPrecision());
+            biasAverages[i] = new Vector(biases[i].getN());
+            weightVelocities[i] = new Matrix(weights[i].getN(), weights[i].getM(), weights[i].getPrecision());
+            biasVelocities[i] = new Vector(biases[i].getN());
+        }
+    }
+
+    /**
+     * Allocates the state of the optimizer, unless it exists for the current
+     * weights.
+     */
+    private void prepareOptimizer() {
+        if (optimizer != null && optimizerWeights != net.getWeights()) {
+            optimizer.init(net.getWeights(), net.getBiases());
+            optimizerWeights = net.getWeights();
+        }
+    }
+
+    /**
+     * Creates the replicas of the network and their error buffers, unless
+     * they exist for the current weights and number of threads.
+     */
+    private void prepareReplicas() {
+        if (replicas != null && replicas.length == threads
+                && replicas[0].getWeights() == net.getWeights() && replicas[0].getBiases() == net.getBiases()) {
+            return;
+        }
+        replicas = new NeuralNetwork[threads];
+        shardWeightErrors = new Matrix[threads][net.getSize() - 1];
+        shardBiasErrors = new Vector[threads][net.getSize() - 1];
+        for (int k = 0; k < threads; k++) {
+            replicas[k] = net.replica();
+        }
+    }
+
+    /**
+     * Runs tasks on the pool and waits until all of them are done.
+     *
+     * @param tasks tasks to run
+     */
+    private void runAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training was interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
             }
-            biases[i] = biases[i].subVec(biasErrors[i].mulSca(stochasticFactor));
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
         }
     }
 
@@ -161,46 +577,245 @@ public class StochasticGradientDescentTrainer {
      * Testing the neural network. Evaluates the accuracy of the network by
      * comparing the calculated outputs with the desired outputs.
      *
-     * @param testIn input test data
-     * @param testOut test data of desired outputs
+     * @param data test data with desired outputs
      * @return percentage of test exapmles calculated correctly
      */
-    private double test(Vector[] testIn, Vector[] testOut) {
+    private double test(Dataset data) {
         int correct = 0;
-        double[][] result = net.feedforward(new Matrix(testIn)).getArray();
-        for (int j = 0; j < testIn.length; j++) {
+        Matrix result = net.feedforward(data.getInputs());
+        Matrix out = data.getOutputs();
+        for (int j = 0; j < data.size(); j++) {
             int max = 0;
-            for (int i = 1; i < result.length; i++) {
-                if (result[i][j] > result[max][j]) {
+            for (int i = 1; i < result.getN(); i++) {
+                if (result.get(i, j) > result.get(max, j)) {
                     max = i;
                 }
             }
-            if (testOut[j].getArray()[max] == 1.0) {
+            if (out.get(max, j) == 1.0) {
                 correct++;
             }
         }
-        return (double) correct / testIn.length * 100.0;
+        return (double) correct / data.size() * 100.0;
     }
 
     /**
-     * Sets the training data.
+     * Sets the training data. The data is packed once in the precision of
+     * the network.
      *
      * @param trainingIn input data
      * @param trainingOut output data
      */
     public void setTrainingData(Vector[] trainingIn, Vector[] trainingOut) {
-        this.trainingIn = trainingIn;
-        this.trainingOut = trainingOut;
+        setTrainingData(new Dataset(trainingIn, trainingOut, net.getPrecision()));
     }
 
     /**
-     * Sets the test data.
+     * Sets the training data. The dataset is shuffled in place every epoch.
+     *
+     * @param training training data
+     */
+    public void setTrainingData(Dataset training) {
+        this.training = training;
+    }
+
+    /**
+     * Sets masks keeping pruned weights at zero while training, for example
+     * the masks returned by {@link org.neural.network.neuralnetlib.net.Pruning}.
+     * Every weight is multiplied with its mask entry after each update.
+     *
+     * @param masks one matrix of zeros and ones per weight matrix, or null to
+     * train all weights
+     */
+    public void setMasks(Matrix[] masks) {
+        this.masks = masks;
+        this.localTrainers = null;
+    }
+
+    /**
+     * Sets the number of threads backpropagating every batch. Batches are
+     * split into one part per thread, so large batches profit most. The
+     * threads are kept until the number changes.
+     *
+     * @param threads number of threads, 1 to train on the calling thread
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1");
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.threads = threads;
+        this.replicas = null;
+        this.localTrainers = null;
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Gets the number of threads backpropagating every batch.
+     *
+     * @return number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets how the threads work together. Only used with more than one
+     * thread.
+     *
+     * @param mode synchronous or asynchronous training
+     */
+    public void setMode(TrainingMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode must not be null");
+        }
+        this.mode = mode;
+    }
+
+    /**
+     * Gets how the threads work together.
+     *
+     * @return training mode
+     */
+    public TrainingMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the average staleness of the updates in the last asynchronous
+     * epoch, that is the number of updates by other threads between
+     * computing and applying an update.
+     *
+     * @return average number of missed updates
+     */
+    public double getAverageStaleness() {
+        return averageStaleness;
+    }
+
+    /**
+     * Gets the largest staleness of an update in the last asynchronous
+     * epoch.
+     *
+     * @return maximum number of missed updates
+     */
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * Sets the number of batches every thread trains on its own copy of the
+     * network before the copies are averaged in local mode. More steps mean
+     * fewer synchronizations, but the copies drift further apart.
+     *
+     * @param localSteps batches between two averagings
+     */
+    public void setLocalSteps(int localSteps) {
+        if (localSteps < 1) {
+            throw new IllegalArgumentException("Number of local steps must be at least 1");
+        }
+        this.localSteps = localSteps;
+    }
+
+    /**
+     * Gets the number of batches trained between two averagings in local
+     * mode.
+     *
+     * @return batches between two averagings
+     */
+    public int getLocalSteps() {
+        return localSteps;
+    }
+
+    /**
+     * Sets the momentum applied when averaging in local mode. With 0 the
+     * network is simply replaced by the average of the copies.
+     *
+     * @param averagingMomentum momentum between 0 (inclusive) and 1
+     * (exclusive)
+     */
+    public void setAveragingMomentum(double averagingMomentum) {
+        if (averagingMomentum < 0 || averagingMomentum >= 1) {
+            throw new IllegalArgumentException("Momentum must be at least 0 and less than 1");
+        }
+        this.averagingMomentum = averagingMomentum;
+    }
+
+    /**
+     * Gets the momentum applied when averaging in local mode.
+     *
+     * @return averaging momentum
+     */
+    public double getAveragingMomentum() {
+        return averagingMomentum;
+    }
+
+    /**
+     * Gets the time the threads spent training their copies in the last
+     * local epoch.
+     *
+     * @return compute time in seconds
+     */
+    public double getComputeTime() {
+        return computeTime;
+    }
+
+    /**
+     * Gets the time spent averaging and copying the weights in the last
+     * local epoch.
+     *
+     * @return communication time in seconds
+     */
+    public double getCommunicationTime() {
+        return communicationTime;
+    }
+
+    /**
+     * Sets the optimizer taking the steps of training. Its state is kept
+     * between calls of train, so training can be continued. In asynchronous
+     * mode all threads update the same state without locking, so only the
+     * step count is exact and the state is subject to the same races as the
+     * weights. In local mode every copy of the network gets its own
+     * optimizer.
+     *
+     * @param optimizer optimizer to use, or null for plain stochastic
+     * gradient descent
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+        this.optimizerWeights = null;
+        this.localTrainers = null;
+    }
+
+    /**
+     * Gets the optimizer taking the steps of training.
+     *
+     * @return optimizer, or null for plain stochastic gradient descent
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Sets the test data. The data is packed once in the precision of the
+     * network.
      *
      * @param testIn input data
      * @param testOut output data
      */
     public void setTestData(Vector[] testIn, Vector[] testOut) {
-        this.testIn = testIn;
-        this.testOut = testOut;
+        setTestData(new Dataset(testIn, testOut, net.getPrecision()));
+    }
+
+    /**
+     * Sets the test data.
+     *
+     * @param test test data
+     */
+    public void setTestData(Dataset test) {
+        this.test = test;
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package org.neural.network.neuralnetlib.trainer;
+
+/**
+ * Way several threads work together when training a network (see
+ * {@link StochasticGradientDescentTrainer#setThreads(int)}).
+ *
+ */
+public enum TrainingMode {
+
+    /**
+     * Every batch is split across the threads and the weights are updated
+     * once per batch. Gives the same result as a single thread up to
+     * rounding. Default mode.
+     */
+    SYNCHRONOUS,
+
+    /**
+     * Every thread takes whole batches on its own and updates the shared
+     * weights without any locking, also known as Hogwild. Threads may
+     * compute their errors with weights that other threads have changed in
+     * the meantime. Needs no synchronization, but the result differs from
+     * run to run.
+     */
+    ASYNCHRONOUS,
+
+    /**
+     * Every thread trains its own copy of the network on its own part of the
+     * training data, also known as local SGD. After a number of batches (see
+     * {@link StochasticGradientDescentTrainer#setLocalSteps(int)}) the copies
+     * are averaged into the network and the average is copied back. Threads
+     * only wait for each other when averaging.
+     */
+    LOCAL
+}
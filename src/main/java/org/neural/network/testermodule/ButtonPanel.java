@@ -1,9 +1,9 @@
 package org.neural.network.testermodule;
 
-import org.neural.network.mathlib.algebra.Matrix;
 import org.neural.network.mathlib.algebra.Vector;
 import org.neural.network.neuralnetlib.io.NetworkIO;
 import org.neural.network.neuralnetlib.io.Resource;
+import org.neural.network.neuralnetlib.net.PredictionCache;
 import org.neural.network.neuralnetlib.options.cost.CrossEntropyCostFunction;
 import org.neural.network.neuralnetlib.options.regularization.L2Regularization;
 import org.neural.network.neuralnetlib.trainer.StochasticGradientDescentTrainer;
@@ -28,6 +28,7 @@ public class ButtonPanel extends JPanel {
     private final Frame frame;
     private final JButton predictButton;
     private StochasticGradientDescentTrainer sgdt;
+    private transient volatile PredictionCache cache;
 
     /**
      * Initializes all buttons and labels.
@@ -213,7 +214,23 @@ public class ButtonPanel extends JPanel {
             }
         }
         frame.repaint();
-        setLabels(frame.getNet().feedforward(new Matrix(vector)).getCols()[0].getArray());
+        setLabels(getCache().predict(vector).getArray());
+    }
+
+    /**
+     * Gets the prediction cache of the current network. Predictions run in
+     * their own sessions, so they do not interfere with training, and
+     * repeated drawings are answered from the cache.
+     *
+     * @return cache of the current network
+     */
+    private PredictionCache getCache() {
+        PredictionCache current = cache;
+        if (current == null || current.getNetwork() != frame.getNet()) {
+            current = new PredictionCache(frame.getNet(), 1 << 20, true);
+            cache = current;
+        }
+        return current;
     }
 
     /**
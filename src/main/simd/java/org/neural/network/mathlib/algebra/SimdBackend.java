@@ -0,0 +1,603 @@
+package org.neural.network.mathlib.algebra;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of the kernels using the incubating Vector API. Every loop
+ * processes as many entries at once as the preferred species of the CPU holds
+ * (four doubles or eight floats on AVX2, twice as many on AVX-512) and
+ * handles the remaining entries with a single masked operation.
+ *
+ * Only compiled with the simd profile and loaded through the
+ * {@link java.util.ServiceLoader} by {@link Backends}, so the rest of the
+ * library does not depend on the incubator module.
+ *
+ */
+public class SimdBackend extends ComputeBackend {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final VectorSpecies<Float> FSPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int FLANES = FSPECIES.length();
+
+    /**
+     * Rows of C computed together by the matrix multiplication.
+     */
+    private static final int ROWS = 4;
+
+    /**
+     * Shared dimension per block of the matrix multiplication.
+     */
+    private static final int KC = 256;
+
+    @Override
+    public String name() {
+        return "simd";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return Boolean.parseBoolean(System.getProperty("neuralnet.simd", "true"));
+    }
+
+    @Override
+    public int priority() {
+        return 2;
+    }
+
+    @Override
+    public double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        DoubleVector acc1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound2 = len - 2 * LANES;
+        for (; i <= bound2; i += 2 * LANES) {
+            acc0 = DoubleVector.fromArray(SPECIES, a, aOff + i)
+                    .fma(DoubleVector.fromArray(SPECIES, b, bOff + i), acc0);
+            acc1 = DoubleVector.fromArray(SPECIES, a, aOff + i + LANES)
+                    .fma(DoubleVector.fromArray(SPECIES, b, bOff + i + LANES), acc1);
+        }
+        for (; i < len; i += LANES) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            acc0 = DoubleVector.fromArray(SPECIES, a, aOff + i, mask)
+                    .fma(DoubleVector.fromArray(SPECIES, b, bOff + i, mask), acc0);
+        }
+        return acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public double sum(double[] a, int aOff, int len) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            acc = acc.add(DoubleVector.fromArray(SPECIES, a, aOff + i));
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            acc = acc.add(DoubleVector.fromArray(SPECIES, a, aOff + i, mask));
+        }
+        return acc.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void axpy(double s, double[] x, int xOff, double[] y, int yOff, int len) {
+        DoubleVector vs = DoubleVector.broadcast(SPECIES, s);
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, x, xOff + i)
+                    .fma(vs, DoubleVector.fromArray(SPECIES, y, yOff + i))
+                    .intoArray(y, yOff + i);
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            DoubleVector.fromArray(SPECIES, x, xOff + i, mask)
+                    .fma(vs, DoubleVector.fromArray(SPECIES, y, yOff + i, mask))
+                    .intoArray(y, yOff + i, mask);
+        }
+    }
+
+    @Override
+    public void add(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, aOff + i)
+                    .add(DoubleVector.fromArray(SPECIES, b, bOff + i))
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            DoubleVector.fromArray(SPECIES, a, aOff + i, mask)
+                    .add(DoubleVector.fromArray(SPECIES, b, bOff + i, mask))
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void sub(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, aOff + i)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOff + i))
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            DoubleVector.fromArray(SPECIES, a, aOff + i, mask)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOff + i, mask))
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void mul(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int len) {
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, aOff + i)
+                    .mul(DoubleVector.fromArray(SPECIES, b, bOff + i))
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            DoubleVector.fromArray(SPECIES, a, aOff + i, mask)
+                    .mul(DoubleVector.fromArray(SPECIES, b, bOff + i, mask))
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void scale(double s, double[] a, int aOff, double[] c, int cOff, int len) {
+        DoubleVector vs = DoubleVector.broadcast(SPECIES, s);
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, aOff + i)
+                    .mul(vs)
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            DoubleVector.fromArray(SPECIES, a, aOff + i, mask)
+                    .mul(vs)
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void addScalar(double s, double[] a, int aOff, double[] c, int cOff, int len) {
+        DoubleVector vs = DoubleVector.broadcast(SPECIES, s);
+        int i = 0;
+        int bound = SPECIES.loopBound(len);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, aOff + i)
+                    .add(vs)
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, len);
+            DoubleVector.fromArray(SPECIES, a, aOff + i, mask)
+                    .add(vs)
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    /**
+     * Computes C += A * B. Four rows of C are computed together: every vector
+     * loaded from a row of B is multiplied with a broadcast entry of each of
+     * the four rows of A and accumulated in registers. The shared dimension is
+     * split into blocks so the rows of B read stay in cache for all rows of A.
+     */
+    @Override
+    public void gemm(int n, int k, int m,
+            double[] a, int aOff, int aStride,
+            double[] b, int bOff, int bStride,
+            double[] c, int cOff, int cStride) {
+        if (m < LANES || (long) n * k * m < Gemm.THRESHOLD) {
+            Gemm.naive(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+            return;
+        }
+        int bound = SPECIES.loopBound(m);
+        for (int pc = 0; pc < k; pc += KC) {
+            int kc = Math.min(KC, k - pc);
+            int i = 0;
+            for (; i + ROWS <= n; i += ROWS) {
+                int a0 = aOff + i * aStride + pc;
+                int a1 = a0 + aStride;
+                int a2 = a1 + aStride;
+                int a3 = a2 + aStride;
+                int c0 = cOff + i * cStride;
+                int c1 = c0 + cStride;
+                int c2 = c1 + cStride;
+                int c3 = c2 + cStride;
+                int j = 0;
+                for (; j < bound; j += LANES) {
+                    DoubleVector acc0 = DoubleVector.fromArray(SPECIES, c, c0 + j);
+                    DoubleVector acc1 = DoubleVector.fromArray(SPECIES, c, c1 + j);
+                    DoubleVector acc2 = DoubleVector.fromArray(SPECIES, c, c2 + j);
+                    DoubleVector acc3 = DoubleVector.fromArray(SPECIES, c, c3 + j);
+                    int bRow = bOff + pc * bStride + j;
+                    for (int p = 0; p < kc; p++) {
+                        DoubleVector bv = DoubleVector.fromArray(SPECIES, b, bRow);
+                        acc0 = bv.fma(DoubleVector.broadcast(SPECIES, a[a0 + p]), acc0);
+                        acc1 = bv.fma(DoubleVector.broadcast(SPECIES, a[a1 + p]), acc1);
+                        acc2 = bv.fma(DoubleVector.broadcast(SPECIES, a[a2 + p]), acc2);
+                        acc3 = bv.fma(DoubleVector.broadcast(SPECIES, a[a3 + p]), acc3);
+                        bRow += bStride;
+                    }
+                    acc0.intoArray(c, c0 + j);
+                    acc1.intoArray(c, c1 + j);
+                    acc2.intoArray(c, c2 + j);
+                    acc3.intoArray(c, c3 + j);
+                }
+                if (j < m) {
+                    VectorMask<Double> mask = SPECIES.indexInRange(j, m);
+                    DoubleVector acc0 = DoubleVector.fromArray(SPECIES, c, c0 + j, mask);
+                    DoubleVector acc1 = DoubleVector.fromArray(SPECIES, c, c1 + j, mask);
+                    DoubleVector acc2 = DoubleVector.fromArray(SPECIES, c, c2 + j, mask);
+                    DoubleVector acc3 = DoubleVector.fromArray(SPECIES, c, c3 + j, mask);
+                    int bRow = bOff + pc * bStride + j;
+                    for (int p = 0; p < kc; p++) {
+                        DoubleVector bv = DoubleVector.fromArray(SPECIES, b, bRow, mask);
+                        acc0 = bv.fma(DoubleVector.broadcast(SPECIES, a[a0 + p]), acc0);
+                        acc1 = bv.fma(DoubleVector.broadcast(SPECIES, a[a1 + p]), acc1);
+                        acc2 = bv.fma(DoubleVector.broadcast(SPECIES, a[a2 + p]), acc2);
+                        acc3 = bv.fma(DoubleVector.broadcast(SPECIES, a[a3 + p]), acc3);
+                        bRow += bStride;
+                    }
+                    acc0.intoArray(c, c0 + j, mask);
+                    acc1.intoArray(c, c1 + j, mask);
+                    acc2.intoArray(c, c2 + j, mask);
+                    acc3.intoArray(c, c3 + j, mask);
+                }
+            }
+            for (; i < n; i++) {
+                int aRow = aOff + i * aStride + pc;
+                int cRow = cOff + i * cStride;
+                int bRow = bOff + pc * bStride;
+                for (int p = 0; p < kc; p++) {
+                    axpy(a[aRow + p], b, bRow, c, cRow, m);
+                    bRow += bStride;
+                }
+            }
+        }
+    }
+
+    @Override
+    public double dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc0 = FloatVector.zero(FSPECIES);
+        FloatVector acc1 = FloatVector.zero(FSPECIES);
+        int i = 0;
+        int bound2 = len - 2 * FLANES;
+        for (; i <= bound2; i += 2 * FLANES) {
+            acc0 = FloatVector.fromArray(FSPECIES, a, aOff + i)
+                    .fma(FloatVector.fromArray(FSPECIES, b, bOff + i), acc0);
+            acc1 = FloatVector.fromArray(FSPECIES, a, aOff + i + FLANES)
+                    .fma(FloatVector.fromArray(FSPECIES, b, bOff + i + FLANES), acc1);
+        }
+        for (; i < len; i += FLANES) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            acc0 = FloatVector.fromArray(FSPECIES, a, aOff + i, mask)
+                    .fma(FloatVector.fromArray(FSPECIES, b, bOff + i, mask), acc0);
+        }
+        return acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public double sum(float[] a, int aOff, int len) {
+        FloatVector acc = FloatVector.zero(FSPECIES);
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            acc = acc.add(FloatVector.fromArray(FSPECIES, a, aOff + i));
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            acc = acc.add(FloatVector.fromArray(FSPECIES, a, aOff + i, mask));
+        }
+        return acc.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void axpy(float s, float[] x, int xOff, float[] y, int yOff, int len) {
+        FloatVector vs = FloatVector.broadcast(FSPECIES, s);
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            FloatVector.fromArray(FSPECIES, x, xOff + i)
+                    .fma(vs, FloatVector.fromArray(FSPECIES, y, yOff + i))
+                    .intoArray(y, yOff + i);
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            FloatVector.fromArray(FSPECIES, x, xOff + i, mask)
+                    .fma(vs, FloatVector.fromArray(FSPECIES, y, yOff + i, mask))
+                    .intoArray(y, yOff + i, mask);
+        }
+    }
+
+    @Override
+    public void add(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            FloatVector.fromArray(FSPECIES, a, aOff + i)
+                    .add(FloatVector.fromArray(FSPECIES, b, bOff + i))
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            FloatVector.fromArray(FSPECIES, a, aOff + i, mask)
+                    .add(FloatVector.fromArray(FSPECIES, b, bOff + i, mask))
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void sub(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            FloatVector.fromArray(FSPECIES, a, aOff + i)
+                    .sub(FloatVector.fromArray(FSPECIES, b, bOff + i))
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            FloatVector.fromArray(FSPECIES, a, aOff + i, mask)
+                    .sub(FloatVector.fromArray(FSPECIES, b, bOff + i, mask))
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void mul(float[] a, int aOff, float[] b, int bOff, float[] c, int cOff, int len) {
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            FloatVector.fromArray(FSPECIES, a, aOff + i)
+                    .mul(FloatVector.fromArray(FSPECIES, b, bOff + i))
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            FloatVector.fromArray(FSPECIES, a, aOff + i, mask)
+                    .mul(FloatVector.fromArray(FSPECIES, b, bOff + i, mask))
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void scale(float s, float[] a, int aOff, float[] c, int cOff, int len) {
+        FloatVector vs = FloatVector.broadcast(FSPECIES, s);
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            FloatVector.fromArray(FSPECIES, a, aOff + i)
+                    .mul(vs)
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            FloatVector.fromArray(FSPECIES, a, aOff + i, mask)
+                    .mul(vs)
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    @Override
+    public void addScalar(float s, float[] a, int aOff, float[] c, int cOff, int len) {
+        FloatVector vs = FloatVector.broadcast(FSPECIES, s);
+        int i = 0;
+        int bound = FSPECIES.loopBound(len);
+        for (; i < bound; i += FLANES) {
+            FloatVector.fromArray(FSPECIES, a, aOff + i)
+                    .add(vs)
+                    .intoArray(c, cOff + i);
+        }
+        if (i < len) {
+            VectorMask<Float> mask = FSPECIES.indexInRange(i, len);
+            FloatVector.fromArray(FSPECIES, a, aOff + i, mask)
+                    .add(vs)
+                    .intoArray(c, cOff + i, mask);
+        }
+    }
+
+    /**
+     * Single precision variant of the matrix multiplication. Four rows of C are computed together: every vector
+     * loaded from a row of B is multiplied with a broadcast entry of each of
+     * the four rows of A and accumulated in registers. The shared dimension is
+     * split into blocks so the rows of B read stay in cache for all rows of A.
+     */
+    @Override
+    public void gemm(int n, int k, int m,
+            float[] a, int aOff, int aStride,
+            float[] b, int bOff, int bStride,
+            float[] c, int cOff, int cStride) {
+        if (m < FLANES || (long) n * k * m < Gemm.THRESHOLD) {
+            Gemm.naive(n, k, m, a, aOff, aStride, b, bOff, bStride, c, cOff, cStride);
+            return;
+        }
+        int bound = FSPECIES.loopBound(m);
+        for (int pc = 0; pc < k; pc += KC) {
+            int kc = Math.min(KC, k - pc);
+            int i = 0;
+            for (; i + ROWS <= n; i += ROWS) {
+                int a0 = aOff + i * aStride + pc;
+                int a1 = a0 + aStride;
+                int a2 = a1 + aStride;
+                int a3 = a2 + aStride;
+                int c0 = cOff + i * cStride;
+                int c1 = c0 + cStride;
+                int c2 = c1 + cStride;
+                int c3 = c2 + cStride;
+                int j = 0;
+                for (; j < bound; j += FLANES) {
+                    FloatVector acc0 = FloatVector.fromArray(FSPECIES, c, c0 + j);
+                    FloatVector acc1 = FloatVector.fromArray(FSPECIES, c, c1 + j);
+                    FloatVector acc2 = FloatVector.fromArray(FSPECIES, c, c2 + j);
+                    FloatVector acc3 = FloatVector.fromArray(FSPECIES, c, c3 + j);
+                    int bRow = bOff + pc * bStride + j;
+                    for (int p = 0; p < kc; p++) {
+                        FloatVector bv = FloatVector.fromArray(FSPECIES, b, bRow);
+                        acc0 = bv.fma(FloatVector.broadcast(FSPECIES, a[a0 + p]), acc0);
+                        acc1 = bv.fma(FloatVector.broadcast(FSPECIES, a[a1 + p]), acc1);
+                        acc2 = bv.fma(FloatVector.broadcast(FSPECIES, a[a2 + p]), acc2);
+                        acc3 = bv.fma(FloatVector.broadcast(FSPECIES, a[a3 + p]), acc3);
+                        bRow += bStride;
+                    }
+                    acc0.intoArray(c, c0 + j);
+                    acc1.intoArray(c, c1 + j);
+                    acc2.intoArray(c, c2 + j);
+                    acc3.intoArray(c, c3 + j);
+                }
+                if (j < m) {
+                    VectorMask<Float> mask = FSPECIES.indexInRange(j, m);
+                    FloatVector acc0 = FloatVector.fromArray(FSPECIES, c, c0 + j, mask);
+                    FloatVector acc1 = FloatVector.fromArray(FSPECIES, c, c1 + j, mask);
+                    FloatVector acc2 = FloatVector.fromArray(FSPECIES, c, c2 + j, mask);
+                    FloatVector acc3 = FloatVector.fromArray(FSPECIES, c, c3 + j, mask);
+                    int bRow = bOff + pc * bStride + j;
+                    for (int p = 0; p < kc; p++) {
+                        FloatVector bv = FloatVector.fromArray(FSPECIES, b, bRow, mask);
+                        acc0 = bv.fma(FloatVector.broadcast(FSPECIES, a[a0 + p]), acc0);
+                        acc1 = bv.fma(FloatVector.broadcast(FSPECIES, a[a1 + p]), acc1);
+                        acc2 = bv.fma(FloatVector.broadcast(FSPECIES, a[a2 + p]), acc2);
+                        acc3 = bv.fma(FloatVector.broadcast(FSPECIES, a[a3 + p]), acc3);
+                        bRow += bStride;
+                    }
+                    acc0.intoArray(c, c0 + j, mask);
+                    acc1.intoArray(c, c1 + j, mask);
+                    acc2.intoArray(c, c2 + j, mask);
+                    acc3.intoArray(c, c3 + j, mask);
+                }
+            }
+            for (; i < n; i++) {
+                int aRow = aOff + i * aStride + pc;
+                int cRow = cOff + i * cStride;
+                int bRow = bOff + pc * bStride;
+                for (int p = 0; p < kc; p++) {
+                    axpy(a[aRow + p], b, bRow, c, cRow, m);
+                    bRow += bStride;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes {@link #ROWS} rows at once with one vector accumulator each,
+     * so every block of x is loaded once for all of them. The remaining rows
+     * are computed in the same method instead of calling {@link #dot}, whose
+     * vectors are only kept in registers if the call happens to be inlined.
+     */
+    @Override
+    public void gemv(int n, int m, double[] a, int aOff, int aStride, double[] x, int xOff, double[] y, int yOff) {
+        int i = 0;
+        int bound = SPECIES.loopBound(m);
+        for (; i + ROWS - 1 < n; i += ROWS) {
+            int a0 = aOff + i * aStride;
+            int a1 = a0 + aStride;
+            int a2 = a1 + aStride;
+            int a3 = a2 + aStride;
+            DoubleVector acc0 = DoubleVector.zero(SPECIES);
+            DoubleVector acc1 = DoubleVector.zero(SPECIES);
+            DoubleVector acc2 = DoubleVector.zero(SPECIES);
+            DoubleVector acc3 = DoubleVector.zero(SPECIES);
+            int j = 0;
+            for (; j < bound; j += LANES) {
+                DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOff + j);
+                acc0 = DoubleVector.fromArray(SPECIES, a, a0 + j).fma(xv, acc0);
+                acc1 = DoubleVector.fromArray(SPECIES, a, a1 + j).fma(xv, acc1);
+                acc2 = DoubleVector.fromArray(SPECIES, a, a2 + j).fma(xv, acc2);
+                acc3 = DoubleVector.fromArray(SPECIES, a, a3 + j).fma(xv, acc3);
+            }
+            double s0 = acc0.reduceLanes(VectorOperators.ADD);
+            double s1 = acc1.reduceLanes(VectorOperators.ADD);
+            double s2 = acc2.reduceLanes(VectorOperators.ADD);
+            double s3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; j < m; j++) {
+                double xj = x[xOff + j];
+                s0 += a[a0 + j] * xj;
+                s1 += a[a1 + j] * xj;
+                s2 += a[a2 + j] * xj;
+                s3 += a[a3 + j] * xj;
+            }
+            y[yOff + i] = s0;
+            y[yOff + i + 1] = s1;
+            y[yOff + i + 2] = s2;
+            y[yOff + i + 3] = s3;
+        }
+        for (; i < n; i++) {
+            int a0 = aOff + i * aStride;
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int j = 0;
+            for (; j < bound; j += LANES) {
+                acc = DoubleVector.fromArray(SPECIES, a, a0 + j).fma(DoubleVector.fromArray(SPECIES, x, xOff + j), acc);
+            }
+            double s = acc.reduceLanes(VectorOperators.ADD);
+            for (; j < m; j++) {
+                s += a[a0 + j] * x[xOff + j];
+            }
+            y[yOff + i] = s;
+        }
+    }
+
+    @Override
+    public void gemv(int n, int m, float[] a, int aOff, int aStride, float[] x, int xOff, float[] y, int yOff) {
+        int i = 0;
+        int bound = FSPECIES.loopBound(m);
+        for (; i + ROWS - 1 < n; i += ROWS) {
+            int a0 = aOff + i * aStride;
+            int a1 = a0 + aStride;
+            int a2 = a1 + aStride;
+            int a3 = a2 + aStride;
+            FloatVector acc0 = FloatVector.zero(FSPECIES);
+            FloatVector acc1 = FloatVector.zero(FSPECIES);
+            FloatVector acc2 = FloatVector.zero(FSPECIES);
+            FloatVector acc3 = FloatVector.zero(FSPECIES);
+            int j = 0;
+            for (; j < bound; j += FLANES) {
+                FloatVector xv = FloatVector.fromArray(FSPECIES, x, xOff + j);
+                acc0 = FloatVector.fromArray(FSPECIES, a, a0 + j).fma(xv, acc0);
+                acc1 = FloatVector.fromArray(FSPECIES, a, a1 + j).fma(xv, acc1);
+                acc2 = FloatVector.fromArray(FSPECIES, a, a2 + j).fma(xv, acc2);
+                acc3 = FloatVector.fromArray(FSPECIES, a, a3 + j).fma(xv, acc3);
+            }
+            float s0 = acc0.reduceLanes(VectorOperators.ADD);
+            float s1 = acc1.reduceLanes(VectorOperators.ADD);
+            float s2 = acc2.reduceLanes(VectorOperators.ADD);
+            float s3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; j < m; j++) {
+                float xj = x[xOff + j];
+                s0 += a[a0 + j] * xj;
+                s1 += a[a1 + j] * xj;
+                s2 += a[a2 + j] * xj;
+                s3 += a[a3 + j] * xj;
+            }
+            y[yOff + i] = s0;
+            y[yOff + i + 1] = s1;
+            y[yOff + i + 2] = s2;
+            y[yOff + i + 3] = s3;
+        }
+        for (; i < n; i++) {
+            int a0 = aOff + i * aStride;
+            FloatVector acc = FloatVector.zero(FSPECIES);
+            int j = 0;
+            for (; j < bound; j += FLANES) {
+                acc = FloatVector.fromArray(FSPECIES, a, a0 + j).fma(FloatVector.fromArray(FSPECIES, x, xOff + j), acc);
+            }
+            float s = acc.reduceLanes(VectorOperators.ADD);
+            for (; j < m; j++) {
+                s += a[a0 + j] * x[xOff + j];
+            }
+            y[yOff + i] = s;
+        }
+    }
+}
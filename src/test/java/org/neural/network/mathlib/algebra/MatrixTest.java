@@ -0,0 +1,514 @@
+package org.neural.network.mathlib.algebra;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+class MatrixTest {
+
+    private static Matrix sequence(int n, int m) {
+        Matrix A = new Matrix(n, m);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                A.set(i, j, i * m + j + 1);
+            }
+        }
+        return A;
+    }
+
+    private static Matrix random(Random rand, int n, int m) {
+        Matrix A = new Matrix(n, m);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                A.set(i, j, rand.nextGaussian());
+            }
+        }
+        return A;
+    }
+
+    @Test
+    void mulMat() {
+        Matrix A = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        Matrix B = new Matrix(new double[][]{{5, 6}, {7, 8}});
+
+        Assertions.assertEquals(new Matrix(new double[][]{{19, 22}, {43, 50}}), A.mulMat(B));
+    }
+
+    @Test
+    void mulMatLargeShapes() {
+        Random rand = new Random(7);
+        int[][] shapes = {{30, 784, 10}, {67, 301, 533}, {5, 1000, 7}, {130, 17, 1030}};
+        for (int[] shape : shapes) {
+            Matrix A = random(rand, shape[0], shape[1]);
+            Matrix B = random(rand, shape[1], shape[2]);
+            Matrix C = A.mulMat(B);
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[2]; j++) {
+                    double expected = 0;
+                    for (int k = 0; k < shape[1]; k++) {
+                        expected += A.get(i, k) * B.get(k, j);
+                    }
+                    Assertions.assertEquals(expected, C.get(i, j), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    void elementwiseOddSizes() {
+        Random rand = new Random(11);
+        for (int size = 1; size < 40; size++) {
+            Matrix A = random(rand, 3, size);
+            Matrix B = random(rand, 3, size);
+            Vector b = new Vector(A.getCols()[0].getArray());
+            Vector x = new Vector(A.viewRow(0).getArray()[0]);
+            Vector y = new Vector(B.viewRow(0).getArray()[0]);
+            double dot = 0;
+            double sum = 0;
+            for (int j = 0; j < size; j++) {
+                dot += x.getArray()[j] * y.getArray()[j];
+                sum += A.get(1, j);
+                Assertions.assertEquals(A.get(2, j) + B.get(2, j), A.addMat(B).get(2, j));
+                Assertions.assertEquals(A.get(2, j) - B.get(2, j), A.subMat(B).get(2, j));
+                Assertions.assertEquals(A.get(2, j) * B.get(2, j), A.hadamardMat(B).get(2, j));
+                Assertions.assertEquals(A.get(2, j) * 3, A.mulSca(3).get(2, j));
+                Assertions.assertEquals(A.get(2, j) + b.getArray()[2], A.addVec(b).get(2, j));
+            }
+            Assertions.assertEquals(dot, x.dotVec(y), 1e-12);
+            Assertions.assertEquals(dot, A.viewRow(0).mulVec(y).getArray()[0], 1e-12);
+            Assertions.assertEquals(sum, A.sumCols().getArray()[1], 1e-12);
+        }
+    }
+
+    @Test
+    void fusedInPlaceUpdates() {
+        Random rand = new Random(17);
+        Matrix W = random(rand, 7, 9);
+        Matrix G = random(rand, 7, 9);
+        Matrix expected = W.mulSca(0.9).addMat(G.mulSca(-0.2));
+        Matrix single = W.toPrecision(Precision.SINGLE).scaleAddScaledInPlace(0.9, -0.2, G.toPrecision(Precision.SINGLE));
+
+        W.scaleAddScaledInPlace(0.9, -0.2, G);
+        for (int i = 0; i < 7; i++) {
+            for (int j = 0; j < 9; j++) {
+                Assertions.assertEquals(expected.get(i, j), W.get(i, j), 1e-12);
+                Assertions.assertEquals(expected.get(i, j), single.get(i, j), 1e-5);
+            }
+        }
+        W = random(rand, 7, 9);
+        Matrix view = W.viewBlock(1, 2, 4, 5);
+        Matrix viewExpected = view.map(w -> Math.max(w, 0)).mulSca(0.9).addMat(G.viewBlock(0, 0, 4, 5).mulSca(-0.2));
+        view.zipInPlace(G.viewBlock(0, 0, 4, 5), (w, g) -> 0.9 * Math.max(w, 0) - 0.2 * g);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 5; j++) {
+                Assertions.assertEquals(viewExpected.get(i, j), W.get(i + 1, j + 2), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    void thresholdsArePerOperation() {
+        long gemm = Parallelism.getThreshold(Backends.Operation.GEMM);
+        long elementwise = Parallelism.getThreshold(Backends.Operation.ELEMENTWISE);
+        try {
+            Parallelism.setThreshold(Backends.Operation.ELEMENTWISE, 1 << 10);
+            Assertions.assertEquals(1 << 10, Parallelism.getThreshold(Backends.Operation.ELEMENTWISE));
+            Assertions.assertEquals(gemm, Parallelism.getThreshold(Backends.Operation.GEMM));
+            Assertions.assertEquals(gemm, Parallelism.getThreshold());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Parallelism.setThreshold(Backends.Operation.REDUCTION, 0));
+        } finally {
+            Parallelism.setThreshold(Backends.Operation.ELEMENTWISE, elementwise);
+        }
+    }
+
+    @Test
+    void parallelResultsIndependentOfThreadCount() {
+        Random rand = new Random(3);
+        Matrix A = random(rand, 30, 784);
+        Matrix B = random(rand, 784, 517);
+        Matrix sequential = A.mulMat(B);
+        ForkJoinPool previousPool = Parallelism.getPool();
+        long previousThreshold = Parallelism.getThreshold();
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(4);
+        try {
+            Parallelism.setThreshold(1 << 12);
+            Parallelism.setPool(single);
+            Matrix product1 = A.mulMat(B);
+            Matrix sum1 = product1.addMat(B.viewBlock(0, 0, 30, 517)).hadamardMat(product1);
+            Parallelism.setPool(many);
+            Matrix product4 = A.mulMat(B);
+            Matrix sum4 = product4.addMat(B.viewBlock(0, 0, 30, 517)).hadamardMat(product4);
+
+            Assertions.assertEquals(product1, product4);
+            Assertions.assertEquals(sum1, sum4);
+            Assertions.assertEquals(product1.sumCols(), product4.sumCols());
+            for (int i = 0; i < 30; i++) {
+                for (int j = 0; j < 517; j++) {
+                    Assertions.assertEquals(sequential.get(i, j), product4.get(i, j), 1e-9);
+                }
+            }
+        } finally {
+            Parallelism.setPool(previousPool);
+            Parallelism.setThreshold(previousThreshold);
+            single.shutdown();
+            many.shutdown();
+        }
+    }
+
+    @Test
+    void transposedProducts() {
+        Random rand = new Random(5);
+        int[][] shapes = {{30, 784, 10}, {3, 5, 7}, {10, 30, 1}, {61, 129, 300}};
+        for (int[] shape : shapes) {
+            Matrix A = random(rand, shape[0], shape[1]);
+            Matrix B = random(rand, shape[0], shape[2]);
+            Matrix C = random(rand, shape[2], shape[1]);
+            assertClose(A.transpose().mulMat(B), A.mulTransposeA(B));
+            assertClose(B.transpose().mulMat(A), B.mulTransposeA(A));
+            assertClose(A.mulMat(C.transpose()), A.mulTransposeB(C));
+            assertClose(A.viewBlock(1, 1, shape[0] - 1, shape[1] - 1).mulMat(C.viewBlock(0, 1, shape[2], shape[1] - 1).transpose()),
+                    A.viewBlock(1, 1, shape[0] - 1, shape[1] - 1).mulTransposeB(C.viewBlock(0, 1, shape[2], shape[1] - 1)));
+        }
+    }
+
+    private static void assertClose(Matrix expected, Matrix actual) {
+        assertClose(expected, actual, 1e-9);
+    }
+
+    private static void assertClose(Matrix expected, Matrix actual, double delta) {
+        Assertions.assertEquals(expected.getN(), actual.getN());
+        Assertions.assertEquals(expected.getM(), actual.getM());
+        for (int i = 0; i < expected.getN(); i++) {
+            for (int j = 0; j < expected.getM(); j++) {
+                Assertions.assertEquals(expected.get(i, j), actual.get(i, j), delta);
+            }
+        }
+    }
+
+    @Test
+    void singlePrecision() {
+        Random rand = new Random(13);
+        int[][] shapes = {{30, 784, 10}, {3, 5, 7}, {67, 301, 133}};
+        for (int[] shape : shapes) {
+            Matrix A = random(rand, shape[0], shape[1]);
+            Matrix B = random(rand, shape[1], shape[2]);
+            Matrix fA = A.toPrecision(Precision.SINGLE);
+            Matrix fB = B.toPrecision(Precision.SINGLE);
+            Matrix fC = fA.mulMat(fB);
+
+            Assertions.assertEquals(Precision.SINGLE, fC.getPrecision());
+            Assertions.assertNull(fC.getData());
+            Matrix expected = fA.toPrecision(Precision.DOUBLE).mulMat(fB.toPrecision(Precision.DOUBLE));
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[2]; j++) {
+                    Assertions.assertEquals(expected.get(i, j), fC.get(i, j), 1e-3);
+                }
+            }
+            Matrix D = random(rand, shape[0], shape[2]).toPrecision(Precision.SINGLE);
+            Matrix E = random(rand, shape[1], shape[2]).toPrecision(Precision.SINGLE);
+            assertClose(fA.toPrecision(Precision.DOUBLE).transpose().mulMat(D.toPrecision(Precision.DOUBLE)), fA.mulTransposeA(D), 1e-3);
+            assertClose(D.toPrecision(Precision.DOUBLE).mulMat(E.toPrecision(Precision.DOUBLE).transpose()), D.mulTransposeB(E), 1e-3);
+        }
+
+        Matrix A = sequence(3, 4);
+        Matrix fA = A.toPrecision(Precision.SINGLE);
+        Assertions.assertSame(fA, fA.toPrecision(Precision.SINGLE));
+        Assertions.assertEquals(A, fA);
+        Assertions.assertEquals(A.addMat(A), fA.addMat(fA));
+        Assertions.assertEquals(A.subMat(A.mulSca(2)), fA.subMat(A.mulSca(2)));
+        Assertions.assertEquals(Precision.SINGLE, fA.subMat(A).getPrecision());
+        Assertions.assertEquals(A.hadamardMat(A), fA.hadamardMat(fA));
+        Assertions.assertEquals(A.addVec(new Vector(1, 2, 3)), fA.addVec(new Vector(1, 2, 3)));
+        Assertions.assertEquals(A.sumCols(), fA.sumCols());
+        Assertions.assertEquals(A.mulVec(new Vector(1, 2, 3, 4)), fA.mulVec(new Vector(1, 2, 3, 4)));
+        Assertions.assertEquals(A.viewBlock(1, 1, 2, 2), fA.viewBlock(1, 1, 2, 2));
+        Assertions.assertEquals(A.addScaledInPlace(0.5, A), fA.addScaledInPlace(0.5, fA));
+        Assertions.assertEquals((float) 0.1, new Matrix(1, 1, Precision.SINGLE).fill(0.1).get(0, 0));
+    }
+
+    @Test
+    void offHeapStorage() {
+        Random rand = new Random(17);
+        int[][] shapes = {{30, 784, 10}, {3, 5, 7}, {61, 129, 300}};
+        for (int[] shape : shapes) {
+            Matrix A = random(rand, shape[0], shape[1]);
+            Matrix B = random(rand, shape[1], shape[2]);
+            Matrix D = random(rand, shape[0], shape[2]);
+            Matrix oA = A.toOffHeap();
+            Matrix oB = B.toOffHeap();
+            Matrix oD = D.toOffHeap();
+
+            Assertions.assertTrue(oA.isOffHeap());
+            Assertions.assertNull(oA.getData());
+            assertClose(A.mulMat(B), oA.mulMat(B));
+            assertClose(A.mulMat(B), A.mulMatInto(oB, Matrix.allocateOffHeap(shape[0], shape[2])));
+            assertClose(A.mulTransposeA(D), oA.mulTransposeA(oD));
+            assertClose(D.mulTransposeB(B), oD.mulTransposeB(oB));
+        }
+
+        Matrix A = sequence(4, 5);
+        Matrix oA = Matrix.allocateOffHeap(4, 5).copyFrom(A);
+        Assertions.assertEquals(1, oA.getBuffer().get(0));
+        Assertions.assertEquals(A, oA);
+        Assertions.assertEquals(A.addMat(A), oA.addMat(oA));
+        Assertions.assertEquals(A.hadamardMat(A), oA.hadamardMat(A));
+        Assertions.assertEquals(A.addVec(new Vector(1, 2, 3, 4)), oA.addVec(new Vector(1, 2, 3, 4)));
+        Assertions.assertEquals(A.sumCols(), oA.sumCols());
+        Assertions.assertEquals(A.mulVec(new Vector(1, 2, 3, 4, 5)), oA.mulVec(new Vector(1, 2, 3, 4, 5)));
+        Assertions.assertEquals(A.viewBlock(1, 1, 2, 3), oA.viewBlock(1, 1, 2, 3));
+        Assertions.assertEquals(A.viewBlock(1, 1, 2, 3).mulSca(2), oA.viewBlock(1, 1, 2, 3).mulScaInPlace(2));
+        Assertions.assertEquals(14, oA.get(1, 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> oA.viewBlock(0, 0, 4, 4).mulMatInto(A.viewBlock(0, 0, 4, 4), oA.viewBlock(0, 1, 4, 4)));
+
+        Matrix fA = Matrix.allocateOffHeap(3, 4, Precision.SINGLE).copyFrom(sequence(3, 4));
+        Assertions.assertEquals(Precision.SINGLE, fA.getPrecision());
+        Assertions.assertNotNull(fA.getFloatBuffer());
+        Assertions.assertEquals(sequence(3, 4).mulMat(sequence(4, 2)), fA.mulMat(sequence(4, 2)));
+        Assertions.assertEquals((float) 0.1, fA.fill(0.1).get(2, 3));
+    }
+
+    @Test
+    void sparseProducts() {
+        Random rand = new Random(19);
+        int[][] shapes = {{30, 784, 10}, {3, 5, 7}, {10, 30, 200}};
+        for (int[] shape : shapes) {
+            Matrix A = random(rand, shape[0], shape[1]);
+            Matrix X = random(rand, shape[1], shape[2]).map(x -> x > 0.8 ? x : 0);
+            Matrix E = random(rand, shape[0], shape[2]);
+            SparseMatrix S = new SparseMatrix(X);
+
+            Assertions.assertEquals(X, S.toDense());
+            Assertions.assertEquals(SparseMatrix.density(X), S.getDensity());
+            assertClose(A.mulMat(X), A.mulMat(S));
+            assertClose(E.mulTransposeB(X), E.mulTransposeB(S));
+            assertClose(A.mulMat(X), A.toOffHeap().mulMatInto(S, Matrix.allocateOffHeap(shape[0], shape[2])));
+            assertClose(A.mulMat(X), A.toPrecision(Precision.SINGLE).mulMat(S), 1e-3);
+        }
+
+        SparseMatrix S = new SparseMatrix(2, 3, new int[]{0, 1, 3}, new int[]{2, 0, 1}, new double[]{5, 6, 7});
+        Assertions.assertEquals(new Matrix(new double[][]{{0, 0, 5}, {6, 7, 0}}), S.toDense());
+        Assertions.assertEquals(S, new SparseMatrix(S.toDense()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sequence(2, 3).mulMat(S));
+    }
+
+    @Test
+    void fusedLayer() {
+        Random rand = new Random(23);
+        int[][] shapes = {{30, 784, 1}, {30, 784, 300}, {10, 30, 7}, {3, 5, 129}};
+        for (int[] shape : shapes) {
+            Matrix W = random(rand, shape[0], shape[1]);
+            Matrix X = random(rand, shape[1], shape[2]).map(x -> x > 0.5 ? x : 0);
+            double[] bias = new double[shape[0]];
+            for (int i = 0; i < bias.length; i++) {
+                bias[i] = rand.nextGaussian();
+            }
+            Vector b = new Vector(bias);
+            Matrix expectedValues = W.mulMat(X).addVec(b);
+            Matrix expected = expectedValues.map(Math::tanh);
+
+            Matrix values = new Matrix(shape[0], shape[2]);
+            Matrix activations = new Matrix(shape[0], shape[2]);
+            Assertions.assertSame(activations, W.mulMatAddVecMapInto(X, b, Math::tanh, values, activations));
+            assertClose(expectedValues, values);
+            assertClose(expected, activations);
+
+            W.mulMatAddVecMapInto(new SparseMatrix(X), b, Math::tanh, values, activations);
+            assertClose(expectedValues, values);
+            assertClose(expected, activations);
+
+            Matrix fValues = new Matrix(shape[0], shape[2], Precision.SINGLE);
+            W.toPrecision(Precision.SINGLE).mulMatAddVecMapInto(X, b, Math::tanh, fValues, fValues);
+            assertClose(expected, fValues, 1e-3);
+
+            Matrix oValues = Matrix.allocateOffHeap(shape[0], shape[2]);
+            W.mulMatAddVecMapInto(X.toOffHeap(), b, Math::tanh, oValues, activations);
+            assertClose(expectedValues, oValues);
+            assertClose(expected, activations);
+        }
+        Matrix W = sequence(2, 3);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> W.mulMatAddVecMapInto(sequence(3, 2), new Vector(1, 2), Math::tanh, new Matrix(2, 2), W.viewBlock(0, 0, 2, 2)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> W.mulMatAddVecMapInto(sequence(3, 2), new Vector(1, 2, 3), Math::tanh, new Matrix(2, 2), new Matrix(2, 2)));
+    }
+
+    @Test
+    void viewsShareStorage() {
+        Matrix A = sequence(3, 4);
+
+        Matrix row = A.viewRow(1);
+        Matrix col = A.viewCol(2);
+        Matrix block = A.viewBlock(1, 1, 2, 2);
+
+        Assertions.assertEquals(new Matrix(new double[][]{{5, 6, 7, 8}}), row);
+        Assertions.assertEquals(new Matrix(new double[][]{{3}, {7}, {11}}), col);
+        Assertions.assertEquals(new Matrix(new double[][]{{6, 7}, {10, 11}}), block);
+
+        block.set(0, 1, 42);
+        Assertions.assertEquals(42, A.get(1, 2));
+        Assertions.assertEquals(42, col.get(1, 0));
+    }
+
+    @Test
+    void operationsOnViews() {
+        Matrix A = sequence(4, 5);
+        Matrix block = A.viewBlock(1, 1, 2, 3);
+        Matrix copy = new Matrix(block.getArray());
+
+        Assertions.assertFalse(block.isContiguous());
+        Assertions.assertEquals(copy.mulMat(copy.transpose()), block.mulMat(block.transpose()));
+        Assertions.assertEquals(copy.addVec(new Vector(1, 2)), block.addVec(new Vector(1, 2)));
+        Assertions.assertEquals(copy.hadamardMat(copy), block.hadamardMat(block));
+        Assertions.assertEquals(copy.sumCols(), block.sumCols());
+        Assertions.assertArrayEquals(copy.getCols(), block.getCols());
+    }
+
+    @Test
+    void intoAndInPlaceOperations() {
+        Matrix A = sequence(3, 4);
+        Matrix B = sequence(3, 4).mulSca(0.5);
+        Matrix C = new Matrix(3, 4);
+
+        Assertions.assertSame(C, A.addMatInto(B, C));
+        Assertions.assertEquals(A.addMat(B), C);
+        Assertions.assertEquals(A.subMat(B), A.subMatInto(B, C));
+        Assertions.assertEquals(A.hadamardMat(B), A.hadamardMatInto(B, C));
+        Assertions.assertEquals(A.addVec(new Vector(1, 2, 3)), A.addVecInto(new Vector(1, 2, 3), C));
+        Assertions.assertEquals(A.mulMat(B.transpose()), A.mulMatInto(B.transpose(), new Matrix(3, 3)));
+
+        Matrix expected = A.addMat(B.mulSca(-2));
+        Assertions.assertSame(A, A.addScaledInPlace(-2, B));
+        Assertions.assertEquals(expected, A);
+        Assertions.assertEquals(expected.mulSca(3), A.mulScaInPlace(3));
+
+        Matrix D = sequence(4, 6);
+        D.viewBlock(0, 0, 4, 3).addMatInPlace(D.viewBlock(0, 3, 4, 3));
+        Assertions.assertEquals(5, D.get(0, 0));
+        Assertions.assertEquals(4, D.get(0, 3));
+    }
+
+    @Test
+    void aliasingChecks() {
+        Matrix A = sequence(4, 4);
+        Matrix left = A.viewBlock(0, 0, 4, 3);
+        Matrix right = A.viewBlock(0, 1, 4, 3);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> left.addMatInto(left, right));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> A.mulMatInto(A, A));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> A.viewBlock(0, 0, 2, 2).mulMatInto(A.viewBlock(2, 2, 2, 2), A.viewBlock(1, 1, 2, 2)));
+        Assertions.assertDoesNotThrow(() -> A.viewBlock(0, 0, 2, 2).mulMatInto(A.viewBlock(0, 2, 2, 2), A.viewBlock(2, 0, 2, 2)));
+    }
+
+    @Test
+    void backendsAgree() {
+        Random rand = new Random(17);
+        int n = 37, k = 70, m = 45;
+        double[] a = random(rand, n, k).getData();
+        double[] b = random(rand, k, m).getData();
+        double[] expected = new double[n * m];
+        ComputeBackend naive = new NaiveBackend();
+        naive.gemm(n, k, m, a, 0, k, b, 0, m, expected, 0, m);
+
+        Assertions.assertFalse(Backends.getAvailable().isEmpty());
+        for (ComputeBackend backend : Backends.getAvailable()) {
+            double[] c = new double[n * m];
+            backend.gemm(n, k, m, a, 0, k, b, 0, m, c, 0, m);
+            Assertions.assertArrayEquals(expected, c, 1e-9, backend.name());
+
+            double[] sum = new double[n * k];
+            backend.add(a, 0, a, 0, sum, 0, n * k);
+            naive.axpy(-2, a, 0, sum, 0, n * k);
+            Assertions.assertEquals(0, naive.dot(sum, 0, sum, 0, n * k), 1e-20, backend.name());
+            Assertions.assertEquals(naive.dot(a, 0, b, 0, n * k), backend.dot(a, 0, b, 0, n * k), 1e-9, backend.name());
+
+            double[] y = new double[n];
+            double[] expectedY = new double[n];
+            naive.gemv(n, k - 3, a, 3, k, b, 5, expectedY, 0);
+            backend.gemv(n, k - 3, a, 3, k, b, 5, y, 0);
+            Assertions.assertArrayEquals(expectedY, y, 1e-9, backend.name());
+        }
+        for (Backends.Operation operation : Backends.Operation.values()) {
+            for (Backends.SizeClass size : Backends.SizeClass.values()) {
+                Assertions.assertTrue(Backends.getAvailable().contains(Backends.getSelected(operation, size)));
+            }
+        }
+    }
+
+    @Test
+    void fusedMatrixVectorLayer() {
+        Random rand = new Random(19);
+        Matrix W = random(rand, 13, 29);
+        Vector x = new Vector(random(rand, 29, 1).getData());
+        Vector b = new Vector(random(rand, 13, 1).getData());
+        Vector values = new Vector(13);
+        Vector activations = new Vector(13);
+        Matrix expected = W.mulMat(new Matrix(x)).addVec(b);
+        for (Matrix A : new Matrix[]{W, W.toPrecision(Precision.SINGLE), W.toOffHeap()}) {
+            A.mulVecAddVecMapInto(x, b, Math::tanh, values, activations);
+            for (int i = 0; i < 13; i++) {
+                Assertions.assertEquals(expected.get(i, 0), values.getArray()[i], 1e-5);
+                Assertions.assertEquals(Math.tanh(values.getArray()[i]), activations.getArray()[i], 1e-12);
+            }
+        }
+        Matrix Q = random(rand, 13, 13);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Q.mulVecAddVecMapInto(values, b, Math::tanh, values, values));
+    }
+
+    @Test
+    void lazyExpressions() {
+        Random rand = new Random(13);
+        for (int[] shape : new int[][]{{3, 5}, {7, 300}, {40, 513}}) {
+            Matrix A = random(rand, shape[0], shape[1]);
+            Matrix B = random(rand, shape[0], shape[1]);
+            Matrix C = random(rand, shape[0], shape[1]);
+            Matrix expected = A.subMat(B).hadamardMat(C.map(Math::tanh)).mulSca(0.5).addMat(A.hadamardMat(B));
+
+            Expression E = A.lazy().subMat(B).hadamardMat(C.lazy().map(Math::tanh)).mulSca(0.5)
+                    .addMat(A.lazy().hadamardMat(B));
+            assertClose(expected, E.evaluate(), 1e-12);
+            assertClose(expected, E.evaluateInto(Matrix.allocateOffHeap(shape[0], shape[1])), 1e-12);
+            assertClose(expected, E.evaluateInto(new Matrix(shape[0], shape[1], Precision.SINGLE)), 1e-5);
+
+            Matrix S = A.toPrecision(Precision.SINGLE);
+            assertClose(A.subMat(B), S.lazy().subMat(B).evaluate(), 1e-6);
+            Assertions.assertEquals(Precision.SINGLE, S.lazy().subMat(B).evaluate().getPrecision());
+
+            // the result may be an operand that is read again after the first
+            // operation of the chain
+            Matrix D = new Matrix(shape[0], shape[1]).copyFrom(A);
+            D.lazy().addMat(B).hadamardMat(D).evaluateInto(D);
+            assertClose(A.addMat(B).hadamardMat(A), D, 1e-12);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sequence(2, 3).lazy().addMat(sequence(3, 2)));
+    }
+
+    @Test
+    void workspaceReuse() {
+        Workspace workspace = new Workspace();
+        Matrix A = workspace.borrow(3, 4, Precision.DOUBLE);
+        Matrix B = workspace.borrow(3, 4, Precision.SINGLE);
+        workspace.release(A);
+        workspace.release(B);
+
+        Assertions.assertSame(A, workspace.borrow(3, 4, Precision.DOUBLE));
+        Assertions.assertSame(B, workspace.borrow(3, 4, Precision.SINGLE));
+        Assertions.assertNotSame(A, workspace.borrow(4, 3, Precision.DOUBLE));
+        Assertions.assertEquals(5, workspace.getBorrows());
+        Assertions.assertEquals(3, workspace.getAllocations());
+
+        workspace.release(A);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> workspace.release(A));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> workspace.release(sequence(4, 4).viewBlock(1, 1, 2, 2)));
+    }
+
+    @Test
+    void mismatchedDimensions() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sequence(2, 3).mulMat(sequence(2, 3)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sequence(2, 3).addMat(sequence(3, 2)));
+    }
+}
@@ -0,0 +1,30 @@
+package org.neural.network.mathlib.algebra;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class VectorTest {
+
+    @Test
+    void intoAndInPlaceOperations() {
+        Vector a = new Vector(1, 2, 3);
+        Vector b = new Vector(4, 5, 6);
+        Vector c = new Vector(3);
+
+        Assertions.assertSame(c, a.addVecInto(b, c));
+        Assertions.assertEquals(new Vector(5, 7, 9), c);
+        Assertions.assertEquals(new Vector(-3, -3, -3), a.subVecInto(b, c));
+        Assertions.assertEquals(new Vector(4, 10, 18), a.hadamardVecInto(b, c));
+        Assertions.assertEquals(new Vector(2, 4, 6), a.mulScaInto(2, c));
+
+        Assertions.assertSame(a, a.addScaledInPlace(-0.5, b));
+        Assertions.assertEquals(new Vector(-1, -0.5, 0), a);
+        Assertions.assertEquals(new Vector(3, 4.5, 6), a.addVecInPlace(b));
+    }
+
+    @Test
+    void mismatchedSizes() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Vector(1, 2).addVecInto(new Vector(1, 2), new Vector(3)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Vector(1, 2).addScaledInPlace(1, new Vector(3)));
+    }
+}
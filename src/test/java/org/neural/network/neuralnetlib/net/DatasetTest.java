@@ -0,0 +1,45 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.mathlib.algebra.Vector;
+
+import java.util.Random;
+
+class DatasetTest {
+
+    @Test
+    void shuffleKeepsSamplesTogether() {
+        for (Precision precision : Precision.values()) {
+            Vector[] in = new Vector[10];
+            Vector[] out = new Vector[10];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = new Vector(new double[]{i, 2 * i, 3 * i});
+                out[i] = new Vector(new double[]{-i});
+            }
+            Dataset data = new Dataset(in, out, precision);
+            data.shuffle(new Random(42));
+
+            boolean[] seen = new boolean[in.length];
+            for (int j = 0; j < data.size(); j++) {
+                int i = (int) data.getInputs().get(0, j);
+                seen[i] = true;
+                Assertions.assertEquals(3 * i, data.getInputs().get(2, j));
+                Assertions.assertEquals(-i, data.getOutputs().get(0, j));
+            }
+            for (boolean s : seen) {
+                Assertions.assertTrue(s);
+            }
+
+            Matrix batch = data.getInputs(4, 7);
+            Assertions.assertEquals(3, batch.getN());
+            Assertions.assertEquals(3, batch.getM());
+            Assertions.assertEquals(data.getInputs().get(1, 5), batch.get(1, 1));
+            Assertions.assertEquals(data.getOutputs().get(0, 6), data.getOutputs(4, 7).get(0, 2));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Dataset(new Matrix(2, 3), new Matrix(1, 4)));
+    }
+}
@@ -0,0 +1,66 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Precision;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.options.activation.SigmoidFunction;
+import org.neural.network.neuralnetlib.options.initialization.NormalizedInitialization;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+class InferencePlanTest {
+
+    @Test
+    void planMatchesSession() {
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork net = new NeuralNetwork(new SigmoidFunction(), new NormalizedInitialization(), precision, 12, 7, 3);
+            InferencePlan plan = net.compile(4);
+            Random rand = new Random(3);
+            Matrix in = new Matrix(12, 4);
+            for (int i = 0; i < 12; i++) {
+                for (int j = 0; j < 4; j++) {
+                    in.set(i, j, rand.nextDouble());
+                }
+            }
+            double tolerance = precision == Precision.SINGLE ? 1e-6 : 1e-12;
+            Matrix expected = new Matrix(3, 4).copyFrom(net.newSession().feedforward(in));
+            Matrix batch = plan.predict(in.viewBlock(0, 0, 12, 3));
+            double[] out = new double[3];
+            for (int j = 0; j < 4; j++) {
+                plan.copy().predict(in.getCols()[j].getArray(), out);
+                for (int i = 0; i < 3; i++) {
+                    Assertions.assertEquals(expected.get(i, j), out[i], tolerance);
+                    if (j < 3) {
+                        Assertions.assertEquals(expected.get(i, j), batch.get(i, j), tolerance);
+                    }
+                }
+            }
+
+            net.getWeights()[0].fill(0);
+            plan.predict(in.getCols()[0].getArray(), out);
+            Assertions.assertEquals(expected.get(0, 0), out[0], tolerance);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> plan.predict(new Matrix(12, 5)));
+        }
+    }
+
+    @Test
+    void predictDoesNotAllocate() {
+        InferencePlan plan = new NeuralNetwork(50, 20, 10).compile(1);
+        double[] in = new Vector(50).getArray();
+        double[] out = new double[10];
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int k = 0; k < 20_000; k++) {
+            plan.predict(in, out);
+        }
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int k = 0; k < 10_000; k++) {
+            plan.predict(in, out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        Assertions.assertTrue(allocated < 10_000, "Allocated " + allocated + " bytes");
+    }
+}
@@ -0,0 +1,104 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class InferenceSessionTest {
+
+    @Test
+    void concurrentSessionsMatchFeedforward() throws Exception {
+        NeuralNetwork net = new NeuralNetwork(20, 8, 4);
+        Random rand = new Random(7);
+        Matrix in = new Matrix(20, 5);
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 5; j++) {
+                in.set(i, j, rand.nextDouble());
+            }
+        }
+        Matrix expected = new Matrix(4, 5).copyFrom(net.feedforward(in));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    InferenceSession session = net.newSession();
+                    for (int k = 0; k < 200; k++) {
+                        if (!session.feedforward(in).equals(expected)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assertions.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(expected.get(2, 3), net.newSession().predict(in.getCols()[3]).getArray()[2], 1e-12);
+    }
+
+    @Test
+    void preallocatedWidthsMatchFeedforward() {
+        NeuralNetwork net = new NeuralNetwork(20, 8, 4);
+        Random rand = new Random(5);
+        InferenceSession session = net.newSession(6);
+        for (int m : new int[] {6, 1, 3, 6, 9}) {
+            Matrix in = new Matrix(20, m);
+            for (int i = 0; i < 20; i++) {
+                for (int j = 0; j < m; j++) {
+                    in.set(i, j, rand.nextDouble());
+                }
+            }
+            Matrix expected = net.feedforward(in);
+            Matrix out = session.feedforward(in);
+            Assertions.assertEquals(expected, out);
+            if (m <= 6) {
+                Assertions.assertSame(out, session.feedforward(in));
+            }
+        }
+    }
+
+    @Test
+    void sessionKeepsSnapshotDuringUpdate() {
+        NeuralNetwork net = new NeuralNetwork(20, 8, 4);
+        Matrix in = new Matrix(20, 2);
+        in.set(3, 0, 1);
+        in.set(7, 1, 1);
+        InferenceSession session = net.newSession();
+        Matrix before = new Matrix(4, 2).copyFrom(session.feedforward(in));
+
+        net.beginUpdate();
+        net.getWeights()[1].mulScaInPlace(2);
+        Assertions.assertEquals(before, session.feedforward(in));
+        net.endUpdate();
+
+        Assertions.assertNotEquals(before, session.feedforward(in));
+        Assertions.assertEquals(net.feedforward(in), session.feedforward(in));
+    }
+
+    @Test
+    void offHeapNetworkKeepsSnapshotOffHeap() {
+        NeuralNetwork net = new NeuralNetwork(20, 8, 4);
+        Matrix in = new Matrix(20, 3);
+        in.set(2, 0, 1);
+        in.set(9, 2, 0.5);
+        Matrix expected = net.feedforward(in);
+        net.moveOffHeap();
+        InferenceSession session = net.newSession();
+
+        Assertions.assertEquals(expected, session.feedforward(in));
+        Assertions.assertTrue(session.getWeights(0).isOffHeap());
+        Assertions.assertTrue(session.getWeights(1).isOffHeap());
+    }
+}
@@ -0,0 +1,46 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+
+import java.util.Random;
+
+class NeuralNetworkTest {
+
+    @Test
+    void feedforwardResultBelongsToCaller() {
+        NeuralNetwork net = new NeuralNetwork(6, 4, 3);
+        Random rand = new Random(1);
+        Matrix in = new Matrix(6, 2);
+        Matrix other = new Matrix(6, 2);
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 2; j++) {
+                in.set(i, j, rand.nextDouble());
+                other.set(i, j, rand.nextDouble());
+            }
+        }
+        Matrix held = net.feedforward(in);
+        Matrix expected = new Matrix(3, 2).copyFrom(held);
+        net.feedforward(other);
+        net.feedforward(other);
+        Assertions.assertEquals(expected, held);
+    }
+
+    @Test
+    void sparseInputIsOptIn() {
+        NeuralNetwork net = new NeuralNetwork(20, 5, 2);
+        Assertions.assertEquals(0, net.getSparseThreshold());
+        Matrix in = new Matrix(20, 3);
+        in.set(4, 0, 1);
+        in.set(11, 2, 0.5);
+        Matrix dense = net.feedforward(in);
+        net.setSparseThreshold(0.25);
+        Matrix sparse = net.feedforward(in);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assertions.assertEquals(dense.get(i, j), sparse.get(i, j), 1e-12);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+
+class PredictionCacheTest {
+
+    @Test
+    void cachesUntilWeightsChange() {
+        NeuralNetwork net = new NeuralNetwork(4, 3, 2);
+        PredictionCache cache = new PredictionCache(net, 1 << 20, true);
+        Vector in = new Vector(0.1, 0.5, 0.9, 0.0);
+        Vector first = cache.predict(in);
+        Vector second = cache.predict(new Vector(0.1001, 0.5, 0.9, 0.0));
+        Assertions.assertArrayEquals(first.getArray(), second.getArray());
+        Assertions.assertArrayEquals(net.newSession().predict(in).getArray(), first.getArray(), 1e-12);
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(0.5, cache.getHitRate());
+        Assertions.assertEquals(1, cache.getSize());
+        Assertions.assertEquals(PredictionCache.ENTRY_OVERHEAD + 4 + 16, cache.getBytesUsed());
+
+        Matrix[] weights = net.getWeights();
+        weights[1] = new Matrix(2, 3);
+        net.setWeights(weights);
+        Vector changed = cache.predict(in);
+        Assertions.assertArrayEquals(net.newSession().predict(in).getArray(), changed.getArray(), 1e-12);
+        Assertions.assertNotEquals(first.getArray()[0], changed.getArray()[0]);
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        NeuralNetwork net = new NeuralNetwork(4, 3, 2);
+        long entry = PredictionCache.ENTRY_OVERHEAD + 32 + 16;
+        PredictionCache cache = new PredictionCache(net, 2 * entry, false);
+        Vector a = new Vector(1, 0, 0, 0);
+        Vector b = new Vector(0, 1, 0, 0);
+        Vector c = new Vector(0, 0, 1, 0);
+        cache.predict(a);
+        cache.predict(b);
+        cache.predict(a);
+        cache.predict(c);
+        Assertions.assertEquals(2, cache.getSize());
+        Assertions.assertEquals(2 * entry, cache.getBytesUsed());
+        cache.predict(a);
+        Assertions.assertEquals(2, cache.getHits());
+        cache.predict(b);
+        Assertions.assertEquals(2, cache.getHits());
+    }
+}
@@ -0,0 +1,75 @@
+package org.neural.network.neuralnetlib.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.options.activation.SigmoidFunction;
+import org.neural.network.neuralnetlib.options.cost.CrossEntropyCostFunction;
+import org.neural.network.neuralnetlib.trainer.StochasticGradientDescentTrainer;
+
+import java.util.Random;
+
+class PruningTest {
+
+    @Test
+    void prunedNetworkRunsSparse() {
+        NeuralNetwork net = new NeuralNetwork(30, 20, 5);
+        Matrix[] masks = Pruning.pruneToSparsity(net, 0.8);
+        Assertions.assertEquals(0.8, Pruning.getSparsity(net), 1e-9);
+        Assertions.assertEquals(2, masks.length);
+
+        Random rand = new Random(5);
+        Vector[] in = new Vector[12];
+        Vector[] out = new Vector[12];
+        for (int k = 0; k < in.length; k++) {
+            double[] x = new double[30];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = rand.nextDouble();
+            }
+            in[k] = new Vector(x);
+            out[k] = new Vector(new double[5]);
+            out[k].getArray()[k % 5] = 1;
+        }
+        Matrix batch = new Matrix(in);
+        InferencePlan dense = net.compile(12);
+        Matrix expected = new Matrix(5, 12).copyFrom(dense.predict(batch));
+
+        InferenceSession earlier = net.newSession();
+        earlier.predict(in[0]);
+        long version = net.getVersion();
+        Assertions.assertEquals(2, net.sparsify(0.25));
+        Assertions.assertNotNull(net.getSparseWeights(0));
+        Assertions.assertTrue(net.getVersion() > version);
+        InferenceSession session = net.newSession();
+        Matrix actual = session.feedforward(batch);
+        Matrix single = new Matrix(session.predict(in[3]));
+        Matrix earlierSingle = new Matrix(earlier.predict(in[3]));
+        Assertions.assertSame(net.getSparseWeights(0), earlier.getSparseWeights(0));
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(expected.get(i, 3), single.get(i, 0), 1e-12);
+            Assertions.assertEquals(expected.get(i, 3), earlierSingle.get(i, 0), 1e-12);
+            for (int j = 0; j < 12; j++) {
+                Assertions.assertEquals(expected.get(i, j), actual.get(i, j), 1e-12);
+                Assertions.assertEquals(expected.get(i, j), net.feedforward(batch).get(i, j), 1e-12);
+            }
+        }
+
+        StochasticGradientDescentTrainer trainer = new StochasticGradientDescentTrainer(net, new CrossEntropyCostFunction(), null);
+        trainer.setTrainingData(in, out);
+        trainer.setTestData(in, out);
+        trainer.setMasks(masks);
+        trainer.train(2, 0.5, 0, 4, false);
+        Assertions.assertNull(net.getSparseWeights(0));
+        Assertions.assertTrue(Pruning.getSparsity(net) >= 0.8);
+    }
+
+    @Test
+    void pruneBelowThreshold() {
+        NeuralNetwork net = new NeuralNetwork(new Matrix[]{new Matrix(new double[][]{{0.1, -0.5}, {0.05, 2}})},
+                new Vector[]{new Vector(2)}, 2, new SigmoidFunction());
+        Matrix[] masks = Pruning.pruneBelow(net, 0.2);
+        Assertions.assertEquals(new Matrix(new double[][]{{0, 1}, {0, 1}}), masks[0]);
+        Assertions.assertEquals(new Matrix(new double[][]{{0, -0.5}, {0, 2}}), net.getWeights()[0]);
+    }
+}
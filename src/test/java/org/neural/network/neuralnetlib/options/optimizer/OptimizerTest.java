@@ -0,0 +1,74 @@
+package org.neural.network.neuralnetlib.options.optimizer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.net.NeuralNetwork;
+import org.neural.network.neuralnetlib.options.cost.CrossEntropyCostFunction;
+import org.neural.network.neuralnetlib.options.regularization.L2Regularization;
+import org.neural.network.neuralnetlib.trainer.StochasticGradientDescentTrainer;
+
+import java.util.Random;
+
+class OptimizerTest {
+
+    @Test
+    void adamFirstStepMovesByLearningRate() {
+        Matrix W = new Matrix(new double[][]{{1, 2}});
+        Vector b = new Vector(0.5);
+        AdamOptimizer adam = new AdamOptimizer();
+        adam.init(new Matrix[]{W}, new Vector[]{b});
+        adam.nextStep();
+        adam.update(0, W, new Matrix(new double[][]{{4, -0.5}}), b, new Vector(2.0), 0.1, 2);
+        Assertions.assertEquals(0.9, W.get(0, 0), 1e-6);
+        Assertions.assertEquals(2.1, W.get(0, 1), 1e-6);
+        Assertions.assertEquals(0.4, b.getArray()[0], 1e-6);
+    }
+
+    @Test
+    void momentumAddsUpSteps() {
+        Matrix W = new Matrix(new double[][]{{1}});
+        Vector b = new Vector(1.0);
+        MomentumOptimizer momentum = new MomentumOptimizer(0.5);
+        momentum.init(new Matrix[]{W}, new Vector[]{b});
+        for (int t = 0; t < 2; t++) {
+            momentum.nextStep();
+            momentum.update(0, W, new Matrix(new double[][]{{1}}), b, new Vector(1.0), 0.1, 1);
+        }
+        // steps of 0.1 and 0.5 * 0.1 + 0.1
+        Assertions.assertEquals(0.75, W.get(0, 0), 1e-12);
+        Assertions.assertEquals(0.75, b.getArray()[0], 1e-12);
+    }
+
+    @Test
+    void allOptimizersLowerCost() {
+        Random rand = new Random(9);
+        Vector[] in = new Vector[40];
+        Vector[] out = new Vector[40];
+        for (int k = 0; k < in.length; k++) {
+            double[] x = new double[10];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = rand.nextDouble();
+            }
+            in[k] = new Vector(x);
+            out[k] = new Vector(new double[3]);
+            out[k].getArray()[k % 3] = 1;
+        }
+        Optimizer[] optimizers = {new MomentumOptimizer(), new NesterovOptimizer(), new AdaGradOptimizer(),
+            new RMSPropOptimizer(), new AdamOptimizer()};
+        double[] learningRates = {0.1, 0.1, 0.1, 0.01, 0.01};
+        CrossEntropyCostFunction cost = new CrossEntropyCostFunction();
+        for (int o = 0; o < optimizers.length; o++) {
+            NeuralNetwork net = new NeuralNetwork(10, 8, 3);
+            double before = cost.calculateTotal(net, in, out);
+            StochasticGradientDescentTrainer trainer = new StochasticGradientDescentTrainer(net, cost, new L2Regularization());
+            trainer.setTrainingData(in, out);
+            trainer.setTestData(in, out);
+            trainer.setOptimizer(optimizers[o]);
+            trainer.train(10, learningRates[o], 0.1, 5, false);
+            Assertions.assertEquals(80, optimizers[o].getStep());
+            Assertions.assertTrue(cost.calculateTotal(net, in, out) < before, optimizers[o].getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.neural.network.neuralnetlib.options.regularization;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+
+class RegularizationTest {
+
+    private final Matrix weights = new Matrix(new double[][]{{0.5, -0.5, 0.01}, {-0.02, 2, 0}});
+    private final Matrix gradient = new Matrix(new double[][]{{1, -1, 0}, {0, 4, -0.5}});
+
+    @Test
+    void l2UpdateMatchesCalculate() {
+        L2Regularization l2 = new L2Regularization();
+        Matrix expected = l2.calculate(weights, 0.5, 5, 100).subMat(gradient.mulSca(0.5 / 10));
+        l2.update(weights, gradient, 0.5, 5, 100, 10);
+        Assertions.assertEquals(expected, weights);
+    }
+
+    @Test
+    void l1UpdateStopsAtZero() {
+        new L1Regularization().update(weights, gradient, 0.5, 2, 100, 10);
+        // gradient step, then every weight moves 0.01 towards zero
+        Matrix expected = new Matrix(new double[][]{{0.44, -0.44, 0}, {-0.01, 1.79, 0.015}});
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assertions.assertEquals(expected.get(i, j), weights.get(i, j), 1e-12);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.neural.network.neuralnetlib.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.net.NeuralNetwork;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+class InferenceServerTest {
+
+    @Test
+    void batchesConcurrentRequests() throws Exception {
+        NeuralNetwork net = new NeuralNetwork(6, 5, 3);
+        try (InferenceServer server = new InferenceServer(net, 0, 8, 20_000)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            List<double[]> inputs = new ArrayList<>();
+            for (int k = 0; k < 16; k++) {
+                double[] input = {k, 1, 0, -1, 0.5, k / 16.0};
+                inputs.add(input);
+                String body = "[" + k + ", 1, 0, -1, 0.5, " + (k / 16.0) + "]";
+                responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/predict"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString()));
+            }
+            for (int k = 0; k < 16; k++) {
+                HttpResponse<String> response = responses.get(k).join();
+                Assertions.assertEquals(200, response.statusCode());
+                String[] parts = response.body().trim().replace("[", "").replace("]", "").split(",");
+                double[] expected = net.newSession().predict(new Vector(inputs.get(k))).getArray();
+                Assertions.assertEquals(expected.length, parts.length);
+                for (int i = 0; i < expected.length; i++) {
+                    Assertions.assertEquals(expected[i], Double.parseDouble(parts[i]), 1e-12);
+                }
+            }
+
+            HttpResponse<String> bad = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/predict"))
+                    .POST(HttpRequest.BodyPublishers.ofString("1, 2")).build(), HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(400, bad.statusCode());
+
+            InferenceMetrics metrics = server.getPredictor().getMetrics();
+            Assertions.assertEquals(16, metrics.getRequests());
+            Assertions.assertEquals(0, metrics.getQueueDepth());
+            long batched = 0;
+            long[] counts = metrics.getBatchSizeCounts();
+            for (int size = 1; size < counts.length; size++) {
+                batched += size * counts[size];
+            }
+            Assertions.assertEquals(16, batched);
+            Assertions.assertTrue(metrics.getLatencyPercentile(99) >= metrics.getLatencyPercentile(50));
+            HttpResponse<String> text = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/metrics"))
+                    .GET().build(), HttpResponse.BodyHandlers.ofString());
+            Assertions.assertTrue(text.body().contains("inference_requests_total 16"));
+        }
+    }
+
+    @Test
+    void closeEmptiesQueueDepth() {
+        NeuralNetwork net = new NeuralNetwork(6, 5, 3);
+        List<CompletableFuture<double[]>> results = new ArrayList<>();
+        BatchingPredictor predictor = new BatchingPredictor(net, 64, 10_000_000);
+        for (int k = 0; k < 5; k++) {
+            results.add(predictor.submit(new double[] {k, 1, 0, -1, 0.5, 0}));
+        }
+        predictor.close();
+        for (CompletableFuture<double[]> result : results) {
+            Assertions.assertThrows(CompletionException.class, result::join);
+        }
+        Assertions.assertEquals(5, predictor.getMetrics().getRequests());
+        Assertions.assertEquals(0, predictor.getMetrics().getQueueDepth());
+    }
+}
@@ -1,9 +1,138 @@
 package org.neural.network.neuralnetlib.trainer;
 
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.neural.network.mathlib.algebra.Matrix;
+import org.neural.network.mathlib.algebra.Vector;
+import org.neural.network.neuralnetlib.net.NeuralNetwork;
+import org.neural.network.neuralnetlib.options.cost.CrossEntropyCostFunction;
+import org.neural.network.neuralnetlib.options.optimizer.AdamOptimizer;
+import org.neural.network.neuralnetlib.options.regularization.L2Regularization;
+
+import java.util.Random;
+
 public class StochasticGradientDescentTrainerTest {
 
+    @Test
+    void threadsMatchSingleThread() {
+        NeuralNetwork single = new NeuralNetwork(20, 15, 4);
+        NeuralNetwork parallel = copy(single);
+        Vector[] in = inputs(37);
+        Vector[] out = outputs(37);
+
+        train(single, in, out, 1);
+        train(parallel, in, out, 5);
+        for (int l = 0; l < 2; l++) {
+            Matrix expected = single.getWeights()[l];
+            Matrix actual = parallel.getWeights()[l];
+            for (int i = 0; i < expected.getN(); i++) {
+                Assertions.assertEquals(single.getBiases()[l].getArray()[i], parallel.getBiases()[l].getArray()[i], 1e-12);
+                for (int j = 0; j < expected.getM(); j++) {
+                    Assertions.assertEquals(expected.get(i, j), actual.get(i, j), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    void asynchronousTrainingLowersCost() {
+        NeuralNetwork net = new NeuralNetwork(20, 15, 4);
+        Vector[] in = inputs(64);
+        Vector[] out = outputs(64);
+        CrossEntropyCostFunction cost = new CrossEntropyCostFunction();
+        double before = cost.calculateTotal(net, new Matrix(in), new Matrix(out));
+
+        StochasticGradientDescentTrainer trainer = new StochasticGradientDescentTrainer(net, cost, null);
+        trainer.setTrainingData(in, out);
+        trainer.setTestData(in, out);
+        trainer.setThreads(3);
+        trainer.setMode(TrainingMode.ASYNCHRONOUS);
+        trainer.train(10, 0.5, 0, 4, false);
+
+        Assertions.assertTrue(cost.calculateTotal(net, new Matrix(in), new Matrix(out)) < before);
+        Assertions.assertTrue(trainer.getMaxStaleness() >= 0);
+        Assertions.assertTrue(trainer.getAverageStaleness() <= trainer.getMaxStaleness());
+    }
+
+    @Test
+    void asynchronousOptimizerCountsEveryStep() {
+        NeuralNetwork net = new NeuralNetwork(20, 15, 4);
+        Vector[] in = inputs(64);
+        Vector[] out = outputs(64);
+        AdamOptimizer optimizer = new AdamOptimizer();
+
+        StochasticGradientDescentTrainer trainer = new StochasticGradientDescentTrainer(net, new CrossEntropyCostFunction(), null);
+        trainer.setTrainingData(in, out);
+        trainer.setTestData(in, out);
+        trainer.setThreads(4);
+        trainer.setMode(TrainingMode.ASYNCHRONOUS);
+        trainer.setOptimizer(optimizer);
+        trainer.train(5, 0.01, 0, 4, false);
+
+        Assertions.assertEquals(5 * 64 / 4, optimizer.getStep());
+    }
+
+    @Test
+    void localTrainingAveragesCopies() {
+        NeuralNetwork net = new NeuralNetwork(20, 15, 4);
+        Vector[] in = inputs(64);
+        Vector[] out = outputs(64);
+        CrossEntropyCostFunction cost = new CrossEntropyCostFunction();
+        double before = cost.calculateTotal(net, new Matrix(in), new Matrix(out));
+
+        StochasticGradientDescentTrainer trainer = new StochasticGradientDescentTrainer(net, cost, null);
+        trainer.setTrainingData(in, out);
+        trainer.setTestData(in, out);
+        trainer.setThreads(4);
+        trainer.setMode(TrainingMode.LOCAL);
+        trainer.setLocalSteps(2);
+        trainer.setAveragingMomentum(0.5);
+        trainer.train(10, 0.5, 0, 4, false);
+
+        Assertions.assertTrue(cost.calculateTotal(net, new Matrix(in), new Matrix(out)) < before);
+        Assertions.assertTrue(trainer.getComputeTime() > 0);
+        Assertions.assertTrue(trainer.getCommunicationTime() > 0);
+    }
 
+    private static Vector[] inputs(int count) {
+        Random rand = new Random(3);
+        Vector[] in = new Vector[count];
+        for (int k = 0; k < count; k++) {
+            double[] x = new double[20];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = rand.nextDouble();
+            }
+            in[k] = new Vector(x);
+        }
+        return in;
+    }
 
+    private static Vector[] outputs(int count) {
+        Vector[] out = new Vector[count];
+        for (int k = 0; k < count; k++) {
+            out[k] = new Vector(new double[4]);
+            out[k].getArray()[k % 4] = 1;
+        }
+        return out;
+    }
 
+    private static void train(NeuralNetwork net, Vector[] in, Vector[] out, int threads) {
+        StochasticGradientDescentTrainer trainer = new StochasticGradientDescentTrainer(net, new CrossEntropyCostFunction(), new L2Regularization());
+        trainer.setTrainingData(in, out);
+        trainer.setTestData(in, out);
+        trainer.setThreads(threads);
+        // one batch per epoch, so the order of the samples does not matter
+        trainer.train(3, 0.5, 0.1, in.length, false);
+    }
 
+    private static NeuralNetwork copy(NeuralNetwork net) {
+        Matrix[] weights = new Matrix[net.getSize() - 1];
+        Vector[] biases = new Vector[net.getSize() - 1];
+        for (int l = 0; l < weights.length; l++) {
+            Matrix W = net.getWeights()[l];
+            weights[l] = new Matrix(W.getN(), W.getM(), W.getPrecision()).copyFrom(W);
+            biases[l] = new Vector(net.getBiases()[l].getArray().clone());
+        }
+        return new NeuralNetwork(weights, biases, net.getSize(), net.getActivationFunction());
+    }
 }